@@ -0,0 +1,87 @@
+package com.android.volley;
+
+import android.net.TrafficStats;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+
+/**
+ *
+ * Android上的{@link Platform}，由{@link Platform#get()}通过反射创建
+ *
+ * 作者：李富 on 2015/11/30.
+ * 邮箱：lifuzz@163.com
+ */
+class AndroidPlatform extends Platform {
+
+    private final Executor mMainThreadExecutor = new Executor() {
+
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            mHandler.post(command);
+        }
+    };
+
+    public AndroidPlatform() {
+    }
+
+    @Override
+    public long elapsedRealtime() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public String getHost(String url) {
+        return Uri.parse(url).getHost();
+    }
+
+    @Override
+    public void setThreadPriorityBackground() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+    }
+
+    @Override
+    public void setThreadStatsTag(int tag) {
+        TrafficStats.setThreadStatsTag(tag);
+    }
+
+    @Override
+    public Executor getMainThreadExecutor() {
+        return mMainThreadExecutor;
+    }
+
+    @Override
+    public boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    @Override
+    public boolean isLoggable(String tag,int level) {
+        return Log.isLoggable(tag,level);
+    }
+
+    @Override
+    public void log(int level,String tag,String msg,Throwable tr) {
+        switch (level) {
+            case VERBOSE:
+                Log.v(tag,msg,tr);
+                break;
+            case DEBUG:
+                Log.d(tag,msg,tr);
+                break;
+            case ERROR:
+                Log.e(tag,msg,tr);
+                break;
+            default:
+                Log.wtf(tag,msg,tr);
+                break;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.android.volley;
+
+import android.content.Intent;
+
+/**
+ *
+ * 需要用户处理的权限验证失败，带着用来解决这个错误的Intent
+ *
+ * 作者：李富 on 2015/11/30.
+ * 邮箱：lifuzz@163.com
+ */
+@SuppressWarnings("serial")
+public class IntentAuthFailureError extends AuthFailureError {
+
+    /**
+     * 这个Intent用来解决这个异常(会弹出密码对话框。)
+     */
+    private final Intent mResolutionIntent;
+
+    public IntentAuthFailureError(Intent intent) {
+        mResolutionIntent = intent;
+    }
+
+    public Intent getmResolutionIntent() {
+        return mResolutionIntent;
+    }
+
+    @Override
+    public String getMessage() {
+
+        if (mResolutionIntent != null) {
+            return "用户需要（重新）输入密码。";
+        }
+
+        return super.getMessage();
+    }
+}
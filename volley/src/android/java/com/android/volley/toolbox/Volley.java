@@ -0,0 +1,130 @@
+package com.android.volley.toolbox;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.net.http.AndroidHttpClient;
+import android.os.Build;
+
+import com.android.volley.Cache;
+import com.android.volley.RequestQueue;
+
+import java.io.File;
+
+/**
+ * 作者：李富 on 2015/10/20.
+ * 邮箱：lifuzz@163.com
+ */
+@SuppressWarnings("deprecation")
+public class Volley {
+
+    /*
+     * 默认磁盘存储目录
+     */
+    private static final String DEFAULT_CACHE_DIR = "volley";
+
+    /*
+     * 默认共享缓冲池的大小
+     */
+    private static final int DEFAULT_POOL_SIZE = 4096;
+
+    /*
+     * 创建一个默认请求队列栈，并启用
+     */
+
+    /**
+     *
+     * @param context
+     * @param stack
+     * @return
+     */
+
+    public static RequestQueue newREquestQueue(Context context,HttpStack stack) {
+        return newREquestQueue(context,stack,-1);
+    }
+
+    /**
+     * 创建一个默认请求队列，并指定磁盘缓存的最大字节数
+     * @param context
+     * @param stack 使用的HTTP栈，为null则根据系统版本创建
+     * @param maxDiskCacheBytes 磁盘缓存的最大字节数，小于等于0则使用默认值
+     * @return
+     */
+    public static RequestQueue newREquestQueue(Context context,HttpStack stack,
+                                               int maxDiskCacheBytes) {
+        return newREquestQueue(context,stack,maxDiskCacheBytes,-1);
+    }
+
+    /**
+     * 创建一个默认请求队列，并指定磁盘缓存和堆外缓冲池的最大字节数
+     * @param context
+     * @param stack 使用的HTTP栈，为null则根据系统版本创建
+     * @param maxDiskCacheBytes 磁盘缓存的最大字节数，小于等于0则使用默认值
+     * @param maxDirectPoolBytes {@link DirectBufferRequest}使用的堆外缓冲池的最大字节数，
+     *                           小于等于0则使用默认值（32MB），最大缓冲区不超过这个大小
+     * @return
+     */
+    public static RequestQueue newREquestQueue(Context context,HttpStack stack,
+                                               int maxDiskCacheBytes,long maxDirectPoolBytes) {
+
+        //缓存目录
+        File cacheDir = new File(context.getCacheDir(),DEFAULT_CACHE_DIR);
+
+        //拼接UA
+        String userAgent = "volley/0";
+
+        try {
+            String packageName = context.getPackageName();
+
+            PackageInfo info = context.getPackageManager().getPackageInfo(packageName,0);
+
+            userAgent = packageName + "/" + info.versionCode;
+
+        } catch (PackageManager.NameNotFoundException e) {
+            e.printStackTrace();
+        }
+
+        //如果stack为空，则创建一个网络访实例。
+        if (stack == null) {
+
+            //根据系统版本创建网络访问实例
+            if (Build.VERSION.SDK_INT >= 9) {
+
+                //如果版本大于等于9，则创建HttpURLConnection实例
+                stack = new HurlStack();
+
+            } else {
+
+                //如果版本小于9，则创建HttpClient实例
+                stack = new HttpClientStack(AndroidHttpClient.newInstance(userAgent));
+
+            }
+
+        }
+
+        //网络调度线程是长期运行的，使用带线程缓存的缓冲池
+        DirectByteBufferPool directPool = maxDirectPoolBytes <= 0 ? new DirectByteBufferPool()
+                : new DirectByteBufferPool(maxDirectPoolBytes);
+        BasicNetwork network = new BasicNetwork(stack,
+                new ThreadLocalByteArrayPool(DEFAULT_POOL_SIZE),directPool);
+        //重试在退避时间以后重新入队，不占用网络调度线程
+        network.setDeferredRetries(true);
+
+        Cache cache = maxDiskCacheBytes <= 0 ? new DiskBasedCache(cacheDir)
+                : new DiskBasedCache(cacheDir,maxDiskCacheBytes);
+
+        RequestQueue queue = new RequestQueue(cache,network);
+        queue.start();
+
+        return queue;
+    }
+
+    /**
+     * 使用默认的HTTP栈创建一个请求队列，并启用
+     * @param context
+     * @return
+     */
+    public static RequestQueue newREquestQueue(Context context) {
+        return newREquestQueue(context,null);
+    }
+}
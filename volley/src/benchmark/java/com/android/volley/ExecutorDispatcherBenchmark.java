@@ -0,0 +1,233 @@
+package com.android.volley;
+
+import com.android.volley.toolbox.NoCache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * 比较固定数量的网络调度线程和{@link ExecutorNetworkDispatcher}的吞吐量和并发数量。
+ *
+ * 网络接口用睡眠模拟阻塞的HTTP请求，不需要服务器。固定线程的数量默认等于执行器模式的全局上限，
+ * 两者的并发数量相同，差别只在调度方式和每个主机的上限。每种调度分别运行两种负载：请求平均分布
+ * 在几个主机上，以及一半的请求发往同一个主机。执行器模式分别不限制和限制每个主机的请求数量，
+ * 输出中的peak/host是同一个主机同时执行的最大请求数量，可以看到每个主机的上限是否生效。
+ *
+ * 在JVM上运行：gradle runBenchmark -PbenchmarkArgs="4000 50 256 64"，参数依次是请求数量、
+ * 每个请求的延迟毫秒数、全局上限、每个主机的上限和固定线程的数量。
+ * 没有在时间内完成或者有请求失败的一轮不输出结果，以非0的状态退出。
+ *
+ * 作者：李富 on 2015/11/29.
+ * 邮箱：lifuzz@163.com
+ */
+public class ExecutorDispatcherBenchmark {
+
+    private static final int HOSTS = 8;
+
+    /**
+     * 一轮的最长时间，超过时这一轮无效
+     */
+    private static final long TIMEOUT_MINUTES = 10;
+
+    /**
+     * 请求在主机上的分布
+     */
+    private enum Workload {
+
+        /**
+         * 平均分布在所有主机上
+         */
+        UNIFORM {
+            @Override
+            String host(int i) {
+                return "host" + (i % HOSTS);
+            }
+        },
+
+        /**
+         * 一半的请求发往host0，其余的平均分布在其他主机上
+         */
+        HOT_HOST {
+            @Override
+            String host(int i) {
+                return i % 2 == 0 ? "host0" : "host" + (1 + (i / 2) % (HOSTS - 1));
+            }
+        };
+
+        abstract String host(int i);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int latencyMs = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int maxConcurrent = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        int maxPerHost = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : maxConcurrent;
+
+        ExecutorService delivery = Executors.newSingleThreadExecutor();
+        ExecutorService executor = Executors.newCachedThreadPool();
+
+        System.out.println(String.format("%d requests, %d ms each, %d hosts",requests,latencyMs,
+                HOSTS));
+
+        try {
+
+            for (Workload workload : Workload.values()) {
+
+                //固定数量的调度线程，没有每个主机的上限
+                SleepingNetwork network = new SleepingNetwork(latencyMs);
+                RequestQueue fixed = new RequestQueue(new NoCache(),network,threads,
+                        new ExecutorDelivery(delivery));
+                run("fixed[" + threads + "]",fixed,network,workload,requests);
+
+                //执行器模式，每个主机的上限等于全局上限，也就是不限制每个主机
+                network = new SleepingNetwork(latencyMs);
+                RequestQueue unlimited = new RequestQueue(new NoCache(),network,executor,
+                        maxConcurrent,maxConcurrent,new ExecutorDelivery(delivery));
+                run("executor[" + maxConcurrent + "/" + maxConcurrent + "]",unlimited,network,
+                        workload,requests);
+
+                //执行器模式，限制每个主机
+                network = new SleepingNetwork(latencyMs);
+                RequestQueue perHost = new RequestQueue(new NoCache(),network,executor,
+                        maxConcurrent,maxPerHost,new ExecutorDelivery(delivery));
+                run("executor[" + maxConcurrent + "/" + maxPerHost + "]",perHost,network,
+                        workload,requests);
+            }
+
+        } finally {
+            executor.shutdown();
+            delivery.shutdown();
+        }
+    }
+
+    /**
+     * 添加所有请求，等待完成并输出结果
+     * @throws IllegalStateException 没有在时间内完成或者有请求失败
+     */
+    private static void run(String name,RequestQueue queue,SleepingNetwork network,
+                            Workload workload,int requests) throws InterruptedException {
+
+        queue.start();
+
+        CountDownLatch latch = new CountDownLatch(requests);
+        AtomicInteger errors = new AtomicInteger();
+        long start = System.nanoTime();
+
+        for (int i = 0 ; i < requests;i ++) {
+            queue.add(new CountingRequest("http://" + workload.host(i) + ".example/" + i,latch,
+                    errors));
+        }
+
+        boolean finished = latch.await(TIMEOUT_MINUTES,TimeUnit.MINUTES);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        queue.stop();
+
+        if (!finished) {
+            throw new IllegalStateException(String.format("%s %s timed out after %d ms: "
+                    + "%d of %d requests finished",name,workload,elapsedMs,
+                    requests - latch.getCount(),requests));
+        }
+        if (errors.get() > 0) {
+            throw new IllegalStateException(String.format("%s %s: %d of %d requests failed",name,
+                    workload,errors.get(),requests));
+        }
+
+        System.out.println(String.format("%-20s %-9s %8d ms %10.1f req/s   peak %4d   peak/host %4d",
+                name,workload,elapsedMs,requests * 1000.0 / Math.max(elapsedMs,1),
+                network.mPeak.get(),network.mPeakPerHost.get()));
+    }
+
+    /**
+     * 每个请求阻塞固定的时间，记录全局和每个主机同时执行的最大请求数量
+     */
+    private static class SleepingNetwork implements Network {
+
+        private final int mLatencyMs;
+
+        private final AtomicInteger mRunning = new AtomicInteger();
+
+        private final ConcurrentHashMap<String,AtomicInteger> mRunningPerHost =
+                new ConcurrentHashMap<>();
+
+        final AtomicInteger mPeak = new AtomicInteger();
+
+        final AtomicInteger mPeakPerHost = new AtomicInteger();
+
+        SleepingNetwork(int latencyMs) {
+            mLatencyMs = latencyMs;
+        }
+
+        @Override
+        public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+
+            String host = Platform.get().getHost(request.getUrl());
+            AtomicInteger hostRunning = mRunningPerHost.get(host);
+            if (hostRunning == null) {
+                AtomicInteger created = new AtomicInteger();
+                hostRunning = mRunningPerHost.putIfAbsent(host,created);
+                if (hostRunning == null) {
+                    hostRunning = created;
+                }
+            }
+
+            updateMax(mPeak,mRunning.incrementAndGet());
+            updateMax(mPeakPerHost,hostRunning.incrementAndGet());
+
+            try {
+                Thread.sleep(mLatencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new VolleyError(e);
+            } finally {
+                hostRunning.decrementAndGet();
+                mRunning.decrementAndGet();
+            }
+
+            return new NetworkResponse(new byte[0]);
+        }
+
+        private static void updateMax(AtomicInteger max,int value) {
+            int current;
+            while (value > (current = max.get()) && !max.compareAndSet(current,value)) {
+            }
+        }
+    }
+
+    /**
+     * 完成（成功或者失败）时计数的请求
+     */
+    private static class CountingRequest extends Request<Void> {
+
+        private final CountDownLatch mLatch;
+
+        CountingRequest(String url,final CountDownLatch latch,final AtomicInteger errors) {
+            super(Method.GET,url,new Response.ErrorListener() {
+                @Override
+                public void onErrorListener(VolleyError error) {
+                    errors.incrementAndGet();
+                    latch.countDown();
+                }
+            });
+            mLatch = latch;
+            setShouldCache(false);
+        }
+
+        @Override
+        protected Response<Void> parseNetworkResponse(NetworkResponse response) {
+            return Response.success(null,null);
+        }
+
+        @Override
+        protected void deliverResponse(Void response) {
+            mLatch.countDown();
+        }
+    }
+}
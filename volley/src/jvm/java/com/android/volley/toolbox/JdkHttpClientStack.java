@@ -0,0 +1,348 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Request;
+import com.android.volley.Request.Method;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+
+/**
+ *
+ * 基于java.net.http.HttpClient（Java 11）的HTTP栈，在JVM上使用。
+ *
+ * 同步的{@link #performRequest(Request, Map)}在调用线程上等待响应头，响应体以流的方式读取，
+ * 和{@link BasicNetwork}一起使用。异步的{@link #execute(Request, Map, Callback)}不占用调用线程，
+ * 响应体完整读取以后回调，和{@link NioNetwork}一起使用时网络调度线程不等待网络。
+ * HttpClient自己维护保持连接(keep-alive)的连接池，支持https和HTTP/2。
+ *
+ * 超时时间是请求的{@link Request#getTimeoutMs()}，包括建立连接和等待响应头，超时以
+ * {@link SocketTimeoutException}失败，和其他HTTP栈一样由重试策略处理。
+ * HttpClient不限制读取响应体的时间。
+ *
+ * 作者：李富 on 2015/11/30.
+ * 邮箱：lifuzz@163.com
+ */
+public class JdkHttpClientStack implements HttpStack,AsyncHttpStack {
+
+    private static final String HEADER_CONTENT_TYPE = "Content-Type";
+
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+
+    /**
+     * 支持的压缩格式，由{@link BasicNetwork}和{@link NioNetwork}解压
+     */
+    private static final String SUPPORTED_ENCODINGS = "gzip, deflate";
+
+    /**
+     * HttpClient自己设置、不允许请求设置的头，小写
+     */
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection","content-length","expect","host","upgrade"));
+
+    private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP",2,0);
+
+    private final HttpClient mClient;
+
+    /**
+     * 正在执行的异步请求，关闭时取消
+     */
+    private final Set<CompletableFuture<?>> mInFlight =
+            Collections.newSetFromMap(new ConcurrentHashMap<CompletableFuture<?>,Boolean>());
+
+    private volatile boolean mShutdown;
+
+    public JdkHttpClientStack() {
+        this(HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build());
+    }
+
+    /**
+     * @param client 使用的HttpClient，可以设置代理、SSL和执行器
+     */
+    public JdkHttpClientStack(HttpClient client) {
+        mClient = client;
+    }
+
+    @Override
+    public HttpResponse performRequest(Request<?> request,Map<String,String> additionalHeaders)
+            throws IOException,AuthFailureError {
+
+        HttpRequest httpRequest = createRequest(request,additionalHeaders);
+
+        java.net.http.HttpResponse<InputStream> response;
+        try {
+            response = mClient.send(httpRequest,BodyHandlers.ofInputStream());
+        } catch (HttpTimeoutException e) {
+            throw timeout(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + request.getUrl());
+        }
+
+        int statusCode = response.statusCode();
+        ProtocolVersion protocolVersion = response.version() == HttpClient.Version.HTTP_2
+                ? HTTP_2 : HttpVersion.HTTP_1_1;
+        String reason = EnglishReasonPhraseCatalog.INSTANCE.getReason(statusCode,Locale.ENGLISH);
+        BasicHttpResponse result = new BasicHttpResponse(
+                new BasicStatusLine(protocolVersion,statusCode,reason));
+
+        for (Map.Entry<String,List<String>> header : response.headers().map().entrySet()) {
+            if (!header.getValue().isEmpty()) {
+                result.addHeader(new BasicHeader(header.getKey(),header.getValue().get(0)));
+            }
+        }
+
+        if (hasResponseBody(statusCode)) {
+            result.setEntity(entityFromResponse(response));
+        } else {
+            //没有响应体，立即关闭响应流，让连接回到连接池
+            response.body().close();
+        }
+
+        return result;
+    }
+
+    @Override
+    public void execute(Request<?> request,Map<String,String> additionalHeaders,
+                        final Callback callback) throws IOException,AuthFailureError {
+
+        HttpRequest httpRequest = createRequest(request,additionalHeaders);
+
+        if (mShutdown) {
+            throw new IOException("JdkHttpClientStack is shut down");
+        }
+
+        final CompletableFuture<java.net.http.HttpResponse<byte[]>> future =
+                mClient.sendAsync(httpRequest,BodyHandlers.ofByteArray());
+        mInFlight.add(future);
+
+        //shutdown()在加入之前已经取消了其他的请求
+        if (mShutdown) {
+            future.cancel(false);
+        }
+
+        future.whenComplete(new BiConsumer<java.net.http.HttpResponse<byte[]>,Throwable>() {
+            @Override
+            public void accept(java.net.http.HttpResponse<byte[]> response,Throwable error) {
+
+                mInFlight.remove(future);
+
+                if (error != null) {
+                    callback.onFailure(toIOException(error));
+                    return;
+                }
+
+                callback.onResponse(response.statusCode(),convertHeaders(response.headers()),
+                        response.body());
+            }
+        });
+    }
+
+    /**
+     * 取消正在执行的异步请求，以后的异步请求直接失败。同步请求不受影响
+     */
+    @Override
+    public void shutdown() {
+        mShutdown = true;
+        for (CompletableFuture<?> future : mInFlight) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * 创建HttpClient的请求，请求方法和消息体的处理和{@link HurlStack}相同
+     */
+    @SuppressWarnings("deprecation")
+    private static HttpRequest createRequest(Request<?> request,
+                                             Map<String,String> additionalHeaders)
+            throws IOException,AuthFailureError {
+
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(new URI(request.getUrl()));
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            MalformedURLException malformed = new MalformedURLException(e.getMessage());
+            malformed.initCause(e);
+            throw malformed;
+        }
+
+        if (request.getTimeoutMs() > 0) {
+            builder.timeout(Duration.ofMillis(request.getTimeoutMs()));
+        }
+
+        HashMap<String,String> map = new HashMap<>();
+        map.putAll(request.getHeaders());
+        map.putAll(additionalHeaders);
+
+        //请求没有指定时，声明支持压缩的响应，HttpClient不会自动解压
+        if (!containsHeader(map,HEADER_ACCEPT_ENCODING)) {
+            map.put(HEADER_ACCEPT_ENCODING,SUPPORTED_ENCODINGS);
+        }
+
+        for (Map.Entry<String,String> header : map.entrySet()) {
+            if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.US))) {
+                builder.header(header.getKey(),header.getValue());
+            }
+        }
+
+        switch (request.getMethod()) {
+
+            case Method.DEPRECATED_GET_OR_POST:
+                //有POST消息体则是POST请求，否则是GET请求
+                byte[] postBody = request.getPostBody();
+                if (postBody != null) {
+                    builder.setHeader(HEADER_CONTENT_TYPE,request.getPostBodyContentType());
+                    builder.POST(BodyPublishers.ofByteArray(postBody));
+                } else {
+                    builder.GET();
+                }
+                break;
+
+            case Method.GET:
+                builder.GET();
+                break;
+
+            case Method.DELETE:
+                builder.DELETE();
+                break;
+
+            case Method.POST:
+                builder.POST(bodyPublisher(builder,request));
+                break;
+
+            case Method.PUT:
+                builder.PUT(bodyPublisher(builder,request));
+                break;
+
+            default:
+                throw new IllegalStateException("Unknown method type.");
+        }
+
+        return builder.build();
+    }
+
+    private static HttpRequest.BodyPublisher bodyPublisher(HttpRequest.Builder builder,
+                                                          Request<?> request)
+            throws AuthFailureError {
+        byte[] body = request.getBody();
+        if (body == null) {
+            return BodyPublishers.noBody();
+        }
+        builder.setHeader(HEADER_CONTENT_TYPE,request.getBodyContentType());
+        return BodyPublishers.ofByteArray(body);
+    }
+
+    /**
+     * 判断响应是否有响应体
+     */
+    private static boolean hasResponseBody(int responseCode) {
+        return !(HttpStatus.SC_CONTINUE <= responseCode && responseCode < HttpStatus.SC_OK)
+                && responseCode != HttpStatus.SC_NO_CONTENT
+                && responseCode != HttpStatus.SC_NOT_MODIFIED;
+    }
+
+    /**
+     * 用响应流创建{@link HttpEntity}
+     */
+    private static HttpEntity entityFromResponse(java.net.http.HttpResponse<InputStream> response) {
+        HttpHeaders headers = response.headers();
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(response.body());
+        entity.setContentLength(headers.firstValueAsLong(HEADER_CONTENT_LENGTH).orElse(-1));
+        entity.setContentEncoding(headers.firstValue(HEADER_CONTENT_ENCODING).orElse(null));
+        entity.setContentType(headers.firstValue(HEADER_CONTENT_TYPE).orElse(null));
+        return entity;
+    }
+
+    /**
+     * 每个响应头只保留第一个值，和{@link HurlStack}相同。HTTP/2的响应头是小写的
+     */
+    private static Map<String,String> convertHeaders(HttpHeaders headers) {
+        Map<String,String> result = new HashMap<>();
+        for (Map.Entry<String,List<String>> header : headers.map().entrySet()) {
+            if (!header.getValue().isEmpty()) {
+                result.put(header.getKey(),header.getValue().get(0));
+            }
+        }
+        return result;
+    }
+
+    private static IOException toIOException(Throwable error) {
+
+        //依赖的阶段失败时异常被包装
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+
+        if (error instanceof HttpTimeoutException) {
+            return timeout((HttpTimeoutException) error);
+        }
+        if (error instanceof CancellationException) {
+            return new IOException("JdkHttpClientStack is shut down");
+        }
+        if (error instanceof IOException) {
+            return (IOException) error;
+        }
+        return new IOException(error);
+    }
+
+    /**
+     * 超时转换为{@link SocketTimeoutException}，由重试策略处理
+     */
+    private static SocketTimeoutException timeout(HttpTimeoutException e) {
+        SocketTimeoutException timeout = new SocketTimeoutException(e.getMessage());
+        timeout.initCause(e);
+        return timeout;
+    }
+
+    private static boolean containsHeader(Map<String,String> headers,String name) {
+        for (String key : headers.keySet()) {
+            if (name.equalsIgnoreCase(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,90 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.Cache;
+import com.android.volley.RequestQueue;
+
+import java.io.File;
+
+/**
+ *
+ * JVM上创建请求队列，默认使用{@link JdkHttpClientStack}。响应在Volley的交付线程上交付
+ *
+ * 作者：李富 on 2015/11/30.
+ * 邮箱：lifuzz@163.com
+ */
+public class Volley {
+
+    /*
+     * 默认共享缓冲池的大小
+     */
+    private static final int DEFAULT_POOL_SIZE = 4096;
+
+    /*
+     * 异步网络接口的调度线程数量，调度线程只把请求交给网络接口，一个就够了
+     */
+    private static final int ASYNC_DISPATCHER_THREADS = 1;
+
+    /**
+     * 创建一个请求队列，网络调度线程在{@link JdkHttpClientStack}上阻塞等待响应
+     * @param cacheDir 磁盘缓存的目录
+     * @param stack 使用的HTTP栈，为null则使用{@link JdkHttpClientStack}
+     * @param maxDiskCacheBytes 磁盘缓存的最大字节数，小于等于0则使用默认值
+     * @return
+     */
+    public static RequestQueue newREquestQueue(File cacheDir,HttpStack stack,
+                                               int maxDiskCacheBytes) {
+
+        if (stack == null) {
+            stack = new JdkHttpClientStack();
+        }
+
+        //网络调度线程是长期运行的，使用带线程缓存的缓冲池
+        BasicNetwork network = new BasicNetwork(stack,
+                new ThreadLocalByteArrayPool(DEFAULT_POOL_SIZE),new DirectByteBufferPool());
+        //重试在退避时间以后重新入队，不占用网络调度线程
+        network.setDeferredRetries(true);
+
+        RequestQueue queue = new RequestQueue(createCache(cacheDir,maxDiskCacheBytes),network);
+        queue.start();
+
+        return queue;
+    }
+
+    public static RequestQueue newREquestQueue(File cacheDir,HttpStack stack) {
+        return newREquestQueue(cacheDir,stack,-1);
+    }
+
+    public static RequestQueue newREquestQueue(File cacheDir) {
+        return newREquestQueue(cacheDir,null);
+    }
+
+    /**
+     * 创建一个异步的请求队列，请求由{@link NioNetwork}交给异步HTTP栈，网络调度线程不等待网络
+     * @param cacheDir 磁盘缓存的目录
+     * @param stack 使用的异步HTTP栈，为null则使用{@link JdkHttpClientStack}
+     * @param maxDiskCacheBytes 磁盘缓存的最大字节数，小于等于0则使用默认值
+     * @return
+     */
+    public static RequestQueue newAsyncRequestQueue(File cacheDir,AsyncHttpStack stack,
+                                                    int maxDiskCacheBytes) {
+
+        if (stack == null) {
+            stack = new JdkHttpClientStack();
+        }
+
+        RequestQueue queue = new RequestQueue(createCache(cacheDir,maxDiskCacheBytes),
+                new NioNetwork(stack),ASYNC_DISPATCHER_THREADS);
+        queue.start();
+
+        return queue;
+    }
+
+    public static RequestQueue newAsyncRequestQueue(File cacheDir) {
+        return newAsyncRequestQueue(cacheDir,null,-1);
+    }
+
+    private static Cache createCache(File cacheDir,int maxDiskCacheBytes) {
+        return maxDiskCacheBytes <= 0 ? new DiskBasedCache(cacheDir)
+                : new DiskBasedCache(cacheDir,maxDiskCacheBytes);
+    }
+}
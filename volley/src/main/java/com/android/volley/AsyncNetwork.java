@@ -0,0 +1,41 @@
+package com.android.volley;
+
+/**
+ *
+ * 异步执行请求的接口。
+ *
+ * {@link NetworkDispatcher}遇到异步的网络接口时，把请求交给它以后立即处理下一个请求，不在
+ * 调度线程上等待响应，少量的线程就可以同时执行大量的请求。同步的
+ * {@link Network#performRequest(Request)}仍然可以使用，会阻塞到请求完成。
+ *
+ * 作者：李富 on 2015/11/21.
+ * 邮箱：lifuzz@163.com
+ */
+public interface AsyncNetwork extends Network {
+
+    /**
+     * 请求完成的回调，两个方法只会调用其中一个，并且只调用一次。
+     * 回调不在网络的I/O线程上执行，可以在回调中解析响应
+     */
+    public interface OnRequestComplete {
+
+        /**
+         * 请求成功
+         * @param networkResponse 网络响应
+         */
+        public void onSuccess(NetworkResponse networkResponse);
+
+        /**
+         * 请求失败，重试策略已经用完
+         * @param error 错误
+         */
+        public void onError(VolleyError error);
+    }
+
+    /**
+     * 异步执行指定的请求，立即返回
+     * @param request 需要执行的请求
+     * @param callback 请求完成的回调
+     */
+    public void performRequest(Request<?> request,OnRequestComplete callback);
+}
@@ -0,0 +1,206 @@
+package com.android.volley;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * 批量调度线程，在一个时间窗口内收集可以合并的请求，通过{@link BatchEncoder}合并为一次
+ * HTTP请求，再把拆分的响应交付给每个请求。
+ *
+ * 窗口从取出第一个请求开始，收集到最大数量或者窗口结束时发送。只收集到一个请求时，
+ * 直接把它放到网络队列中单独执行。批量请求在这个线程上执行，前一批请求执行时新的请求继续
+ * 在队列中积累，下一批会更大。
+ *
+ * 作者：李富 on 2015/11/24.
+ * 邮箱：lifuzz@163.com
+ */
+public class BatchDispatcher extends Thread {
+
+    /**
+     * 可以合并的请求队列
+     */
+    private final BlockingQueue<Request<?>> mBatchQueue;
+
+    /**
+     * 单独执行的请求放到这个网络队列中
+     */
+    private final BlockingQueue<Request<?>> mNetworkQueue;
+
+    private final Network mNetwork;
+
+    private final BatchEncoder mEncoder;
+
+    private final ResponseDelivery mDelivery;
+
+    /**
+     * 收集请求的时间窗口
+     */
+    private final int mWindowMs;
+
+    /**
+     * 一批请求的最大数量
+     */
+    private final int mMaxBatchSize;
+
+    private volatile boolean mQuit = false;
+
+    /**
+     * @param batchQueue 可以合并的请求队列
+     * @param networkQueue 网络队列
+     * @param network 执行批量请求的网络接口
+     * @param encoder 合并和拆分请求的接口
+     * @param delivery 交付响应的接口
+     * @param windowMs 收集请求的时间窗口
+     * @param maxBatchSize 一批请求的最大数量
+     */
+    public BatchDispatcher(BlockingQueue<Request<?>> batchQueue,
+                           BlockingQueue<Request<?>> networkQueue,Network network,
+                           BatchEncoder encoder,ResponseDelivery delivery,
+                           int windowMs,int maxBatchSize) {
+        mBatchQueue = batchQueue;
+        mNetworkQueue = networkQueue;
+        mNetwork = network;
+        mEncoder = encoder;
+        mDelivery = delivery;
+        mWindowMs = windowMs;
+        mMaxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * 强制结束调度线程，队列中的请求不保证被处理
+     */
+    public void quit() {
+        mQuit = true;
+        interrupt();
+    }
+
+    @Override
+    public void run() {
+
+        Platform.get().setThreadPriorityBackground();
+
+        while (true) {
+
+            List<Request<?>> batch;
+
+            try {
+                batch = collectBatch();
+            } catch (InterruptedException e) {
+                //可能是要求结束线程
+                if (mQuit) {
+                    return;
+                }
+                continue;
+            }
+
+            //只有一个请求时不需要合并
+            if (batch.size() == 1) {
+                batch.get(0).addMarker("batch-single");
+                mNetworkQueue.add(batch.get(0));
+                continue;
+            }
+
+            if (!batch.isEmpty()) {
+                performBatch(batch);
+            }
+        }
+    }
+
+    /**
+     * 收集一批请求，已经取消的请求直接结束
+     */
+    private List<Request<?>> collectBatch() throws InterruptedException {
+
+        List<Request<?>> batch = new ArrayList<>();
+
+        Request<?> first = mBatchQueue.take();
+        long deadline = Platform.get().elapsedRealtime() + mWindowMs;
+        addToBatch(batch,first);
+
+        while (batch.size() < mMaxBatchSize) {
+
+            long remaining = deadline - Platform.get().elapsedRealtime();
+            if (remaining <= 0) {
+                break;
+            }
+
+            Request<?> request = mBatchQueue.poll(remaining,TimeUnit.MILLISECONDS);
+            if (request == null) {
+                break;
+            }
+            addToBatch(batch,request);
+        }
+
+        return batch;
+    }
+
+    private static void addToBatch(List<Request<?>> batch,Request<?> request) {
+        request.addMarker("batch-queue-take");
+        if (request.isCanceled()) {
+            request.finish("batch-discard-cancelled");
+            return;
+        }
+        batch.add(request);
+    }
+
+    /**
+     * 执行批量请求，并把拆分的响应交付给每个请求
+     */
+    private void performBatch(List<Request<?>> batch) {
+
+        try {
+
+            Request<?> batchRequest = mEncoder.createBatchRequest(batch);
+            NetworkResponse batchResponse = mNetwork.performRequest(batchRequest);
+
+            List<NetworkResponse> responses = mEncoder.splitResponse(batchResponse,batch);
+            if (responses.size() != batch.size()) {
+                throw new ParseError(batchResponse);
+            }
+
+            for (int i = 0 ; i < batch.size();i ++) {
+                deliver(batch.get(i),responses.get(i));
+            }
+
+        } catch (VolleyError volleyError) {
+            for (Request<?> request : batch) {
+                request.addMarker("batch-error");
+                mDelivery.postError(request,request.parseNetworkError(volleyError));
+            }
+        } catch (Exception e) {
+            VolleyLog.e(e,"Unhandled exception %s",e.toString());
+            for (Request<?> request : batch) {
+                mDelivery.postError(request,new VolleyError(e));
+            }
+        }
+    }
+
+    private void deliver(Request<?> request,NetworkResponse networkResponse) {
+
+        if (request.isCanceled()) {
+            request.finish("batch-discard-cancelled");
+            return;
+        }
+
+        request.addMarker("batch-response");
+
+        if (networkResponse.statusCode < 200 || networkResponse.statusCode > 299) {
+            mDelivery.postError(request,
+                    request.parseNetworkError(new ServerError(networkResponse)));
+            return;
+        }
+
+        try {
+            Response<?> response = request.parseNetworkResponse(networkResponse);
+            request.addMarker("batch-parse-complete");
+            request.markDelivered();
+            mDelivery.postResponse(request,response);
+        } catch (Exception e) {
+            VolleyLog.e(e,"Unhandled exception %s",e.toString());
+            mDelivery.postError(request,new VolleyError(e));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.android.volley;
+
+import java.util.List;
+
+/**
+ *
+ * 把多个请求合并为一个批量请求，再把批量响应拆分为每个请求的响应。
+ *
+ * 通过{@link RequestQueue#setBatchEncoder(BatchEncoder, int, int)}设置以后，
+ * {@link #canBatch(Request)}返回true的请求不经过缓存，由{@link BatchDispatcher}在一个
+ * 短时间窗口内收集，合并为一次HTTP请求发送。
+ *
+ * 作者：李富 on 2015/11/24.
+ * 邮箱：lifuzz@163.com
+ */
+public interface BatchEncoder {
+
+    /**
+     * 请求是否可以合并到批量请求中，在添加请求的线程上调用
+     */
+    public boolean canBatch(Request<?> request);
+
+    /**
+     * 创建发送给批量接口的请求，只使用它的URL、方法、请求头、消息体和重试策略，
+     * 不会调用它的解析和交付方法
+     * @param requests 需要合并的请求，至少两个
+     */
+    public Request<?> createBatchRequest(List<Request<?>> requests) throws AuthFailureError;
+
+    /**
+     * 把批量响应拆分为每个请求的响应
+     * @param batchResponse 批量请求的网络响应
+     * @param requests 合并的请求，和{@link #createBatchRequest(List)}的参数相同
+     * @return 和requests顺序相同、数量相同的响应，状态码不是2xx的响应按服务器错误交付
+     * @throws VolleyError 批量响应无法解析，所有的请求都以这个错误结束
+     */
+    public List<NetworkResponse> splitResponse(NetworkResponse batchResponse,
+                                               List<Request<?>> requests) throws VolleyError;
+}
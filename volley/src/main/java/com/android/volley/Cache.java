@@ -70,6 +70,11 @@ public interface Cache {
          */
         public long serverDate;
 
+        /**
+         * 服务器返回的资源最后修改时间(Last-Modified)
+         */
+        public long lastModified;
+
         /**
          * 用于判断时间是否过期
          */
@@ -0,0 +1,151 @@
+package com.android.volley;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ *
+ * 缓存调度线程，对缓存队列中的请求进行分类处理：
+ *
+ * 缓存命中并且没有过期的，直接交付；缓存软过期的（{@link Cache.Entry#refreshNeeded()}），
+ * 先交付一个中间响应，再放到网络队列中重新验证；没有缓存或者缓存完全过期的
+ * （{@link Cache.Entry#isExpired()}），直接放到网络队列中
+ *
+ * 作者：李富 on 2015/11/6.
+ * 邮箱：lifuzz@163.com
+ */
+public class CacheDispatcher extends Thread {
+
+    private static final boolean DEBUG = VolleyLog.DEBUG;
+
+    /**
+     * 需要分类处理的缓存队列
+     */
+    private final BlockingQueue<Request<?>> mCacheQueue;
+
+    /**
+     * 网络请求队列
+     */
+    private final BlockingQueue<Request<?>> mNetworkQueue;
+
+    /**
+     * 读取的缓存
+     */
+    private final Cache mCache;
+
+    /**
+     * 交付响应的接口
+     */
+    private final ResponseDelivery mDelivery;
+
+    /**
+     * 用于结束调度线程
+     */
+    private volatile boolean mQuit = false;
+
+    /**
+     * 创建一个新的缓存调度线程，必须调用{@link #start()}才开始处理请求
+     * @param cacheQueue 缓存队列
+     * @param networkQueue 网络请求队列
+     * @param cache 读取的缓存
+     * @param delivery 交付响应的接口
+     */
+    public CacheDispatcher(BlockingQueue<Request<?>> cacheQueue,
+                           BlockingQueue<Request<?>> networkQueue,
+                           Cache cache,ResponseDelivery delivery) {
+        mCacheQueue = cacheQueue;
+        mNetworkQueue = networkQueue;
+        mCache = cache;
+        mDelivery = delivery;
+    }
+
+    /**
+     * 强制结束调度线程，队列中的请求不保证被处理
+     */
+    public void quit() {
+        mQuit = true;
+        interrupt();
+    }
+
+    @Override
+    public void run() {
+
+        if (DEBUG) {
+            VolleyLog.v("start new dispatcher");
+        }
+
+        Platform.get().setThreadPriorityBackground();
+
+        //在工作线程上初始化缓存
+        mCache.initialize();
+
+        while (true) {
+
+            try {
+
+                final Request<?> request = mCacheQueue.take();
+                request.addMarker("cache-queue-take");
+
+                //如果请求已经被取消，则不处理
+                if (request.isCanceled()) {
+                    request.finish("cache-discard-canceled");
+                    continue;
+                }
+
+                Cache.Entry entry = mCache.get(request.getCacheKey());
+
+                //没有缓存，放到网络队列中
+                if (entry == null) {
+                    request.addMarker("cache-miss");
+                    mNetworkQueue.put(request);
+                    continue;
+                }
+
+                //缓存完全过期，放到网络队列中
+                if (entry.isExpired()) {
+                    request.addMarker("cache-hit-expired");
+                    request.setCacheEntry(entry);
+                    mNetworkQueue.put(request);
+                    continue;
+                }
+
+                //缓存命中，在工作线程上解析缓存数据
+                request.addMarker("cache-hit");
+                Response<?> response = request.parseNetworkResponse(
+                        new NetworkResponse(entry.data,entry.responseHeaders));
+                request.addMarker("cache-hit-parsed");
+
+                if (!entry.refreshNeeded()) {
+
+                    //缓存没有软过期，直接交付
+                    mDelivery.postResponse(request,response);
+
+                } else {
+
+                    //缓存软过期，先交付中间响应，再到网络上重新验证
+                    request.addMarker("cache-hit-refresh-needed");
+                    request.setCacheEntry(entry);
+
+                    response.intermediate = true;
+
+                    //交付完成以后再放到网络队列中
+                    mDelivery.postResponse(request, response, new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                mNetworkQueue.put(request);
+                            } catch (InterruptedException e) {
+                                //不会发生
+                            }
+                        }
+                    });
+                }
+
+            } catch (InterruptedException e) {
+                //可能是要求结束线程
+                if (mQuit) {
+                    return;
+                }
+            }
+        }
+    }
+}
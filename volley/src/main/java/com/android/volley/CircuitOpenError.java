@@ -0,0 +1,22 @@
+package com.android.volley;
+
+/**
+ *
+ * 主机的熔断器处于打开状态，请求没有发送就以失败结束
+ *
+ * 作者：李富 on 2015/11/28.
+ * 邮箱：lifuzz@163.com
+ */
+@SuppressWarnings("serial")
+public class CircuitOpenError extends NetworkError {
+
+    /**
+     * 熔断的主机
+     */
+    public final String host;
+
+    public CircuitOpenError(String host) {
+        super();
+        this.host = host;
+    }
+}
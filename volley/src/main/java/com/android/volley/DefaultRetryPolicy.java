@@ -1,8 +1,13 @@
 package com.android.volley;
 
+import java.util.Random;
+
 /**
  * 默认重试策略
  *
+ * 每次重试的超时时间按退避系数增加。重试之前随机等待0到base * 2^重试次数毫秒
+ * （full jitter，不超过上限），避免大量请求在服务器故障时同时重试
+ *
  * 作者：李富 on 2015/10/23.
  * 邮箱：lifuzz@163.com
  */
@@ -39,6 +44,28 @@ public class DefaultRetryPolicy implements RetryPolicy {
     /** The default backoff multiplier */
     private static final float DEFAULT_BACKOFF_MUL = 1f;
 
+    /**
+     * 默认重试等待时间的基数，以毫秒为单位
+     */
+    public static final int DEFAULT_RETRY_DELAY_BASE_MS = 100;
+
+    /**
+     * 默认重试等待时间的上限，以毫秒为单位
+     */
+    public static final int DEFAULT_RETRY_DELAY_CAP_MS = 5000;
+
+    private static final Random RANDOM = new Random();
+
+    /**
+     * 重试等待时间的基数
+     */
+    private final int mRetryDelayBaseMs;
+
+    /**
+     * 重试等待时间的上限
+     */
+    private final int mRetryDelayCapMs;
+
 
     /**
      * 默认重试策略的构造器
@@ -47,9 +74,25 @@ public class DefaultRetryPolicy implements RetryPolicy {
      * @param backoffMultiplier Backoff multiplier for the policy.
      */
     public DefaultRetryPolicy(int initialTimeOutMs,int maxNumRetries,float backoffMultiplier){
+        this(initialTimeOutMs,maxNumRetries,backoffMultiplier,DEFAULT_RETRY_DELAY_BASE_MS,
+                DEFAULT_RETRY_DELAY_CAP_MS);
+    }
+
+    /**
+     * 默认重试策略的构造器
+     * @param initialTimeOutMs 最大超时时间
+     * @param maxNumRetries 最大重试次数
+     * @param backoffMultiplier Backoff multiplier for the policy.
+     * @param retryDelayBaseMs 重试等待时间的基数，0表示立即重试
+     * @param retryDelayCapMs 重试等待时间的上限
+     */
+    public DefaultRetryPolicy(int initialTimeOutMs,int maxNumRetries,float backoffMultiplier,
+                              int retryDelayBaseMs,int retryDelayCapMs){
         mCurrentTimeoutMs = initialTimeOutMs;
         mMaxNumRetries = maxNumRetries;
         mBackoffMultiplier = backoffMultiplier;
+        mRetryDelayBaseMs = retryDelayBaseMs;
+        mRetryDelayCapMs = retryDelayCapMs;
     }
 
     /**
@@ -72,7 +115,7 @@ public class DefaultRetryPolicy implements RetryPolicy {
      */
     @Override
     public int getCurrentRetryCount() {
-        return mMaxNumRetries;
+        return mCurrentRetryCount;
     }
 
     /**
@@ -88,6 +131,26 @@ public class DefaultRetryPolicy implements RetryPolicy {
         }
     }
 
+    @Override
+    public long getRetryDelayMs() {
+        return fullJitterDelay(mRetryDelayBaseMs,mRetryDelayCapMs,mCurrentRetryCount);
+    }
+
+    /**
+     * 计算full jitter的指数退避等待时间：0到min(cap, base * 2^(retryCount - 1))之间的随机值
+     * @param baseMs 等待时间的基数
+     * @param capMs 等待时间的上限
+     * @param retryCount 第几次重试，从1开始
+     */
+    public static long fullJitterDelay(int baseMs,int capMs,int retryCount) {
+        if (baseMs <= 0 || capMs <= 0) {
+            return 0;
+        }
+        int shift = Math.min(30,Math.max(0,retryCount - 1));
+        long bound = Math.min((long) capMs,(long) baseMs << shift);
+        return (long) (RANDOM.nextDouble() * (bound + 1));
+    }
+
     /**
      * 如果当前重试次数小于等于最大重试次数，返回true，否则返回false
      */
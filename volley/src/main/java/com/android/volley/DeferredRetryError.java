@@ -0,0 +1,31 @@
+package com.android.volley;
+
+/**
+ *
+ * 网络接口决定重试这个请求，但不在当前线程上等待。
+ *
+ * {@link NetworkDispatcher}收到这个错误时通过{@link RequestQueue}在{@link #delayMs}毫秒以后
+ * 把请求重新放到队列中，调度线程立即处理下一个请求。
+ *
+ * 作者：李富 on 2015/11/27.
+ * 邮箱：lifuzz@163.com
+ */
+@SuppressWarnings("serial")
+public class DeferredRetryError extends VolleyError {
+
+    /**
+     * 重新放到队列之前等待的毫秒数
+     */
+    public final long delayMs;
+
+    /**
+     * 导致重试的错误，不能重新放到队列时交付这个错误
+     */
+    public final VolleyError error;
+
+    public DeferredRetryError(long delayMs,VolleyError error) {
+        super(error);
+        this.delayMs = delayMs;
+        this.error = error;
+    }
+}
@@ -0,0 +1,90 @@
+package com.android.volley;
+
+import java.util.concurrent.Executor;
+
+/**
+ *
+ * 通过{@link Executor}交付响应和错误，默认在主线程上交付
+ *
+ * 作者：李富 on 2015/11/5.
+ * 邮箱：lifuzz@163.com
+ */
+public class ExecutorDelivery implements ResponseDelivery {
+
+    /**
+     * 用于交付响应，通常在主线程上执行
+     */
+    private final Executor mResponsePoster;
+
+    /**
+     * 创建一个新的响应交付接口，主线程上交付使用{@link Platform#getMainThreadExecutor()}
+     * @param executor 用于交付响应的执行器
+     */
+    public ExecutorDelivery(Executor executor) {
+        mResponsePoster = executor;
+    }
+
+    @Override
+    public void postResponse(Request<?> request, Response<?> response) {
+        postResponse(request,response,null);
+    }
+
+    @Override
+    public void postResponse(Request<?> request, Response<?> response, Runnable runnable) {
+        request.markDelivered();
+        request.addMarker("post-response");
+        mResponsePoster.execute(new ResponseDeliveryRunnable(request,response,runnable));
+    }
+
+    @Override
+    public void postError(Request<?> request, VolleyError error) {
+        request.addMarker("post-error");
+        Response<?> response = Response.error(error);
+        mResponsePoster.execute(new ResponseDeliveryRunnable(request,response,null));
+    }
+
+    /**
+     * 在主线程上把响应交付给请求的Runnable
+     */
+    @SuppressWarnings("rawtypes")
+    private class ResponseDeliveryRunnable implements Runnable {
+
+        private final Request mRequest;
+        private final Response mResponse;
+        private final Runnable mRunnable;
+
+        public ResponseDeliveryRunnable(Request request,Response response,Runnable runnable) {
+            mRequest = request;
+            mResponse = response;
+            mRunnable = runnable;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void run() {
+
+            //如果请求已经被取消，则结束请求，不交付
+            if (mRequest.isCanceled()) {
+                mRequest.finish("canceled-at-delivery");
+                return;
+            }
+
+            if (mResponse.isSuccess()) {
+                mRequest.deliverResponse(mResponse.result);
+            } else {
+                mRequest.deliverError(mResponse.error);
+            }
+
+            //如果是中间响应，则添加一个标记，否则结束请求
+            if (mResponse.intermediate) {
+                mRequest.addMarker("intermediate-response");
+            } else {
+                mRequest.finish("done");
+            }
+
+            if (mRunnable != null) {
+                mRunnable.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.android.volley;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ *
+ * 把请求交给{@link Executor}执行的网络调度线程。
+ *
+ * 调度线程只从请求队列中取出请求，每个请求在执行器的一个任务中执行，同时执行的请求数量由一个
+ * 全局的信号量和每个主机的上限控制。主机已经达到上限时，请求暂存在这个主机的队列中，不占用
+ * 全局的名额，也不阻塞调度线程；同一主机的请求完成时，直接把名额交给暂存的请求。
+ *
+ * 网络接口是{@link AsyncNetwork}时，名额在网络接口的完成回调中归还，上限同样有效。
+ *
+ * 在支持虚拟线程的JVM上可以传入每个任务一个虚拟线程的执行器，阻塞的HTTP栈（例如
+ * {@link com.android.volley.toolbox.HurlStack}）可以同时执行上千个请求。
+ *
+ * 作者：李富 on 2015/11/22.
+ * 邮箱：lifuzz@163.com
+ */
+public class ExecutorNetworkDispatcher extends NetworkDispatcher {
+
+    /**
+     * 需要处理的请求队列，按优先级排序
+     */
+    private final BlockingQueue<Request<?>> mQueue;
+
+    /**
+     * 执行请求的执行器
+     */
+    private final Executor mExecutor;
+
+    /**
+     * 全局同时执行的请求数量
+     */
+    private final Semaphore mPermits;
+
+    /**
+     * 每个主机同时执行的最大请求数量
+     */
+    private final int mMaxRequestsPerHost;
+
+    /**
+     * 每个主机的执行状态，用自身加锁
+     */
+    private final Map<String,HostState> mHosts = new HashMap<>();
+
+    /**
+     * @param queue 请求队列
+     * @param network 执行请求的网络接口
+     * @param cache 写入响应的缓存
+     * @param delivery 交付响应的接口
+     * @param executor 执行请求的执行器
+     * @param maxConcurrentRequests 全局同时执行的最大请求数量
+     * @param maxRequestsPerHost 每个主机同时执行的最大请求数量
+     */
+    public ExecutorNetworkDispatcher(BlockingQueue<Request<?>> queue,Network network,Cache cache,
+                                     ResponseDelivery delivery,Executor executor,
+                                     int maxConcurrentRequests,int maxRequestsPerHost) {
+        super(queue,network,cache,delivery);
+        if (maxConcurrentRequests < 1 || maxRequestsPerHost < 1) {
+            throw new IllegalArgumentException("同时执行的请求数量必须大于0");
+        }
+        mQueue = queue;
+        mExecutor = executor;
+        mPermits = new Semaphore(maxConcurrentRequests);
+        mMaxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    @Override
+    public void run() {
+
+        Platform.get().setThreadPriorityBackground();
+
+        while (true) {
+
+            Request<?> request;
+
+            try {
+                //先等待全局的名额再取请求，等待期间到达的高优先级请求仍然在队列中排序
+                mPermits.acquire();
+            } catch (InterruptedException e) {
+                //可能是要求结束线程
+                if (isQuit()) {
+                    return;
+                }
+                continue;
+            }
+
+            try {
+                //从队列中取出优先级最高的请求
+                request = mQueue.take();
+            } catch (InterruptedException e) {
+                mPermits.release();
+                if (isQuit()) {
+                    return;
+                }
+                continue;
+            }
+
+            request.addMarker("network-queue-take");
+
+            String host = hostOf(request);
+
+            synchronized (mHosts) {
+
+                HostState state = mHosts.get(host);
+                if (state == null) {
+                    state = new HostState();
+                    mHosts.put(host,state);
+                }
+
+                //主机已经达到上限，暂存请求，归还全局的名额
+                if (state.running >= mMaxRequestsPerHost) {
+                    state.parked.add(request);
+                    request.addMarker("network-host-parked");
+                    mPermits.release();
+                    continue;
+                }
+
+                state.running++;
+            }
+
+            submit(request,host);
+        }
+    }
+
+    /**
+     * 在执行器上执行请求，调用之前已经占用了全局和主机的名额
+     */
+    private void submit(final Request<?> request,final String host) {
+
+        try {
+
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    //异步的网络接口在请求真正完成时才归还名额
+                    processRequest(request,new Runnable() {
+                        @Override
+                        public void run() {
+                            onRequestComplete(host);
+                        }
+                    });
+                }
+            });
+
+        } catch (RejectedExecutionException e) {
+            onRequestComplete(host);
+            deliverError(request,new VolleyError(e));
+        }
+    }
+
+    /**
+     * 请求执行完成，名额优先交给同一主机暂存的请求
+     */
+    private void onRequestComplete(String host) {
+
+        Request<?> next;
+
+        synchronized (mHosts) {
+
+            HostState state = mHosts.get(host);
+            state.running--;
+
+            next = state.parked.poll();
+            if (next != null) {
+                state.running++;
+            } else if (state.running == 0) {
+                mHosts.remove(host);
+            }
+        }
+
+        if (next == null) {
+            mPermits.release();
+            return;
+        }
+
+        next.addMarker("network-host-unparked");
+        submit(next,host);
+    }
+
+    private static String hostOf(Request<?> request) {
+        String url = request.getUrl();
+        if (url == null) {
+            return "";
+        }
+        String host = Platform.get().getHost(url);
+        return host == null ? "" : host;
+    }
+
+    /**
+     * 一个主机正在执行的请求数量和暂存的请求
+     */
+    private static class HostState {
+
+        int running = 0;
+
+        final PriorityQueue<Request<?>> parked = new PriorityQueue<>();
+    }
+}
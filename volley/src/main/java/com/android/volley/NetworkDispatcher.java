@@ -0,0 +1,330 @@
+package com.android.volley;
+
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ *
+ * 网络调度线程，从请求队列中取出请求，执行网络请求，并交付响应。
+ *
+ * 网络接口是{@link AsyncNetwork}时，调度线程只负责把请求交给网络接口，响应在网络接口的
+ * 回调线程上解析和交付
+ *
+ * 作者：李富 on 2015/11/5.
+ * 邮箱：lifuzz@163.com
+ */
+public class NetworkDispatcher extends Thread {
+
+    /**
+     * 需要处理的请求队列，按优先级排序
+     */
+    private final BlockingQueue<Request<?>> mQueue;
+
+    /**
+     * 执行请求的网络接口
+     */
+    private final Network mNetwork;
+
+    /**
+     * 写入响应的缓存
+     */
+    private final Cache mCache;
+
+    /**
+     * 用于交付响应和错误
+     */
+    private final ResponseDelivery mDelivery;
+
+    /**
+     * 用于结束调度线程
+     */
+    private volatile boolean mQuit = false;
+
+    /**
+     * 创建一个新的网络调度线程，必须调用{@link #start()}才开始处理请求
+     * @param queue 请求队列
+     * @param network 执行请求的网络接口
+     * @param cache 写入响应的缓存
+     * @param delivery 交付响应的接口
+     */
+    public NetworkDispatcher(BlockingQueue<Request<?>> queue,Network network,
+                             Cache cache,ResponseDelivery delivery) {
+        mQueue = queue;
+        mNetwork = network;
+        mCache = cache;
+        mDelivery = delivery;
+    }
+
+    /**
+     * 强制结束调度线程，队列中的请求不保证被处理
+     */
+    public void quit() {
+        mQuit = true;
+        interrupt();
+    }
+
+    /**
+     * 给当前线程设置流量统计的标签，用于统计每个请求的流量
+     */
+    private void addTrafficStatsTag(Request<?> request) {
+        Platform.get().setThreadStatsTag(request.getTrafficStatsTag());
+    }
+
+    @Override
+    public void run() {
+
+        Platform.get().setThreadPriorityBackground();
+
+        while (true) {
+
+            Request<?> request;
+
+            try {
+                //从队列中取出优先级最高的请求
+                request = mQueue.take();
+            } catch (InterruptedException e) {
+                //可能是要求结束线程
+                if (mQuit) {
+                    return;
+                }
+                continue;
+            }
+
+            request.addMarker("network-queue-take");
+            processRequest(request);
+        }
+    }
+
+    /**
+     * 在当前线程上执行一个请求并交付结果
+     */
+    void processRequest(Request<?> request) {
+        processRequest(request,null);
+    }
+
+    /**
+     * 在当前线程上执行一个请求并交付结果
+     * @param onComplete 请求处理完成时执行一次，网络接口是{@link AsyncNetwork}时在网络接口的
+     *                   回调线程上执行，可以为null
+     */
+    void processRequest(Request<?> request,Runnable onComplete) {
+
+        Runnable done = new OnceRunnable(onComplete);
+        boolean handedOff = false;
+
+        try {
+
+            //如果请求已经被取消，则不执行网络请求
+            if (request.isCanceled()) {
+                request.finish("network-discard-cancelled");
+                return;
+            }
+
+            addTrafficStatsTag(request);
+
+            //异步执行，不等待响应，完成回调在网络接口的回调中执行
+            if (mNetwork instanceof AsyncNetwork) {
+                performRequestAsync(request,done);
+                handedOff = true;
+                return;
+            }
+
+            //执行网络请求
+            NetworkResponse networkResponse = mNetwork.performRequest(request);
+            handleNetworkResponse(request,networkResponse);
+
+        } catch (VolleyError volleyError) {
+            handleNetworkError(request,volleyError);
+        } catch (Exception e) {
+            VolleyLog.e(e,"Unhandled exception %s",e.toString());
+            mDelivery.postError(request,new VolleyError(e));
+        } finally {
+            if (!handedOff) {
+                done.run();
+            }
+        }
+    }
+
+    /**
+     * 是否已经要求结束调度线程
+     */
+    boolean isQuit() {
+        return mQuit;
+    }
+
+    /**
+     * 直接交付一个错误，用于无法执行的请求
+     */
+    void deliverError(Request<?> request,VolleyError error) {
+        mDelivery.postError(request,error);
+    }
+
+    /**
+     * 把请求交给异步的网络接口，响应在网络接口的回调线程上处理
+     */
+    private void performRequestAsync(final Request<?> request,final Runnable done) {
+
+        ((AsyncNetwork) mNetwork).performRequest(request,new AsyncNetwork.OnRequestComplete() {
+
+            @Override
+            public void onSuccess(NetworkResponse networkResponse) {
+                try {
+                    handleNetworkResponse(request,networkResponse);
+                } finally {
+                    done.run();
+                }
+            }
+
+            @Override
+            public void onError(VolleyError error) {
+                try {
+                    handleNetworkError(request,error);
+                } finally {
+                    done.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * 解析网络响应，写入缓存并交付，同步和异步的网络接口共用
+     */
+    private void handleNetworkResponse(Request<?> request,NetworkResponse networkResponse) {
+
+        try {
+
+            request.addMarker("network-http-complete");
+
+            //把响应交付给等待这个请求的重复请求
+            deliverToWaitingRequests(request,networkResponse);
+
+            //如果服务器返回304，并且已经交付了响应，则结束请求
+            if (networkResponse.notModified && request.hasHadResponseDelivered()) {
+                request.finish("not-modified");
+                return;
+            }
+
+            //在工作线程上解析响应
+            Response<?> response = request.parseNetworkResponse(networkResponse);
+            request.addMarker("network-parse-complete");
+
+            //把响应写入缓存，没有访问服务器的过期数据不写入，保留缓存条目原来的过期时间
+            if (networkResponse.stale) {
+                request.addMarker("network-cache-skip-stale");
+            } else if (request.ShouldCache() && response.cacheEntry != null) {
+                mCache.put(request.getCacheKey(),response.cacheEntry);
+                request.addMarker("network-cache-written");
+            }
+
+            request.markDelivered();
+            mDelivery.postResponse(request,response);
+
+        } catch (Exception e) {
+            VolleyLog.e(e,"Unhandled exception %s",e.toString());
+            mDelivery.postError(request,new VolleyError(e));
+        }
+    }
+
+    /**
+     * 交付网络错误，同步和异步的网络接口共用
+     */
+    private void handleNetworkError(Request<?> request,VolleyError error) {
+
+        //延迟重试的请求还没有完成，等待的重复请求继续等待它的结果
+        if (error instanceof DeferredRetryError) {
+            DeferredRetryError retry = (DeferredRetryError) error;
+            RequestQueue requestQueue = request.getRequestQueue();
+            if (requestQueue != null && requestQueue.scheduleRetry(request,retry.delayMs)) {
+                return;
+            }
+            error = retry.error;
+        }
+
+        parseAndDeliverNetworkError(request,error);
+        deliverErrorToWaitingRequests(request,error);
+    }
+
+    /**
+     * 等待的重复请求共享同一个网络响应，各自解析以后交付
+     */
+    private void deliverToWaitingRequests(Request<?> request,NetworkResponse networkResponse) {
+
+        Queue<Request<?>> waitingRequests = drainWaitingRequests(request);
+        if (waitingRequests == null) {
+            return;
+        }
+
+        for (Request<?> waiting : waitingRequests) {
+
+            if (waiting.isCanceled()) {
+                waiting.finish("coalesced-discard-cancelled");
+                continue;
+            }
+
+            waiting.addMarker("coalesced-network-response");
+
+            try {
+                Response<?> response = waiting.parseNetworkResponse(networkResponse);
+                waiting.markDelivered();
+                mDelivery.postResponse(waiting,response);
+            } catch (Exception e) {
+                VolleyLog.e(e,"Unhandled exception %s",e.toString());
+                mDelivery.postError(waiting,new VolleyError(e));
+            }
+        }
+    }
+
+    /**
+     * 等待的重复请求共享同一个网络错误
+     */
+    private void deliverErrorToWaitingRequests(Request<?> request,VolleyError error) {
+
+        Queue<Request<?>> waitingRequests = drainWaitingRequests(request);
+        if (waitingRequests == null) {
+            return;
+        }
+
+        for (Request<?> waiting : waitingRequests) {
+
+            if (waiting.isCanceled()) {
+                waiting.finish("coalesced-discard-cancelled");
+                continue;
+            }
+
+            waiting.addMarker("coalesced-network-error");
+            parseAndDeliverNetworkError(waiting,error);
+        }
+    }
+
+    private Queue<Request<?>> drainWaitingRequests(Request<?> request) {
+        RequestQueue requestQueue = request.getRequestQueue();
+        return requestQueue == null ? null : requestQueue.drainWaitingRequests(request);
+    }
+
+    private void parseAndDeliverNetworkError(Request<?> request,VolleyError error) {
+        error = request.parseNetworkError(error);
+        mDelivery.postError(request,error);
+    }
+
+    /**
+     * 只执行一次的回调，异步的网络接口同步抛出异常以后仍然可能回调
+     */
+    private static class OnceRunnable implements Runnable {
+
+        private final AtomicBoolean mDone = new AtomicBoolean();
+
+        private final Runnable mRunnable;
+
+        OnceRunnable(Runnable runnable) {
+            mRunnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            if (mRunnable != null && mDone.compareAndSet(false,true)) {
+                mRunnable.run();
+            }
+        }
+    }
+}
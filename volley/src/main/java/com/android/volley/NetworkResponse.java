@@ -33,6 +33,11 @@ public class NetworkResponse {
      */
     public final boolean notModified;
 
+    /**
+     * 如果这个响应是没有访问服务器、直接使用的过期缓存数据，则这个值为true，不能再写入缓存
+     */
+    public final boolean stale;
+
     /**
      * 创建一个新的网络响应
      * @param statusCode HTTP状态码
@@ -42,11 +47,25 @@ public class NetworkResponse {
      */
     public NetworkResponse(int statusCode, byte[] data, Map<String, String> headers,
                            boolean notModified) {
+        this(statusCode,data,headers,notModified,false);
+    }
+
+    /**
+     * 创建一个新的网络响应
+     * @param statusCode HTTP状态码
+     * @param data 响应体
+     * @param headers 响应头或者没有为空
+     * @param notModified 如果服务器返回一个304并且已经缓存到本地，则这个值为true
+     * @param stale 如果是没有访问服务器的过期缓存数据，则这个值为true
+     */
+    public NetworkResponse(int statusCode, byte[] data, Map<String, String> headers,
+                           boolean notModified, boolean stale) {
 
         this.statusCode = statusCode;
         this.data = data;
         this.headers = headers;
         this.notModified = notModified;
+        this.stale = stale;
 
     }
 
@@ -0,0 +1,23 @@
+package com.android.volley;
+
+/**
+ *
+ * 表明服务器的响应无法解析
+ *
+ * 作者：李富 on 2015/11/17.
+ * 邮箱：lifuzz@163.com
+ */
+@SuppressWarnings("serial")
+public class ParseError extends VolleyError {
+
+    public ParseError() {
+    }
+
+    public ParseError(NetworkResponse networkResponse) {
+        super(networkResponse);
+    }
+
+    public ParseError(Throwable cause) {
+        super(cause);
+    }
+}
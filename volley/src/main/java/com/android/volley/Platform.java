@@ -0,0 +1,143 @@
+package com.android.volley;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ *
+ * Volley用到的平台相关的功能：时钟、URL的主机名、线程优先级、流量统计标签、交付响应的线程和日志。
+ *
+ * 核心代码只通过这个类访问平台，不直接依赖Android的类，可以在JVM上编译和运行。
+ * 类路径上有com.android.volley.AndroidPlatform(只和Android的代码一起编译)时使用它，
+ * 否则使用这里的JVM实现。混淆时需要保留AndroidPlatform。
+ *
+ * 作者：李富 on 2015/11/30.
+ * 邮箱：lifuzz@163.com
+ */
+public class Platform {
+
+    /**
+     * 日志级别，和android.util.Log的取值相同
+     */
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int ERROR = 6;
+    public static final int ASSERT = 7;
+
+    private static final String ANDROID_PLATFORM = "com.android.volley.AndroidPlatform";
+
+    private static final Platform PLATFORM = findPlatform();
+
+    /**
+     * JVM上交付响应的线程，第一次使用时创建
+     */
+    private ExecutorService mDeliveryExecutor;
+    private volatile Thread mDeliveryThread;
+
+    public static Platform get() {
+        return PLATFORM;
+    }
+
+    private static Platform findPlatform() {
+        try {
+            return (Platform) Class.forName(ANDROID_PLATFORM).getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            //不在Android上
+            return new Platform();
+        } catch (LinkageError e) {
+            //Android的jar放到了JVM上，找不到android.*的类
+            return new Platform();
+        }
+    }
+
+    protected Platform() {
+    }
+
+    /**
+     * 单调的时钟，以毫秒为单位，只用来计算时间间隔
+     */
+    public long elapsedRealtime() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /**
+     * URL的主机名，解析失败或者没有主机名时返回null
+     */
+    public String getHost(String url) {
+        try {
+            String host = new URL(url).getHost();
+            return host == null || host.length() == 0 ? null : host;
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 把当前线程设为后台优先级，JVM上不做任何事
+     */
+    public void setThreadPriorityBackground() {
+    }
+
+    /**
+     * 设置当前线程的流量统计标签，JVM上不做任何事
+     */
+    public void setThreadStatsTag(int tag) {
+    }
+
+    /**
+     * 默认交付响应的执行器。Android上是主线程，JVM上是一个单独的守护线程
+     */
+    public synchronized Executor getMainThreadExecutor() {
+
+        if (mDeliveryExecutor == null) {
+            mDeliveryExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r,"Volley-Delivery");
+                    thread.setDaemon(true);
+                    mDeliveryThread = thread;
+                    return thread;
+                }
+            });
+        }
+
+        return mDeliveryExecutor;
+    }
+
+    /**
+     * 当前线程是不是{@link #getMainThreadExecutor()}的线程
+     */
+    public boolean isMainThread() {
+        return Thread.currentThread() == mDeliveryThread;
+    }
+
+    public boolean isLoggable(String tag,int level) {
+        return Logger.getLogger(tag).isLoggable(toLevel(level));
+    }
+
+    /**
+     * 输出日志
+     * @param level {@link #VERBOSE}、{@link #DEBUG}、{@link #ERROR}或者{@link #ASSERT}
+     * @param tr 可以为null
+     */
+    public void log(int level,String tag,String msg,Throwable tr) {
+        Logger.getLogger(tag).log(toLevel(level),msg,tr);
+    }
+
+    private static Level toLevel(int level) {
+        switch (level) {
+            case VERBOSE:
+                return Level.FINEST;
+            case DEBUG:
+                return Level.FINE;
+            default:
+                return Level.SEVERE;
+        }
+    }
+}
@@ -1,12 +1,5 @@
 package com.android.volley;
 
-import android.net.TrafficStats;
-import android.net.Uri;
-import android.os.Handler;
-import android.os.Looper;
-import android.os.SystemClock;
-import android.text.TextUtils;
-
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.Collections;
@@ -56,7 +49,7 @@ public abstract class Request<T> implements Comparable<Request<T>>  {
     private final String mUrl ;
 
     /**
-     * {@link TrafficStats} 的默认标签
+     * 流量统计(TrafficStats)的默认标签
      */
     private final int mDefaultTrafficStatsTag;
 
@@ -83,7 +76,7 @@ public abstract class Request<T> implements Comparable<Request<T>>  {
     /**
      * 请求是否取消
      */
-    private boolean mCanceled = false;
+    private volatile boolean mCanceled = false;
 
     /**
      *这个请求的响应是否被完成
@@ -114,6 +107,11 @@ public abstract class Request<T> implements Comparable<Request<T>>  {
      */
     private Object mTag;
 
+    /**
+     * 请求被取消时的回调，用于通知等待结果的{@link RequestFuture}
+     */
+    private volatile Runnable mCancelListener;
+
     /**
      *由这两个参数创建一个新的请求。注：这个请求的响应没有提供正常的响应，它的响应由能更好的子类提供。
      */
@@ -131,8 +129,21 @@ public abstract class Request<T> implements Comparable<Request<T>>  {
 
         setRetryPolicy(new DefaultRetryPolicy());
 
-        mDefaultTrafficStatsTag = TextUtils.isEmpty(url) ? 0: Uri.parse(url).getHost().hashCode();
+        mDefaultTrafficStatsTag = findDefaultTrafficStatsTag(url);
+
+    }
+
+    /**
+     * 主机名的哈希值，没有主机名时为0
+     */
+    private static int findDefaultTrafficStatsTag(String url) {
+
+        if (url == null || url.length() == 0) {
+            return 0;
+        }
 
+        String host = Platform.get().getHost(url);
+        return host == null ? 0 : host.hashCode();
     }
 
     /**
@@ -157,7 +168,7 @@ public abstract class Request<T> implements Comparable<Request<T>>  {
     }
 
     /**
-     * @return A tag for use with {@link TrafficStats#setThreadStatsTag(int)}
+     * @return A tag for use with {@link Platform#setThreadStatsTag(int)}
      */
     public int getTrafficStatsTag() {
         return mDefaultTrafficStatsTag;
@@ -181,7 +192,7 @@ public abstract class Request<T> implements Comparable<Request<T>>  {
         if (VolleyLog.MarkerLog.ENABLED) {
             mEventLog.add(tag,Thread.currentThread().getId());
         } else if (mRequestBirthTime == 0) {
-            mRequestBirthTime = SystemClock.elapsedRealtime();
+            mRequestBirthTime = Platform.get().elapsedRealtime();
         }
     }
 
@@ -202,15 +213,13 @@ public abstract class Request<T> implements Comparable<Request<T>>  {
 
             final long threadId = Thread.currentThread().getId();
 
-            if (Looper.myLooper() != Looper.getMainLooper()){
+            if (!Platform.get().isMainThread()){
                 // If we finish marking off of the main thread, we need to
                 // actually do it on the main thread to ensure correct ordering.
                 /**
                  * 如果主线程完成了标记，我们需要在主线程上实际执行他，以确保正确的顺序
                  */
-               Handler mainThread = new Handler(Looper.getMainLooper());
-
-                mainThread.post(new Runnable() {
+                Platform.get().getMainThreadExecutor().execute(new Runnable() {
                     @Override
                     public void run() {
                         mEventLog.add(tag,threadId);
@@ -225,7 +234,7 @@ public abstract class Request<T> implements Comparable<Request<T>>  {
             mEventLog.finish(this.toString());
 
         } else {
-            long requestTime = SystemClock.currentThreadTimeMillis() - mRequestBirthTime;
+            long requestTime = Platform.get().elapsedRealtime() - mRequestBirthTime;
 
             if (requestTime >= SLOW_REQUEST_THRESHOLD_MS) {
                 VolleyLog.d("%d ms: %s" ,requestTime,this.toString());
@@ -242,6 +251,13 @@ public abstract class Request<T> implements Comparable<Request<T>>  {
         mRequestQueue = requestQueue;
     }
 
+    /**
+     * 获取请求所在的队列，如果没有添加到队列中则返回null
+     */
+    public RequestQueue getRequestQueue() {
+        return mRequestQueue;
+    }
+
     /**
      *使用{@link RequestQueue} 设置请求的序列号
      * @param sequence
@@ -300,6 +316,17 @@ public abstract class Request<T> implements Comparable<Request<T>>  {
      */
     public void cancele() {
         mCanceled = true;
+        Runnable listener = mCancelListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * 设置请求被取消时的回调，在调用{@link #cancele()}的线程上执行
+     */
+    void setCancelListener(Runnable listener) {
+        mCancelListener = listener;
     }
 
     /**
@@ -0,0 +1,234 @@
+package com.android.volley;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ *
+ * 请求的结果，可以在后台线程上阻塞等待。
+ *
+ * 同时是请求的{@link Response.Listener}和{@link Response.ErrorListener}，创建请求时传入，
+ * 再通过{@link RequestQueue#submit(Request, RequestFuture)}添加到队列：
+ *
+ * <pre>
+ * RequestFuture&lt;String&gt; future = RequestFuture.newFuture();
+ * queue.submit(new StringRequest(url,future,future),future);
+ * String result = future.get(10,TimeUnit.SECONDS);
+ * </pre>
+ *
+ * 取消这个结果会取消请求；请求被取消（包括通过{@link RequestQueue#cancelAll(Object)}）
+ * 也会取消这个结果，等待的线程收到{@link CancellationException}。
+ * {@link #addListener(Runnable, Executor)}在完成时执行回调，可以用来组合多个请求，
+ * 或者转换为其他的Future实现。
+ *
+ * 不能在交付响应的线程（默认是主线程）上调用{@link #get()}，否则会一直等待。
+ *
+ * 作者：李富 on 2015/11/23.
+ * 邮箱：lifuzz@163.com
+ */
+public class RequestFuture<T> implements Future<T>,Response.Listener<T>,Response.ErrorListener {
+
+    private Request<?> mRequest;
+
+    private boolean mResultReceived = false;
+
+    private T mResult;
+
+    private VolleyError mException;
+
+    private boolean mCancelled = false;
+
+    /**
+     * 完成时执行的回调，完成以后为null
+     */
+    private List<ListenerEntry> mListeners = new ArrayList<>();
+
+    public static <E> RequestFuture<E> newFuture() {
+        return new RequestFuture<E>();
+    }
+
+    private RequestFuture() {
+    }
+
+    /**
+     * 设置这个结果对应的请求，取消时会取消这个请求
+     */
+    public void setRequest(Request<?> request) {
+        boolean cancelled;
+        synchronized (this) {
+            mRequest = request;
+            cancelled = mCancelled;
+        }
+        if (cancelled) {
+            request.cancele();
+            return;
+        }
+
+        //请求从外部取消（例如RequestQueue#cancelAll）时不会交付结果，这里结束等待
+        request.setCancelListener(new Runnable() {
+            @Override
+            public void run() {
+                cancel(false);
+            }
+        });
+        if (request.isCanceled()) {
+            cancel(false);
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+
+        Request<?> request;
+
+        synchronized (this) {
+            if (isDone()) {
+                return false;
+            }
+            mCancelled = true;
+            request = mRequest;
+            notifyAll();
+        }
+
+        if (request != null) {
+            request.cancele();
+        }
+
+        runListeners();
+        return true;
+    }
+
+    @Override
+    public T get() throws InterruptedException,ExecutionException {
+        try {
+            return doGet(null);
+        } catch (TimeoutException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    public T get(long timeout,TimeUnit unit)
+            throws InterruptedException,ExecutionException,TimeoutException {
+        return doGet(TimeUnit.MILLISECONDS.convert(timeout,unit));
+    }
+
+    private synchronized T doGet(Long timeoutMs)
+            throws InterruptedException,ExecutionException,TimeoutException {
+
+        if (timeoutMs == null) {
+            while (!isDone()) {
+                wait(0);
+            }
+        } else if (timeoutMs > 0) {
+            long deadline = Platform.get().elapsedRealtime() + timeoutMs;
+            long remaining = timeoutMs;
+            while (!isDone() && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - Platform.get().elapsedRealtime();
+            }
+        }
+
+        if (mCancelled) {
+            throw new CancellationException();
+        }
+
+        if (mException != null) {
+            throw new ExecutionException(mException);
+        }
+
+        if (!mResultReceived) {
+            throw new TimeoutException();
+        }
+
+        return mResult;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mResultReceived || mException != null || mCancelled;
+    }
+
+    @Override
+    public void onResponse(T response) {
+        synchronized (this) {
+            if (isDone()) {
+                return;
+            }
+            mResultReceived = true;
+            mResult = response;
+            notifyAll();
+        }
+        runListeners();
+    }
+
+    @Override
+    public void onErrorListener(VolleyError error) {
+        synchronized (this) {
+            if (isDone()) {
+                return;
+            }
+            mException = error;
+            notifyAll();
+        }
+        runListeners();
+    }
+
+    /**
+     * 添加一个完成时执行的回调，已经完成则立即执行
+     * @param listener 回调
+     * @param executor 执行回调的执行器
+     */
+    public void addListener(Runnable listener,Executor executor) {
+        synchronized (this) {
+            if (mListeners != null) {
+                mListeners.add(new ListenerEntry(listener,executor));
+                return;
+            }
+        }
+        executor.execute(listener);
+    }
+
+    private void runListeners() {
+
+        List<ListenerEntry> listeners;
+        synchronized (this) {
+            listeners = mListeners;
+            mListeners = null;
+        }
+
+        if (listeners == null) {
+            return;
+        }
+
+        for (ListenerEntry entry : listeners) {
+            try {
+                entry.executor.execute(entry.listener);
+            } catch (RuntimeException e) {
+                VolleyLog.e(e,"RequestFuture listener failed");
+            }
+        }
+    }
+
+    private static class ListenerEntry {
+
+        final Runnable listener;
+        final Executor executor;
+
+        ListenerEntry(Runnable listener,Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+}
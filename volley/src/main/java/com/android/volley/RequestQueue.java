@@ -1,17 +1,562 @@
 package com.android.volley;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  *网络访问队列类
  *
+ * 请求按{@link Request#compareTo(Request)}排序（先按优先级，优先级相同再按序列号），
+ * 由多个{@link NetworkDispatcher}线程并发执行，或者由一个{@link ExecutorNetworkDispatcher}
+ * 交给调用者提供的{@link Executor}执行
+ *
  * 作者：李富 on 2015/10/20.
  * 邮箱：lifuzz@163.com
  */
 @SuppressWarnings("rawtypes")
 public class RequestQueue {
 
+    /**
+     * 默认网络调度线程的数量
+     */
+    private static final int DEFAULT_NETWORK_THREAD_POOL_SIZE = 4;
+
+    /**
+     * 用于生成请求的序列号，保证同优先级的请求先进先出
+     */
+    private AtomicInteger mSequenceGenerator = new AtomicInteger();
+
+    /**
+     * 队列正在处理的请求，包括等待执行的和正在执行的请求
+     */
+    private final Set<Request<?>> mCurrentRequests = new HashSet<>();
+
+    /**
+     * 按标签索引的正在处理的请求，用于按标签取消请求，用自身加锁
+     */
+    private final Map<Object,Set<Request<?>>> mTaggedRequests = new HashMap<>();
+
+    /**
+     * 每个缓存键(key)正在执行的请求，相同缓存键的请求只有这一个会被执行
+     */
+    private final Map<String,Request<?>> mInFlightRequests = new HashMap<>();
+
+    /**
+     * 等待同一缓存键正在执行的请求完成的重复请求，和{@link #mInFlightRequests}一起用
+     * mWaitingRequests加锁
+     */
+    private final Map<String,Queue<Request<?>>> mWaitingRequests = new HashMap<>();
+
+    /**
+     * 缓存分类的优先级队列
+     */
+    private final PriorityBlockingQueue<Request<?>> mCacheQueue =
+            new PriorityBlockingQueue<>();
+
+    /**
+     * 网络请求的优先级队列
+     */
+    private final PriorityBlockingQueue<Request<?>> mNetworkQueue =
+            new PriorityBlockingQueue<>();
+
+    /**
+     * 可以合并为批量请求的请求队列
+     */
+    private final PriorityBlockingQueue<Request<?>> mBatchQueue =
+            new PriorityBlockingQueue<>();
+
+    /**
+     * 读取和写入响应的缓存
+     */
+    private final Cache mCache;
+
+    /**
+     * 执行请求的网络接口
+     */
+    private final Network mNetwork;
+
+    /**
+     * 交付响应的接口
+     */
+    private final ResponseDelivery mDelivery;
+
+    /**
+     * 网络调度线程
+     */
+    private NetworkDispatcher[] mDispatchers;
+
+    /**
+     * 执行网络请求的执行器，为null则使用固定数量的网络调度线程
+     */
+    private final Executor mNetworkExecutor;
+
+    /**
+     * 执行器模式下全局同时执行的最大请求数量
+     */
+    private final int mMaxConcurrentRequests;
+
+    /**
+     * 执行器模式下每个主机同时执行的最大请求数量
+     */
+    private final int mMaxRequestsPerHost;
+
+    /**
+     * 缓存调度线程
+     */
+    private CacheDispatcher mCacheDispatcher;
+
+    /**
+     * 合并和拆分批量请求的接口，为null则不合并请求
+     */
+    private BatchEncoder mBatchEncoder;
+
+    /**
+     * 收集批量请求的时间窗口
+     */
+    private int mBatchWindowMs;
+
+    /**
+     * 一批请求的最大数量
+     */
+    private int mMaxBatchSize;
+
+    /**
+     * 批量调度线程
+     */
+    private BatchDispatcher mBatchDispatcher;
+
+    /**
+     * 在退避时间以后把需要重试的请求重新放到队列中，{@link #start()}时创建
+     */
+    private ScheduledExecutorService mRetryScheduler;
+
+    /**
+     * 创建一个请求队列，必须调用{@link #start()}才开始处理请求
+     * @param cache 读取和写入响应的缓存
+     * @param network 执行请求的网络接口
+     * @param threadPoolSize 网络调度线程的数量
+     * @param delivery 交付响应的接口
+     */
+    public RequestQueue(Cache cache,Network network,int threadPoolSize,
+                        ResponseDelivery delivery) {
+        this(cache,network,threadPoolSize,null,0,0,delivery);
+    }
+
+    /**
+     * 创建一个执行器模式的请求队列，每个请求在执行器的一个任务中执行，必须调用{@link #start()}
+     * 才开始处理请求。在支持虚拟线程的JVM上可以传入每个任务一个虚拟线程的执行器
+     * @param cache 读取和写入响应的缓存
+     * @param network 执行请求的网络接口，应该是阻塞的网络接口
+     * @param networkExecutor 执行网络请求的执行器，由调用者关闭
+     * @param maxConcurrentRequests 全局同时执行的最大请求数量
+     * @param maxRequestsPerHost 每个主机同时执行的最大请求数量
+     * @param delivery 交付响应的接口
+     */
+    public RequestQueue(Cache cache,Network network,Executor networkExecutor,
+                        int maxConcurrentRequests,int maxRequestsPerHost,
+                        ResponseDelivery delivery) {
+        this(cache,network,1,networkExecutor,maxConcurrentRequests,maxRequestsPerHost,delivery);
+        if (networkExecutor == null) {
+            throw new IllegalArgumentException("执行器不能为null");
+        }
+    }
+
+    private RequestQueue(Cache cache,Network network,int threadPoolSize,Executor networkExecutor,
+                         int maxConcurrentRequests,int maxRequestsPerHost,
+                         ResponseDelivery delivery) {
+        if (threadPoolSize < 1) {
+            throw new IllegalArgumentException("网络调度线程的数量必须大于0");
+        }
+        mCache = cache;
+        mNetwork = network;
+        mDispatchers = new NetworkDispatcher[threadPoolSize];
+        mDelivery = delivery;
+        mNetworkExecutor = networkExecutor;
+        mMaxConcurrentRequests = maxConcurrentRequests;
+        mMaxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    /**
+     * 创建一个请求队列，在主线程(JVM上是Volley的交付线程)上交付响应
+     * @param cache 读取和写入响应的缓存
+     * @param network 执行请求的网络接口
+     * @param threadPoolSize 网络调度线程的数量
+     */
+    public RequestQueue(Cache cache,Network network,int threadPoolSize) {
+        this(cache,network,threadPoolSize,
+                new ExecutorDelivery(Platform.get().getMainThreadExecutor()));
+    }
+
+    /**
+     * 使用默认线程数量创建一个请求队列
+     * @param cache 读取和写入响应的缓存
+     * @param network 执行请求的网络接口
+     */
+    public RequestQueue(Cache cache,Network network) {
+        this(cache,network,DEFAULT_NETWORK_THREAD_POOL_SIZE);
+    }
+
+    /**
+     * 设置合并批量请求的接口，必须在{@link #start()}之前调用。
+     * {@link BatchEncoder#canBatch(Request)}返回true的请求不经过缓存，在时间窗口内收集以后
+     * 合并为一次HTTP请求
+     * @param encoder 合并和拆分请求的接口
+     * @param windowMs 收集请求的时间窗口
+     * @param maxBatchSize 一批请求的最大数量
+     */
+    public void setBatchEncoder(BatchEncoder encoder,int windowMs,int maxBatchSize) {
+        if (maxBatchSize < 2) {
+            throw new IllegalArgumentException("一批请求的最大数量必须大于1");
+        }
+        mBatchEncoder = encoder;
+        mBatchWindowMs = windowMs;
+        mMaxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * 启动队列中的调度线程
+     */
+    public void start() {
+
+        //先结束正在运行的调度线程
+        stop();
+
+        mCacheDispatcher = new CacheDispatcher(mCacheQueue,mNetworkQueue,mCache,mDelivery);
+        mCacheDispatcher.start();
+
+        if (mBatchEncoder != null) {
+            mBatchDispatcher = new BatchDispatcher(mBatchQueue,mNetworkQueue,mNetwork,
+                    mBatchEncoder,mDelivery,mBatchWindowMs,mMaxBatchSize);
+            mBatchDispatcher.start();
+        }
+
+        for (int i = 0 ; i < mDispatchers.length;i ++) {
+            NetworkDispatcher networkDispatcher = mNetworkExecutor != null
+                    ? new ExecutorNetworkDispatcher(mNetworkQueue,mNetwork,mCache,mDelivery,
+                            mNetworkExecutor,mMaxConcurrentRequests,mMaxRequestsPerHost)
+                    : new NetworkDispatcher(mNetworkQueue,mNetwork,mCache,mDelivery);
+            mDispatchers[i] = networkDispatcher;
+            networkDispatcher.start();
+        }
+
+        synchronized (this) {
+            mRetryScheduler = Executors.newSingleThreadScheduledExecutor(new RetryThreadFactory());
+        }
+    }
+
+    /**
+     * 结束所有的调度线程
+     */
+    public void stop() {
+        if (mCacheDispatcher != null) {
+            mCacheDispatcher.quit();
+        }
+        if (mBatchDispatcher != null) {
+            mBatchDispatcher.quit();
+            mBatchDispatcher = null;
+        }
+        for (int i = 0 ; i < mDispatchers.length;i ++) {
+            if (mDispatchers[i] != null) {
+                mDispatchers[i].quit();
+                mDispatchers[i] = null;
+            }
+        }
+        synchronized (this) {
+            if (mRetryScheduler != null) {
+                mRetryScheduler.shutdownNow();
+                mRetryScheduler = null;
+            }
+        }
+    }
+
+    /**
+     * 在退避时间以后把请求重新放到网络队列（可以合并的请求放到批量队列），
+     * 由{@link NetworkDispatcher}在收到{@link DeferredRetryError}时调用
+     * @param request 需要重试的请求
+     * @param delayMs 退避时间
+     * @return 队列没有启动或者已经结束时返回false，请求不会被重试
+     */
+    boolean scheduleRetry(final Request<?> request,long delayMs) {
+
+        ScheduledExecutorService scheduler;
+        synchronized (this) {
+            scheduler = mRetryScheduler;
+        }
+
+        if (scheduler == null) {
+            return false;
+        }
+
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    request.addMarker("retry-requeued");
+                    if (mBatchEncoder != null && mBatchEncoder.canBatch(request)) {
+                        mBatchQueue.add(request);
+                    } else {
+                        mNetworkQueue.add(request);
+                    }
+                }
+            },delayMs,TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            //已经结束
+            return false;
+        }
 
-    void finish(Request request) {
+        request.addMarker("retry-scheduled");
+        return true;
+    }
+
+    /**
+     * 获取队列使用的缓存
+     */
+    public Cache getCache() {
+        return mCache;
+    }
+
+    /**
+     * 获取一个序列号
+     */
+    public int getSequenceNumber() {
+        return mSequenceGenerator.incrementAndGet();
+    }
+
+    /**
+     * 选择要取消的请求的过滤器
+     */
+    public interface RequestFilter {
+
+        /**
+         * 返回true则取消这个请求
+         */
+        public boolean apply(Request<?> request);
+    }
+
+    /**
+     * 取消所有被过滤器选中的请求，需要遍历所有正在处理的请求
+     * @param filter 过滤器
+     */
+    public void cancelAll(RequestFilter filter) {
+        synchronized (mCurrentRequests) {
+            for (Request<?> request : mCurrentRequests) {
+                if (filter.apply(request)) {
+                    request.cancele();
+                }
+            }
+        }
+    }
+
+    /**
+     * 取消所有带这个标签的请求，通过标签索引查找，只访问匹配的请求。
+     * 取消的请求在执行网络请求之前被丢弃，也不会交付响应
+     * @param tag 添加请求之前通过{@link Request#setTag(Object)}设置的标签
+     */
+    public void cancelAll(final Object tag) {
+
+        if (tag == null) {
+            throw new IllegalArgumentException("Cannot cancelAll with a null tag");
+        }
+
+        Set<Request<?>> requests;
+        synchronized (mTaggedRequests) {
+            requests = mTaggedRequests.remove(tag);
+        }
+
+        if (requests == null) {
+            return;
+        }
+
+        for (Request<?> request : requests) {
+            request.cancele();
+        }
+    }
+
+    /**
+     * 添加一个请求到调度队列
+     * @param request 需要执行的请求
+     * @return 传入的请求
+     */
+    public <T> Request<T> add(Request<T> request) {
+
+        request.setRequestQueue(this);
+
+        synchronized (mCurrentRequests) {
+            mCurrentRequests.add(request);
+        }
+
+        Object tag = request.getTag();
+        if (tag != null) {
+            synchronized (mTaggedRequests) {
+                Set<Request<?>> requests = mTaggedRequests.get(tag);
+                if (requests == null) {
+                    requests = new HashSet<>();
+                    mTaggedRequests.put(tag,requests);
+                }
+                requests.add(request);
+            }
+        }
+
+        //按添加顺序设置序列号
+        request.setSequence(getSequenceNumber());
+        request.addMarker("add-to-queue");
+
+        //可以合并的请求不经过缓存，交给批量调度线程
+        if (mBatchEncoder != null && mBatchEncoder.canBatch(request)) {
+            mBatchQueue.add(request);
+            return request;
+        }
+
+        //不需要缓存的请求直接放到网络队列中
+        if (!request.ShouldCache()) {
+            mNetworkQueue.add(request);
+            return request;
+        }
+
+        //相同缓存键的请求已经在执行，则等待它完成，共享它的响应
+        synchronized (mWaitingRequests) {
+            String cacheKey = request.getCacheKey();
 
+            if (mInFlightRequests.containsKey(cacheKey)) {
+                Queue<Request<?>> stagedRequests = mWaitingRequests.get(cacheKey);
+                if (stagedRequests == null) {
+                    stagedRequests = new LinkedList<>();
+                    mWaitingRequests.put(cacheKey,stagedRequests);
+                }
+                stagedRequests.add(request);
+                request.addMarker("coalesced-waiting");
+
+                if (VolleyLog.DEBUG) {
+                    VolleyLog.v("Request for cacheKey=%s is in flight, putting on hold.",cacheKey);
+                }
+
+                return request;
+            }
+
+            mInFlightRequests.put(cacheKey,request);
+            mCacheQueue.add(request);
+        }
+
+        return request;
+    }
+
+    /**
+     * 添加一个请求到调度队列，返回可以阻塞等待结果的{@link RequestFuture}。
+     * 请求必须用同一个future作为响应和错误的监听器创建
+     * @param request 需要执行的请求
+     * @param future 请求的结果
+     * @return 传入的future
+     */
+    public <T> RequestFuture<T> submit(Request<T> request,RequestFuture<T> future) {
+        future.setRequest(request);
+        add(request);
+        return future;
+    }
+
+    /**
+     * 请求完成时由{@link Request#finish(String)}调用
+     * @param request 已经完成的请求
+     */
+    <T> void finish(Request<T> request) {
+        synchronized (mCurrentRequests) {
+            mCurrentRequests.remove(request);
+        }
+
+        Object tag = request.getTag();
+        if (tag != null) {
+            synchronized (mTaggedRequests) {
+                Set<Request<?>> requests = mTaggedRequests.get(tag);
+                if (requests != null && requests.remove(request) && requests.isEmpty()) {
+                    mTaggedRequests.remove(tag);
+                }
+            }
+        }
+
+        if (!request.ShouldCache()) {
+            return;
+        }
+
+        synchronized (mWaitingRequests) {
+            String cacheKey = request.getCacheKey();
+
+            //只有正在执行的请求完成时才处理等待的请求
+            if (mInFlightRequests.get(cacheKey) != request) {
+                return;
+            }
+
+            Queue<Request<?>> waitingRequests = mWaitingRequests.remove(cacheKey);
+            if (waitingRequests == null || waitingRequests.isEmpty()) {
+                mInFlightRequests.remove(cacheKey);
+                return;
+            }
+
+            if (request.isCanceled()) {
+
+                //被取消的请求没有结果可以共享，从等待的请求中选一个重新执行，其余的继续等待
+                Request<?> next = waitingRequests.poll();
+                mInFlightRequests.put(cacheKey,next);
+                if (!waitingRequests.isEmpty()) {
+                    mWaitingRequests.put(cacheKey,waitingRequests);
+                }
+                next.addMarker("coalesced-promoted");
+                mCacheQueue.add(next);
+
+            } else {
+
+                //结果已经写入缓存，等待的请求都可以从缓存中获取
+                mInFlightRequests.remove(cacheKey);
+                if (VolleyLog.DEBUG) {
+                    VolleyLog.v("Releasing %d waiting requests for cacheKey=%s.",
+                            waitingRequests.size(),cacheKey);
+                }
+                mCacheQueue.addAll(waitingRequests);
+            }
+        }
+    }
+
+    /**
+     * 取出等待这个请求的所有重复请求，由调度线程直接把这个请求的网络响应交付给它们
+     * @param request 正在执行的请求
+     * @return 等待的请求，如果没有则返回null
+     */
+    Queue<Request<?>> drainWaitingRequests(Request<?> request) {
+
+        if (!request.ShouldCache()) {
+            return null;
+        }
+
+        synchronized (mWaitingRequests) {
+            String cacheKey = request.getCacheKey();
+            if (mInFlightRequests.get(cacheKey) != request) {
+                return null;
+            }
+            return mWaitingRequests.remove(cacheKey);
+        }
     }
 
+
+    /**
+     * 创建后台的重试调度线程
+     */
+    private static class RetryThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable,"Volley-RetryScheduler");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -0,0 +1,89 @@
+package com.android.volley;
+
+/**
+ *
+ * 封装解析完成的响应，用于交付
+ *
+ * 作者：李富 on 2015/11/5.
+ * 邮箱：lifuzz@163.com
+ */
+public class Response<T> {
+
+    /**
+     * 成功响应的回调接口
+     */
+    public interface Listener<T> {
+
+        /**
+         * 收到响应时调用
+         * @param response 解析后的响应
+         */
+        public void onResponse(T response);
+    }
+
+    /**
+     * 错误响应的回调接口
+     */
+    public interface ErrorListener {
+
+        /**
+         * 发生错误时调用，错误码和其他信息可以通过error获取
+         * @param error 错误信息
+         */
+        public void onErrorListener(VolleyError error);
+    }
+
+    /**
+     * 返回一个包含解析结果的成功响应
+     */
+    public static <T> Response<T> success(T result,Cache.Entry cacheEntry) {
+        return new Response<T>(result,cacheEntry);
+    }
+
+    /**
+     * 返回一个包含错误信息的失败响应
+     */
+    public static <T> Response<T> error(VolleyError error) {
+        return new Response<T>(error);
+    }
+
+    /**
+     * 解析后的响应，如果是错误响应则为null
+     */
+    public final T result;
+
+    /**
+     * 响应的缓存数据，如果是错误响应则为null
+     */
+    public final Cache.Entry cacheEntry;
+
+    /**
+     * 详细的错误信息
+     */
+    public final VolleyError error;
+
+    /**
+     * 如果为true，则这个响应是一个软过期的中间响应，稍后还会有第二个响应
+     */
+    public boolean intermediate = false;
+
+    /**
+     * 如果这个响应是成功的，则返回true
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    private Response(T result,Cache.Entry cacheEntry) {
+        this.result = result;
+        this.cacheEntry = cacheEntry;
+        this.error = null;
+    }
+
+    private Response(VolleyError error) {
+        this.result = null;
+        this.cacheEntry = null;
+        this.error = error;
+    }
+
+}
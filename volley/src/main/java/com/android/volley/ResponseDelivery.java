@@ -0,0 +1,26 @@
+package com.android.volley;
+
+/**
+ *
+ * 交付响应和错误的接口
+ *
+ * 作者：李富 on 2015/11/5.
+ * 邮箱：lifuzz@163.com
+ */
+public interface ResponseDelivery {
+
+    /**
+     * 解析网络或者缓存的响应，并交付
+     */
+    public void postResponse(Request<?> request,Response<?> response);
+
+    /**
+     * 解析网络或者缓存的响应，并交付。提供的Runnable在交付完成以后执行。
+     */
+    public void postResponse(Request<?> request,Response<?> response,Runnable runnable);
+
+    /**
+     * 给请求交付一个错误
+     */
+    public void postError(Request<?> request,VolleyError error);
+}
@@ -26,4 +26,10 @@ public interface RetryPolicy {
      * @throws VolleyError 如果无法进行重试抛出这个异常。
      */
     public void retry(VolleyError error) throws VolleyError;
+
+    /**
+     * 下一次重试之前等待的毫秒数，在{@link #retry(VolleyError)}允许重试以后调用
+     * @return 等待的毫秒数，0表示立即重试
+     */
+    public long getRetryDelayMs();
 }
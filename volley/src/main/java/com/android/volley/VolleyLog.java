@@ -1,8 +1,5 @@
 package com.android.volley;
 
-import android.os.SystemClock;
-import android.util.Log;
-
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -18,7 +15,7 @@ public class VolleyLog {
 
     public static String TAG = "Volley";
 
-    public static boolean DEBUG = Log.isLoggable(TAG,Log.VERBOSE);
+    public static boolean DEBUG = Platform.get().isLoggable(TAG,Platform.VERBOSE);
 
     /**
      *定制Volley的日志标记，以便于与其他程序的日志标签区分。
@@ -31,37 +28,37 @@ public class VolleyLog {
         //%s 为字符串占位符，在格式化的时候，可以把相应的字符串放到这个位置
         d("把日志的标签改为 %s",tag);
         TAG = tag;
-        DEBUG = Log.isLoggable(TAG,Log.VERBOSE);
+        DEBUG = Platform.get().isLoggable(TAG,Platform.VERBOSE);
     }
 
     public static void d(String format,Object... args) {
 
-        Log.d(TAG,buildMessage(format,args));
+        Platform.get().log(Platform.DEBUG,TAG,buildMessage(format,args),null);
 
     }
 
     public static void v(String format,Object... args) {
 
         if (DEBUG) {
-            Log.v(TAG,buildMessage(format,args));
+            Platform.get().log(Platform.VERBOSE,TAG,buildMessage(format,args),null);
         }
 
     }
 
     public static void e(String format,Object... args) {
-        Log.e(TAG,buildMessage(format,args));
+        Platform.get().log(Platform.ERROR,TAG,buildMessage(format,args),null);
     }
 
     public static void e(Throwable tr,String format,Object... args) {
-        Log.e(TAG,buildMessage(format,args),tr);
+        Platform.get().log(Platform.ERROR,TAG,buildMessage(format,args),tr);
     }
 
     public static void wtf(String format,Object... args) {
-        Log.wtf(TAG, buildMessage(format, args));
+        Platform.get().log(Platform.ASSERT,TAG,buildMessage(format,args),null);
     }
 
     public static void wtf(Throwable tr,String formate,Object... args) {
-        Log.wtf(TAG,buildMessage(formate,args),tr);
+        Platform.get().log(Platform.ASSERT,TAG,buildMessage(formate,args),tr);
     }
 
     /**
@@ -135,7 +132,7 @@ public class VolleyLog {
                 throw new IllegalStateException("日志已经添加到结尾");
             }
 
-            mMarkers.add(new Marker(name,threaId, SystemClock.elapsedRealtime()));
+            mMarkers.add(new Marker(name,threaId, Platform.get().elapsedRealtime()));
         }
 
         /**
@@ -0,0 +1,150 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.RetryPolicy;
+import com.android.volley.VolleyError;
+
+/**
+ *
+ * 根据主机最近的延迟决定超时时间的重试策略。
+ *
+ * 第一次执行的超时时间是主机延迟的百分位数乘以一个系数，限制在最小值和最大值之间，响应快的
+ * 主机很快超时重试，响应慢的主机不会被误判为超时。样本不足时使用默认的超时时间。每次重试的
+ * 超时时间按退避系数增加，重试之前的随机等待时间和{@link DefaultRetryPolicy}相同。
+ *
+ * 超时时间在第一次使用时计算，之后这个请求不再变化。每个请求使用一个新的策略对象。
+ *
+ * 作者：李富 on 2015/11/25.
+ * 邮箱：lifuzz@163.com
+ */
+public class AdaptiveRetryPolicy implements RetryPolicy {
+
+    /**
+     * 默认使用的百分位数
+     */
+    public static final double DEFAULT_PERCENTILE = 0.99;
+
+    /**
+     * 默认的百分位数系数
+     */
+    public static final float DEFAULT_LATENCY_MULTIPLIER = 2f;
+
+    public static final int DEFAULT_MIN_TIMEOUT_MS = 500;
+
+    public static final int DEFAULT_MAX_TIMEOUT_MS = 15000;
+
+    /**
+     * 样本不足时的超时时间
+     */
+    public static final int DEFAULT_TIMEOUT_MS = 2500;
+
+    /**
+     * 计算百分位数需要的最少样本数量
+     */
+    public static final int DEFAULT_MIN_SAMPLES = 10;
+
+    public static final int DEFAULT_MAX_RETRIES = 1;
+
+    public static final float DEFAULT_BACKOFF_MUL = 1f;
+
+    private final HostLatencyTracker mTracker;
+
+    private final String mHost;
+
+    private final double mPercentile;
+
+    private final float mLatencyMultiplier;
+
+    private final int mMinTimeoutMs;
+
+    private final int mMaxTimeoutMs;
+
+    private final int mMaxNumRetries;
+
+    private final float mBackoffMultiplier;
+
+    /**
+     * 当前超时时间，第一次使用时计算，-1表示还没有计算
+     */
+    private int mCurrentTimeoutMs = -1;
+
+    private int mCurrentRetryCount = 0;
+
+    /**
+     * 使用默认参数创建重试策略
+     * @param tracker 延迟统计，通常是{@link BasicNetwork#getLatencyTracker()}
+     * @param url 请求的URL
+     */
+    public AdaptiveRetryPolicy(HostLatencyTracker tracker,String url) {
+        this(tracker,url,DEFAULT_PERCENTILE,DEFAULT_LATENCY_MULTIPLIER,DEFAULT_MIN_TIMEOUT_MS,
+                DEFAULT_MAX_TIMEOUT_MS,DEFAULT_MAX_RETRIES,DEFAULT_BACKOFF_MUL);
+    }
+
+    /**
+     * @param tracker 延迟统计
+     * @param url 请求的URL
+     * @param percentile 使用的百分位数，0到1之间
+     * @param latencyMultiplier 百分位数的系数
+     * @param minTimeoutMs 最小超时时间
+     * @param maxTimeoutMs 最大超时时间
+     * @param maxNumRetries 最大重试次数
+     * @param backoffMultiplier 每次重试超时时间增加的系数
+     */
+    public AdaptiveRetryPolicy(HostLatencyTracker tracker,String url,double percentile,
+                               float latencyMultiplier,int minTimeoutMs,int maxTimeoutMs,
+                               int maxNumRetries,float backoffMultiplier) {
+        mTracker = tracker;
+        mHost = HostLatencyTracker.hostOf(url);
+        mPercentile = percentile;
+        mLatencyMultiplier = latencyMultiplier;
+        mMinTimeoutMs = minTimeoutMs;
+        mMaxTimeoutMs = maxTimeoutMs;
+        mMaxNumRetries = maxNumRetries;
+        mBackoffMultiplier = backoffMultiplier;
+    }
+
+    @Override
+    public synchronized int getCurrentTimeout() {
+        if (mCurrentTimeoutMs < 0) {
+            mCurrentTimeoutMs = initialTimeout();
+        }
+        return mCurrentTimeoutMs;
+    }
+
+    @Override
+    public synchronized int getCurrentRetryCount() {
+        return mCurrentRetryCount;
+    }
+
+    @Override
+    public synchronized long getRetryDelayMs() {
+        return DefaultRetryPolicy.fullJitterDelay(DefaultRetryPolicy.DEFAULT_RETRY_DELAY_BASE_MS,
+                DefaultRetryPolicy.DEFAULT_RETRY_DELAY_CAP_MS,mCurrentRetryCount);
+    }
+
+    @Override
+    public synchronized void retry(VolleyError error) throws VolleyError {
+        int timeout = getCurrentTimeout();
+        mCurrentRetryCount++;
+        mCurrentTimeoutMs = (int) Math.min(Integer.MAX_VALUE,
+                timeout + (long) (timeout * mBackoffMultiplier));
+        if (mCurrentRetryCount > mMaxNumRetries) {
+            throw error;
+        }
+    }
+
+    /**
+     * 根据主机延迟的百分位数计算第一次执行的超时时间
+     */
+    private int initialTimeout() {
+
+        if (mTracker == null || mTracker.getSampleCount(mHost) < DEFAULT_MIN_SAMPLES) {
+            return DEFAULT_TIMEOUT_MS;
+        }
+
+        long latency = mTracker.getPercentile(mHost,mPercentile);
+        long timeout = (long) (latency * mLatencyMultiplier);
+
+        return (int) Math.max(mMinTimeoutMs,Math.min(mMaxTimeoutMs,timeout));
+    }
+}
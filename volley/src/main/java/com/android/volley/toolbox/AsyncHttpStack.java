@@ -0,0 +1,51 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Request;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+
+/**
+ * 异步HTTP栈接口，调用线程不等待响应，由{@link NioNetwork}使用
+ * 作者：李富 on 2015/11/30.
+ * 邮箱：lifuzz@163.com
+ */
+public interface AsyncHttpStack {
+
+    /**
+     * 请求完成的回调，在栈自己的线程上执行，不能阻塞
+     */
+    public interface Callback {
+
+        /**
+         * 收到完整的响应
+         * @param statusCode HTTP状态码
+         * @param headers 响应头
+         * @param body 响应体，没有响应体时长度为0
+         */
+        public void onResponse(int statusCode,Map<String,String> headers,byte[] body);
+
+        /**
+         * 请求失败，超时为{@link SocketTimeoutException}
+         */
+        public void onFailure(IOException e);
+    }
+
+    /**
+     * 异步执行请求，立即返回。请求完成时回调且只回调一次
+     * @param request 需要执行的请求
+     * @param additionalHeaders 附加头（和请求头一起发送）
+     * @param callback 请求完成的回调
+     * @throws IOException 请求无法开始（URL不正确、栈已经关闭），这时不会回调
+     */
+    public void execute(Request<?> request,Map<String,String> additionalHeaders,Callback callback)
+            throws IOException,AuthFailureError;
+
+    /**
+     * 关闭栈，正在执行的请求以失败结束
+     */
+    public void shutdown();
+
+}
@@ -1,12 +1,15 @@
 package com.android.volley.toolbox;
 
-import android.os.SystemClock;
-
+import com.android.volley.AuthFailureError;
 import com.android.volley.Cache;
+import com.android.volley.DeferredRetryError;
 import com.android.volley.Network;
+import com.android.volley.NetworkError;
 import com.android.volley.NetworkResponse;
 import com.android.volley.NoConnectionError;
+import com.android.volley.Platform;
 import com.android.volley.Request;
+import com.android.volley.Response;
 import com.android.volley.RetryPolicy;
 import com.android.volley.ServerError;
 import com.android.volley.TimeoutError;
@@ -19,14 +22,15 @@ import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.conn.ConnectTimeoutException;
-import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.entity.HttpEntityWrapper;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
-import java.util.Date;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 /**
@@ -41,10 +45,45 @@ public class BasicNetwork implements Network {
 
     private static int DEFAULT_POOL_SIZE = 4096;
 
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+
+    static final String ENCODING_GZIP = "gzip";
+
+    static final String ENCODING_DEFLATE = "deflate";
+
+    /**
+     * 知道响应体长度时直接分配结果数组的最大长度，更大的响应按块读取
+     */
+    private static int MAX_EXACT_READ_LENGTH = 16 * 1024 * 1024;
+
+    /**
+     * 不知道响应体长度时，堆外缓冲区的初始大小
+     */
+    private static int DEFAULT_DIRECT_BUFFER_SIZE = 64 * 1024;
+
     protected final HttpStack mHttpStack;
 
     protected final ByteArrayPool mPool;
 
+    protected final DirectByteBufferPool mDirectPool;
+
+    /**
+     * 按主机统计的请求延迟
+     */
+    protected final HostLatencyTracker mLatencyTracker = new HostLatencyTracker();
+
+    /**
+     * 这个网络接口的所有请求共享的重试预算
+     */
+    private volatile RetryBudget mRetryBudget = new RetryBudget();
+
+    /**
+     * 重试是否交给请求队列延迟执行，不在调度线程上等待
+     */
+    private volatile boolean mDeferredRetries = false;
+
     /**
      *
      * @param httpStack 使用的HTTP栈
@@ -59,43 +98,120 @@ public class BasicNetwork implements Network {
      * @param pool 一个缓存池，提高gc的性能
      */
     public BasicNetwork(HttpStack httpStack,ByteArrayPool pool) {
+        this(httpStack,pool,new DirectByteBufferPool());
+    }
+
+    /**
+     *
+     * @param httpStack 使用的HTTP栈
+     * @param pool 一个缓存池，提高gc的性能
+     * @param directPool 堆外缓冲池，用于{@link DirectBufferRequest}的响应体
+     */
+    public BasicNetwork(HttpStack httpStack,ByteArrayPool pool,DirectByteBufferPool directPool) {
         mHttpStack = httpStack;
         mPool = pool;
+        mDirectPool = directPool;
+    }
+
+    /**
+     * 返回按主机统计的请求延迟，用于创建{@link AdaptiveRetryPolicy}
+     */
+    public HostLatencyTracker getLatencyTracker() {
+        return mLatencyTracker;
+    }
+
+    /**
+     * 设置重试预算，多个网络接口可以共享同一个预算
+     */
+    public void setRetryBudget(RetryBudget retryBudget) {
+        mRetryBudget = retryBudget;
+    }
+
+    /**
+     * 设置是否延迟重试。打开以后，已经添加到{@link com.android.volley.RequestQueue}的请求
+     * 需要重试时抛出{@link DeferredRetryError}，由请求队列在退避时间以后重新放到网络队列中，
+     * 调度线程不用等待退避时间，可以执行其他请求。不属于请求队列的请求仍然在当前线程上等待
+     */
+    public void setDeferredRetries(boolean deferredRetries) {
+        mDeferredRetries = deferredRetries;
     }
 
     @Override
     public NetworkResponse performRequest(Request<?> request) throws VolleyError {
 
-        long requestStart = SystemClock.elapsedRealtime();
+        //延迟重试的请求再次执行时不重复计数
+        if (request.getRetryPolicy().getCurrentRetryCount() == 0) {
+            mRetryBudget.onRequest();
+        }
+
+        long requestStart = Platform.get().elapsedRealtime();
+        String host = HostLatencyTracker.hostOf(request.getUrl());
         while (true) {
             HttpResponse httpResponse = null;
             byte[] responseContents = null;
             Map<String,String> responseHeaders = new HashMap<>();
+            long attemptStart = Platform.get().elapsedRealtime();
+            int attemptTimeoutMs = request.getTimeoutMs();
 
             try {
                 Map<String,String> headers = new HashMap<>();
                 addCacheHeaders(headers,request.getCacheEntry());
+
                 httpResponse = mHttpStack.performRequest(request,headers);
 
+                //记录到收到响应头的时间，和连接、读取的超时时间对应
+                mLatencyTracker.record(host,Platform.get().elapsedRealtime() - attemptStart);
+
                 StatusLine statusLine = httpResponse.getStatusLine();
                 int statusCode = statusLine.getStatusCode();
 
                 responseHeaders = convertHeaders(httpResponse.getAllHeaders());
 
+                //压缩的响应体在读取时解压
+                HttpEntity entity = decodeEntity(httpResponse.getEntity(),responseHeaders);
+
                 if (statusCode == HttpStatus.SC_NOT_MODIFIED) {
-                    return new NetworkResponse(HttpStatus.SC_NOT_MODIFIED,
-                            request.getCacheEntry().data,responseHeaders,true);
+                    return notModifiedResponse(request,responseHeaders);
+                }
+
+                //流式请求在连接打开的时候直接解析响应流
+                if (request instanceof StreamingRequest && entity != null
+                        && statusCode >= 200 && statusCode <= 299) {
+
+                    Response<?> parsed = streamEntity((StreamingRequest<?>) request,statusCode,
+                            responseHeaders,entity);
+
+                    long requestLifeTime = Platform.get().elapsedRealtime() - requestStart;
+                    logSlowRequests(requestLifeTime,request,
+                            (int) entity.getContentLength(),statusLine);
+
+                    return new StreamedNetworkResponse(statusCode,responseHeaders,parsed);
                 }
 
-                if (httpResponse.getEntity() != null) {
-                    responseContents = entityToBytes(httpResponse.getEntity());
+                //成功的响应体直接读到堆外缓冲区中
+                if (request instanceof DirectBufferRequest && entity != null
+                        && statusCode >= 200 && statusCode <= 299) {
+
+                    NetworkResponse direct = entityToDirectResponse(statusCode,entity,
+                            responseHeaders);
+
+                    long requestLifeTime = Platform.get().elapsedRealtime() - requestStart;
+                    logSlowRequests(requestLifeTime,request,direct.data != null
+                            ? direct.data.length : ((DirectNetworkResponse) direct).body.remaining(),
+                            statusLine);
+
+                    return direct;
+                }
+
+                if (entity != null) {
+                    responseContents = entityToBytes(entity);
                 } else {
                     responseContents = new byte[0];
                 }
 
-                long requestLifeTime = SystemClock.elapsedRealtime() - requestStart;
+                long requestLifeTime = Platform.get().elapsedRealtime() - requestStart;
 
-                logSlowRequests(requestLifeTime,request,responseContents,statusLine);
+                logSlowRequests(requestLifeTime,request,responseContents.length,statusLine);
 
                 if (statusCode < 200 || statusCode > 299) {
                     throw new IOException();
@@ -107,10 +223,12 @@ public class BasicNetwork implements Network {
 
             }catch (SocketTimeoutException e) {
 
+                recordTimeout(host,httpResponse,attemptStart,attemptTimeoutMs);
                 attemptRetryOnException("socket", request, new TimeoutError());
 
             }catch (ConnectTimeoutException e) {
 
+                recordTimeout(host,httpResponse,attemptStart,attemptTimeoutMs);
                 attemptRetryOnException("connection", request, new TimeoutError());
             } catch (MalformedURLException e) {
 
@@ -126,13 +244,42 @@ public class BasicNetwork implements Network {
 
                 VolleyLog.e("Unexpected response code %d for %s", statusCode, request.getUrl());
 
-
-
+                //错误的响应码不能一直重试，只有权限验证失败按重试策略重试
+                if (responseContents != null) {
+                    networkResponse = new NetworkResponse(statusCode,responseContents,
+                            responseHeaders,false);
+                    if (statusCode == HttpStatus.SC_UNAUTHORIZED
+                            || statusCode == HttpStatus.SC_FORBIDDEN) {
+                        attemptRetryOnException("auth",request,
+                                new AuthFailureError(networkResponse));
+                    } else {
+                        throw new ServerError(networkResponse);
+                    }
+                } else {
+                    throw new NetworkError(networkResponse);
+                }
             }
         }
     }
 
-    private static void attemptRetryOnException(String logPrefix,Request<?> request
+    /**
+     * 没有收到响应头就超时的请求按超时时间记录延迟（实际延迟至少是这个值），
+     * 否则慢的主机只留下快的样本，百分位数偏低，按百分位数计算的超时时间会一直超时
+     */
+    private void recordTimeout(String host,HttpResponse httpResponse,long attemptStart,
+                               int timeoutMs) {
+        if (httpResponse != null) {
+            return;
+        }
+        long elapsed = Platform.get().elapsedRealtime() - attemptStart;
+        mLatencyTracker.record(host,Math.max(elapsed,timeoutMs));
+    }
+
+    /**
+     * 按重试策略和重试预算决定是否重试，重试之前按策略的退避时间等待
+     * @throws VolleyError 不重试时抛出，延迟重试时抛出{@link DeferredRetryError}
+     */
+    private void attemptRetryOnException(String logPrefix,Request<?> request
             ,VolleyError exception) throws VolleyError {
         RetryPolicy retryPolicy = request.getRetryPolicy();
         int oldTimeout = request.getTimeoutMs();
@@ -145,25 +292,177 @@ public class BasicNetwork implements Network {
             throw e;
         }
 
-        request.addMarker(String.format("%s-timeout-retry [timeout=%s]",logPrefix,oldTimeout));
+        //整个队列的重试预算用完，不再重试
+        if (!mRetryBudget.tryAcquireRetry()) {
+            request.addMarker(String.format("%s-retry-budget-exhausted [timeout=%s]",logPrefix,
+                    oldTimeout));
+            throw exception;
+        }
+
+        long delayMs = retryPolicy.getRetryDelayMs();
+        request.addMarker(String.format("%s-timeout-retry [timeout=%s] [delay=%s]",logPrefix,
+                oldTimeout,delayMs));
+
+        //交给请求队列延迟重试，释放当前的调度线程
+        if (mDeferredRetries && request.getRequestQueue() != null) {
+            throw new DeferredRetryError(delayMs,exception);
+        }
 
+        if (delayMs > 0) {
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw exception;
+            }
+        }
     }
 
     private void logSlowRequests(long requestLifeTime,Request<?> request,
-                                 byte[] responseContents,StatusLine statusLine) {
+                                 int responseLength,StatusLine statusLine) {
 
         if (DEBUG || requestLifeTime > SLOW_REQUEST_THRESHOLD_MS) {
 
             VolleyLog.d("HTTP response for request=<%s> [lifetime=%d], [size=%s], " +
                             "[rc=%d], [retryCount=%s]", request, requestLifeTime,
-                    responseContents != null ? responseContents.length : "null",
+                    responseLength,
                     statusLine.getStatusCode(), request.getRetryPolicy().getCurrentRetryCount());
         }
 
     }
 
+    /**
+     * 如果响应体是gzip或deflate压缩的，返回一个读取时解压的{@link HttpEntity}
+     */
+    private HttpEntity decodeEntity(HttpEntity entity,Map<String,String> responseHeaders) {
+
+        if (entity == null) {
+            return null;
+        }
+
+        String encoding = removeContentCoding(responseHeaders);
+        if (encoding == null) {
+            return entity;
+        }
+
+        return new InflatingEntity(entity,ENCODING_GZIP.equals(encoding),mPool);
+    }
+
+    /**
+     * 如果响应体是gzip或deflate压缩的，从响应头中删除Content-Encoding和Content-Length，
+     * 因为它们描述的是压缩的数据
+     * @return {@link #ENCODING_GZIP}或{@link #ENCODING_DEFLATE}，没有压缩返回null
+     */
+    static String removeContentCoding(Map<String,String> responseHeaders) {
+
+        String encoding = null;
+        for (Map.Entry<String,String> header : responseHeaders.entrySet()) {
+            if (HEADER_CONTENT_ENCODING.equalsIgnoreCase(header.getKey())) {
+                encoding = header.getValue().trim();
+            }
+        }
+
+        if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
+            encoding = ENCODING_GZIP;
+        } else if ("deflate".equalsIgnoreCase(encoding)) {
+            encoding = ENCODING_DEFLATE;
+        } else {
+            return null;
+        }
+
+        Iterator<Map.Entry<String,String>> iterator = responseHeaders.entrySet().iterator();
+        while (iterator.hasNext()) {
+            String name = iterator.next().getKey();
+            if (HEADER_CONTENT_ENCODING.equalsIgnoreCase(name)
+                    || HEADER_CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                iterator.remove();
+            }
+        }
+
+        return encoding;
+    }
+
+    /**
+     * 读取时解压的{@link HttpEntity}，长度未知
+     */
+    private static class InflatingEntity extends HttpEntityWrapper {
+
+        private final boolean mGzip;
+        private final ByteArrayPool mPool;
+        private InflatingInputStream mContent;
+
+        InflatingEntity(HttpEntity wrapped,boolean gzip,ByteArrayPool pool) {
+            super(wrapped);
+            mGzip = gzip;
+            mPool = pool;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            if (mContent == null) {
+                InputStream raw = wrappedEntity.getContent();
+                if (raw == null) {
+                    return null;
+                }
+                mContent = new InflatingInputStream(raw,mGzip,mPool);
+            }
+            return mContent;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public Header getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public void consumeContent() throws IOException {
+            if (mContent != null) {
+                mContent.close();
+            }
+            super.consumeContent();
+        }
+    }
+
+    /**
+     * 把响应流交给流式请求解析，解析完成以后关闭响应流
+     */
+    private Response<?> streamEntity(StreamingRequest<?> request,int statusCode,
+                                     Map<String,String> responseHeaders,HttpEntity entity)
+            throws IOException,ServerError {
+
+        try {
+
+            InputStream in = entity.getContent();
+            if (in == null) {
+                throw new ServerError();
+            }
+
+            NetworkResponse response = new NetworkResponse(statusCode,null,responseHeaders,false);
+            return request.parseNetworkStream(response,in,mPool);
+
+        } finally {
+            try {
+                entity.consumeContent();
+            } catch (IOException e) {
+                VolleyLog.v("Error occured when calling consumingContent");
+            }
+        }
+    }
+
     private byte[] entityToBytes(HttpEntity entity) throws IOException,ServerError {
 
+        long contentLength = entity.getContentLength();
+
+        //知道响应体的长度时，直接读到结果数组中，不需要再复制一次
+        if (contentLength >= 0 && contentLength <= MAX_EXACT_READ_LENGTH) {
+            return readExactly(entity,(int) contentLength);
+        }
+
         PoolingByteArrayOutputStream bytes =
                 new PoolingByteArrayOutputStream(mPool,(int)entity.getContentLength());
         byte[] buffer = null;
@@ -197,19 +496,191 @@ public class BasicNetwork implements Network {
 
     }
 
-    private void addCacheHeaders(Map<String,String> headers,Cache.Entry entry) {
+    /**
+     * 把响应体读到堆外缓冲区中，不知道长度时按需要扩大缓冲区。
+     * 响应体超过堆外缓冲池的最大缓冲区时改为读到堆中，返回普通的{@link NetworkResponse}
+     * @return 响应体在堆外缓冲区中时返回{@link DirectNetworkResponse}
+     */
+    private NetworkResponse entityToDirectResponse(int statusCode,HttpEntity entity,
+                                                   Map<String,String> headers)
+            throws IOException,ServerError {
+
+        long contentLength = entity.getContentLength();
+        if (contentLength > mDirectPool.getMaxBufferSize()) {
+            return new NetworkResponse(statusCode,entityToBytes(entity),headers,false);
+        }
+
+        ByteBuffer body = mDirectPool.acquire(contentLength > 0
+                ? (int) contentLength : DEFAULT_DIRECT_BUFFER_SIZE);
+        if (body == null) {
+            return new NetworkResponse(statusCode,entityToBytes(entity),headers,false);
+        }
+
+        PoolingByteArrayOutputStream spill = null;
+        byte[] buffer = null;
+        boolean success = false;
+
+        try {
+
+            InputStream in = entity.getContent();
+            if (in == null) {
+                throw new ServerError();
+            }
+
+            buffer = mPool.getBuf(4096);
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+
+                if (spill != null) {
+                    spill.write(buffer,0,count);
+                    continue;
+                }
+
+                if (body.remaining() < count) {
+                    //容量加倍，直到放得下这次读到的数据
+                    long needed = (long) body.position() + count;
+                    long capacity = body.capacity();
+                    while (capacity < needed) {
+                        capacity *= 2;
+                    }
+                    ByteBuffer larger = capacity <= mDirectPool.getMaxBufferSize()
+                            ? mDirectPool.acquire((int) capacity) : null;
+                    body.flip();
+                    if (larger == null) {
+                        //超过最大缓冲区，已经读到的数据复制到堆中，剩下的继续读到堆中
+                        spill = new PoolingByteArrayOutputStream(mPool,(int) needed);
+                        copyToHeap(body,spill);
+                        mDirectPool.release(body);
+                        body = null;
+                        spill.write(buffer,0,count);
+                        continue;
+                    }
+                    larger.put(body);
+                    mDirectPool.release(body);
+                    body = larger;
+                }
+
+                body.put(buffer,0,count);
+            }
+
+            success = true;
+
+            if (spill != null) {
+                return new NetworkResponse(statusCode,spill.toByteArray(),headers,false);
+            }
+
+            body.flip();
+            return new DirectNetworkResponse(statusCode,body,headers,mDirectPool);
+
+        } finally {
+
+            try {
+                entity.consumeContent();
+            } catch (IOException e) {
+                VolleyLog.v("Error occured when calling consumingContent");
+            }
+
+            mPool.returnBuf(buffer);
+
+            if (spill != null) {
+                spill.close();
+            }
+
+            if (!success) {
+                mDirectPool.release(body);
+            }
+        }
+    }
+
+    /**
+     * 把堆外缓冲区中剩下的数据写到堆中的输出流
+     */
+    private void copyToHeap(ByteBuffer source,PoolingByteArrayOutputStream out) {
+        byte[] chunk = mPool.getBuf(4096);
+        try {
+            while (source.hasRemaining()) {
+                int count = Math.min(chunk.length,source.remaining());
+                source.get(chunk,0,count);
+                out.write(chunk,0,count);
+            }
+        } finally {
+            mPool.returnBuf(chunk);
+        }
+    }
+
+    /**
+     * 按响应头中的长度读取响应体
+     * @throws IOException 实际长度和响应头中的长度不一致
+     */
+    private byte[] readExactly(HttpEntity entity,int length) throws IOException,ServerError {
+
+        InputStream in = entity.getContent();
+        if (in == null) {
+            throw new ServerError();
+        }
+
+        byte[] result = new byte[length];
+        int pos = 0;
+        int count;
+        boolean matched = false;
+
+        try {
+
+            while (pos < length && (count = in.read(result,pos,length - pos)) != -1) {
+                pos += count;
+            }
+
+            matched = pos == length && in.read() == -1;
+
+        } finally {
+            try {
+                entity.consumeContent();
+            } catch (IOException e) {
+                VolleyLog.v("Error occured when calling consumingContent");
+            }
+        }
+
+        if (!matched) {
+            throw new IOException("Content-Length mismatch, expected " + length + " bytes");
+        }
+
+        return result;
+    }
+
+    /**
+     * 创建304响应，304响应只包含更新的头信息，需要和缓存的头信息合并
+     */
+    static NetworkResponse notModifiedResponse(Request<?> request,
+                                               Map<String,String> responseHeaders) {
+
+        Cache.Entry entry = request.getCacheEntry();
+        if (entry == null) {
+            return new NetworkResponse(HttpStatus.SC_NOT_MODIFIED,null,responseHeaders,true);
+        }
+
+        Map<String,String> mergedHeaders = new HashMap<>(entry.responseHeaders);
+        mergedHeaders.putAll(responseHeaders);
+        return new NetworkResponse(HttpStatus.SC_NOT_MODIFIED,entry.data,mergedHeaders,true);
+    }
+
+    /**
+     * 根据缓存条目添加条件请求的头信息
+     */
+    static void addCacheHeaders(Map<String,String> headers,Cache.Entry entry) {
 
         if (entry == null) {
             return;
         }
 
         if (entry.etag != null) {
-            headers.put("如果没有匹配的",entry.etag);
+            headers.put("If-None-Match",entry.etag);
         }
 
-        if (entry.serverDate > 0) {
-            Date refTime = new Date(entry.serverDate);
-            headers.put("如果从这以后修改", DateUtils.formatDate(refTime));
+        //优先使用资源的最后修改时间，没有则使用服务器响应的时间
+        if (entry.lastModified > 0) {
+            headers.put("If-Modified-Since",HttpHeaderParser.formatDate(entry.lastModified));
+        } else if (entry.serverDate > 0) {
+            headers.put("If-Modified-Since",HttpHeaderParser.formatDate(entry.serverDate));
         }
 
     }
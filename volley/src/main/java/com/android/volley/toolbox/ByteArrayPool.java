@@ -1,9 +1,7 @@
 package com.android.volley.toolbox;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ByteArrayPool is a source and repository of <code>byte[]</code> objects. Its purpose is to
@@ -32,7 +30,10 @@ import java.util.List;
  * <p>
  * This class ensures that the total size of the buffers in its recycling pool never exceeds a
  * certain byte limit. When a buffer is returned that would cause the pool to exceed the limit,
- * least-recently-used buffers are disposed.
+ * the buffer is simply dropped and left to the garbage collector.
+ * <p>
+ * 缓冲区按2的幂划分大小等级，每个等级是一个单独加锁的栈，获取和归还都是O(1)，不同大小的
+ * 缓冲区之间没有锁竞争。
  *
  * 作者：李富 on 2015/11/3.
  * 邮箱：lifuzz@163.com
@@ -40,18 +41,27 @@ import java.util.List;
 public class ByteArrayPool {
 
     /**
-     *缓冲池，两个分别用于最后使用的和缓存池大小
+     * 大小等级的数量，第i个等级保存长度在[2^i,2^(i+1))之间的缓冲区
+     */
+    private static final int NUM_SIZE_CLASSES = 31;
+
+    /**
+     * 每个等级最多保存的缓冲区数量
+     */
+    private static final int MAX_BUFFERS_PER_CLASS = 32;
+
+    /**
+     * 每个大小等级的缓冲区栈
      */
-    private List<byte[]> mBuffersByLastUse = new ArrayList<>();
-    private List<byte[]> mBuffersBySize = new ArrayList<>();
+    private final SizeClass[] mSizeClasses = new SizeClass[NUM_SIZE_CLASSES];
 
     /**
-     * 缓冲池里的缓存区的总数
+     * 缓冲池里的缓冲区的总字节数
      */
-    private int mCurrentSize = 0;
+    private final AtomicInteger mCurrentSize = new AtomicInteger();
 
     /**
-     *缓存池的最大的缓冲区，老的被丢弃
+     *缓存池的最大字节数
      */
     private final int mSizeLimit;
 
@@ -70,22 +80,39 @@ public class ByteArrayPool {
      */
     public ByteArrayPool(int sizeLimit) {
         mSizeLimit = sizeLimit;
+        for (int i = 0 ; i < NUM_SIZE_CLASSES;i ++) {
+            long classSize = 1L << i;
+            int capacity = (int) Math.max(1,Math.min(MAX_BUFFERS_PER_CLASS,sizeLimit / classSize));
+            mSizeClasses[i] = new SizeClass(capacity);
+        }
     }
 
     /**
-     *从缓存池中获取一个缓存区，如果缓冲池中的缓冲区大小符合我们需要的大小，则直接从缓存池中获取，
-     * 如果不符合，则在创建一个。
-     * @param len
-     * @return
+     *从缓存池中获取一个缓存区，长度至少为len，可能比len大。
+     * 如果缓冲池中没有合适的缓冲区，则创建一个新的缓冲区，长度向上取整到2的幂，便于以后复用。
+     * @param len 需要的最小长度
+     * @return 缓冲区
      */
-    public synchronized byte[] getBuf(int len) {
-        for (int i = 0 ; i <mBuffersBySize.size();i++) {
-            byte[] buf = mBuffersBySize.get(i);
-            if (buf.length >= len) {
-                mCurrentSize -= buf.length;
-                mBuffersBySize.remove(i);
-                mBuffersByLastUse.remove(buf);
-                return buf;
+    public byte[] getBuf(int len) {
+
+        int index = ceilClass(len);
+
+        if (index < NUM_SIZE_CLASSES) {
+
+            //当前等级没有，再看大一级的等级
+            int last = Math.min(index + 1,NUM_SIZE_CLASSES - 1);
+            for (int i = index ; i <= last;i ++) {
+                byte[] buf = mSizeClasses[i].pop();
+                if (buf != null) {
+                    mCurrentSize.addAndGet(-buf.length);
+                    return buf;
+                }
+            }
+
+            //可以放回缓冲池的大小才向上取整
+            int rounded = 1 << index;
+            if (rounded <= mSizeLimit) {
+                return new byte[rounded];
             }
         }
 
@@ -93,40 +120,86 @@ public class ByteArrayPool {
     }
 
     /**
-     * 从缓存池中获取一个缓存区，如果该缓存区超过规定大小，则被丢弃
+     * 把缓存区放回缓存池，如果放回以后超过缓存池的最大字节数，则丢弃
      * @param buf 从缓冲池中获取的缓存
      */
-    public synchronized void returnBuf(byte[] buf) {
+    public void returnBuf(byte[] buf) {
 
-        if (buf == null && buf.length > mSizeLimit) {
+        if (buf == null || buf.length == 0 || buf.length > mSizeLimit) {
             return;
         }
 
-        mBuffersByLastUse.add(buf);
-        int pos = Collections.binarySearch(mBuffersBySize,buf,BUF_COMPARATOR);
-        if (pos < 0) {
-            pos = -pos - 1;
+        //先占用字节数，超过限制则丢弃
+        if (!reserve(buf.length)) {
+            return;
+        }
 
+        if (!mSizeClasses[floorClass(buf.length)].push(buf)) {
+            release(buf.length);
         }
+    }
 
-        mBuffersBySize.add(pos,buf);
-        mCurrentSize += buf.length;
-        trim();
+    /**
+     * 从缓冲池的最大字节数中占用bytes个字节，超过限制时不占用并返回false。
+     * 子类在共享的缓冲池之外保存缓冲区时，用这个方法和共享的缓冲池使用同一个上限
+     */
+    protected boolean reserve(int bytes) {
+        if (mCurrentSize.addAndGet(bytes) > mSizeLimit) {
+            mCurrentSize.addAndGet(-bytes);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 释放{@link #reserve(int)}占用的字节数
+     */
+    protected void release(int bytes) {
+        mCurrentSize.addAndGet(-bytes);
+    }
+
+    /**
+     * 能容纳len个字节的最小等级
+     */
+    static int ceilClass(int len) {
+        return len <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(len - 1);
+    }
 
+    /**
+     * 长度为len的缓冲区所在的等级，这个等级的缓冲区长度都不小于2^等级
+     */
+    static int floorClass(int len) {
+        return 31 - Integer.numberOfLeadingZeros(len);
     }
 
     /**
-     * 从缓冲池中删除缓冲区，直到缓冲池的大小符合规定的大小
+     * 一个大小等级的缓冲区栈，每个等级单独加锁
      */
-    private synchronized void trim() {
+    private static final class SizeClass {
+
+        private final byte[][] mStack;
+        private int mCount = 0;
 
-        while (mCurrentSize > mCurrentSize) {
-            byte[] buf = mBuffersByLastUse.remove(0);
-            mBuffersBySize.remove(buf);
-            mCurrentSize -= buf.length;
+        SizeClass(int capacity) {
+            mStack = new byte[capacity][];
         }
 
-    }
+        synchronized byte[] pop() {
+            if (mCount == 0) {
+                return null;
+            }
+            byte[] buf = mStack[--mCount];
+            mStack[mCount] = null;
+            return buf;
+        }
 
+        synchronized boolean push(byte[] buf) {
+            if (mCount == mStack.length) {
+                return false;
+            }
+            mStack[mCount++] = buf;
+            return true;
+        }
+    }
 
 }
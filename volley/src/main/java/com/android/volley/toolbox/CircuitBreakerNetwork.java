@@ -0,0 +1,379 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.AsyncNetwork;
+import com.android.volley.Cache;
+import com.android.volley.CircuitOpenError;
+import com.android.volley.DeferredRetryError;
+import com.android.volley.Network;
+import com.android.volley.NetworkResponse;
+import com.android.volley.NoConnectionError;
+import com.android.volley.Platform;
+import com.android.volley.Request;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+
+import org.apache.http.HttpStatus;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * 按主机熔断的网络接口，包装另一个{@link Network}。
+ *
+ * 每个主机保留最近{@link #DEFAULT_WINDOW_SIZE}个请求的结果，请求数量达到下限并且失败的比例
+ * 达到阈值时熔断器打开，这个主机的请求不再发送，立即以{@link CircuitOpenError}失败，调用者
+ * 不用再等待超时和重试。打开一段时间以后进入半开状态，放行少量探测请求：探测成功则关闭熔断器，
+ * 失败则重新打开。
+ *
+ * 只有超时、{@link NoConnectionError}和5xx的{@link ServerError}算作主机的失败，其他错误
+ * （例如4xx、权限验证失败）说明主机可以正常响应，算作成功。
+ *
+ * 打开{@link #setServeStaleWhileOpen(boolean)}以后，熔断期间有缓存条目的请求返回缓存的数据，
+ * 即使缓存已经过期。这样的响应不会写回缓存，服务器恢复以后仍然按原来的过期时间重新验证。
+ *
+ * 被包装的网络接口是{@link AsyncNetwork}时，异步执行的请求也经过熔断器；否则异步接口在调用
+ * 线程上同步执行。
+ *
+ * 作者：李富 on 2015/11/28.
+ * 邮箱：lifuzz@163.com
+ */
+public class CircuitBreakerNetwork implements AsyncNetwork {
+
+    /**
+     * 每个主机默认统计的请求数量
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+
+    /**
+     * 默认计算失败比例需要的最少请求数量
+     */
+    public static final int DEFAULT_MIN_REQUESTS = 10;
+
+    /**
+     * 默认打开熔断器的失败比例
+     */
+    public static final float DEFAULT_FAILURE_RATIO = 0.5f;
+
+    /**
+     * 默认打开状态持续的毫秒数
+     */
+    public static final int DEFAULT_OPEN_DURATION_MS = 30000;
+
+    /**
+     * 默认半开状态同时放行的探测请求数量
+     */
+    public static final int DEFAULT_HALF_OPEN_PROBES = 1;
+
+    private static final int STATE_CLOSED = 0;
+
+    private static final int STATE_OPEN = 1;
+
+    private static final int STATE_HALF_OPEN = 2;
+
+    private static final int PERMIT_DENIED = 0;
+
+    private static final int PERMIT_NORMAL = 1;
+
+    private static final int PERMIT_PROBE = 2;
+
+    private final Network mNetwork;
+
+    private final int mWindowSize;
+
+    private final int mMinRequests;
+
+    private final float mFailureRatio;
+
+    private final int mOpenDurationMs;
+
+    private final int mHalfOpenProbes;
+
+    /**
+     * 熔断期间是否返回过期的缓存数据
+     */
+    private volatile boolean mServeStaleWhileOpen = false;
+
+    private final ConcurrentHashMap<String,Circuit> mCircuits = new ConcurrentHashMap<>();
+
+    /**
+     * @param network 被包装的网络接口
+     */
+    public CircuitBreakerNetwork(Network network) {
+        this(network,DEFAULT_WINDOW_SIZE,DEFAULT_MIN_REQUESTS,DEFAULT_FAILURE_RATIO,
+                DEFAULT_OPEN_DURATION_MS,DEFAULT_HALF_OPEN_PROBES);
+    }
+
+    /**
+     * @param network 被包装的网络接口
+     * @param windowSize 每个主机统计的请求数量
+     * @param minRequests 计算失败比例需要的最少请求数量
+     * @param failureRatio 打开熔断器的失败比例
+     * @param openDurationMs 打开状态持续的毫秒数
+     * @param halfOpenProbes 半开状态同时放行的探测请求数量
+     */
+    public CircuitBreakerNetwork(Network network,int windowSize,int minRequests,
+                                 float failureRatio,int openDurationMs,int halfOpenProbes) {
+        if (windowSize < 1 || minRequests < 1 || minRequests > windowSize) {
+            throw new IllegalArgumentException("最少请求数量必须在1和统计的请求数量之间");
+        }
+        if (failureRatio <= 0 || failureRatio > 1) {
+            throw new IllegalArgumentException("失败比例必须在0和1之间");
+        }
+        if (halfOpenProbes < 1) {
+            throw new IllegalArgumentException("探测请求数量必须大于0");
+        }
+        mNetwork = network;
+        mWindowSize = windowSize;
+        mMinRequests = minRequests;
+        mFailureRatio = failureRatio;
+        mOpenDurationMs = openDurationMs;
+        mHalfOpenProbes = halfOpenProbes;
+    }
+
+    /**
+     * 设置熔断期间是否返回请求的缓存条目（包括已经过期的），没有缓存条目的请求仍然失败
+     */
+    public void setServeStaleWhileOpen(boolean serveStaleWhileOpen) {
+        mServeStaleWhileOpen = serveStaleWhileOpen;
+    }
+
+    /**
+     * 主机的熔断器是否处于打开状态
+     */
+    public boolean isOpen(String host) {
+        Circuit circuit = mCircuits.get(host);
+        return circuit != null && circuit.isOpen();
+    }
+
+    @Override
+    public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+
+        String host = HostLatencyTracker.hostOf(request.getUrl());
+        Circuit circuit = circuitFor(host);
+
+        int permit = circuit.acquire();
+        if (permit == PERMIT_DENIED) {
+            return rejectRequest(request,host);
+        }
+
+        try {
+            NetworkResponse response = mNetwork.performRequest(request);
+            circuit.onResult(permit,false);
+            return response;
+        } catch (VolleyError e) {
+            circuit.onResult(permit,isHostFailure(e));
+            throw e;
+        } catch (RuntimeException e) {
+            circuit.onResult(permit,false);
+            throw e;
+        }
+    }
+
+    @Override
+    public void performRequest(Request<?> request,final OnRequestComplete callback) {
+
+        //被包装的是同步网络接口，在当前线程上执行
+        if (!(mNetwork instanceof AsyncNetwork)) {
+            NetworkResponse response;
+            try {
+                response = performRequest(request);
+            } catch (VolleyError e) {
+                callback.onError(e);
+                return;
+            }
+            callback.onSuccess(response);
+            return;
+        }
+
+        String host = HostLatencyTracker.hostOf(request.getUrl());
+        final Circuit circuit = circuitFor(host);
+
+        final int permit = circuit.acquire();
+        if (permit == PERMIT_DENIED) {
+            NetworkResponse response;
+            try {
+                response = rejectRequest(request,host);
+            } catch (VolleyError e) {
+                callback.onError(e);
+                return;
+            }
+            callback.onSuccess(response);
+            return;
+        }
+
+        ((AsyncNetwork) mNetwork).performRequest(request,new OnRequestComplete() {
+
+            @Override
+            public void onSuccess(NetworkResponse networkResponse) {
+                circuit.onResult(permit,false);
+                callback.onSuccess(networkResponse);
+            }
+
+            @Override
+            public void onError(VolleyError error) {
+                circuit.onResult(permit,isHostFailure(error));
+                callback.onError(error);
+            }
+        });
+    }
+
+    /**
+     * 熔断期间的请求，有缓存条目并且允许时返回缓存的数据，否则失败
+     */
+    private NetworkResponse rejectRequest(Request<?> request,String host) throws VolleyError {
+
+        Cache.Entry entry = request.getCacheEntry();
+        if (mServeStaleWhileOpen && entry != null) {
+            request.addMarker("circuit-open-serve-stale");
+            //标记为过期数据，调度线程不会把它当作新的响应写回缓存
+            return new NetworkResponse(HttpStatus.SC_NOT_MODIFIED,entry.data,
+                    entry.responseHeaders,true,true);
+        }
+
+        request.addMarker("circuit-open-reject");
+        throw new CircuitOpenError(host);
+    }
+
+    private Circuit circuitFor(String host) {
+
+        Circuit circuit = mCircuits.get(host);
+        if (circuit == null) {
+            Circuit created = new Circuit();
+            circuit = mCircuits.putIfAbsent(host,created);
+            if (circuit == null) {
+                circuit = created;
+            }
+        }
+        return circuit;
+    }
+
+    /**
+     * 是否是说明主机不可用的错误，延迟重试按导致重试的错误计算
+     */
+    private static boolean isHostFailure(VolleyError error) {
+
+        if (error instanceof DeferredRetryError) {
+            error = ((DeferredRetryError) error).error;
+        }
+
+        if (error instanceof TimeoutError || error instanceof NoConnectionError) {
+            return true;
+        }
+
+        if (error instanceof ServerError) {
+            NetworkResponse response = error.networkResponse;
+            return response == null || response.statusCode >= 500;
+        }
+
+        return false;
+    }
+
+    /**
+     * 一个主机的熔断器，用自身加锁
+     */
+    private class Circuit {
+
+        private int mState = STATE_CLOSED;
+
+        /**
+         * 最近请求的结果，true为失败
+         */
+        private final boolean[] mOutcomes = new boolean[mWindowSize];
+
+        private int mNext = 0;
+
+        private int mCount = 0;
+
+        private int mFailures = 0;
+
+        private long mOpenedAt;
+
+        /**
+         * 半开状态正在执行的探测请求数量
+         */
+        private int mProbes = 0;
+
+        synchronized boolean isOpen() {
+            return mState == STATE_OPEN;
+        }
+
+        /**
+         * 决定是否放行一个请求
+         */
+        synchronized int acquire() {
+
+            if (mState == STATE_OPEN) {
+                if (Platform.get().elapsedRealtime() - mOpenedAt < mOpenDurationMs) {
+                    return PERMIT_DENIED;
+                }
+                mState = STATE_HALF_OPEN;
+                mProbes = 0;
+            }
+
+            if (mState == STATE_HALF_OPEN) {
+                if (mProbes >= mHalfOpenProbes) {
+                    return PERMIT_DENIED;
+                }
+                mProbes++;
+                return PERMIT_PROBE;
+            }
+
+            return PERMIT_NORMAL;
+        }
+
+        /**
+         * 记录一个放行的请求的结果
+         */
+        synchronized void onResult(int permit,boolean failure) {
+
+            if (permit == PERMIT_PROBE) {
+                //状态已经被其他探测请求改变
+                if (mState != STATE_HALF_OPEN) {
+                    return;
+                }
+                if (failure) {
+                    open();
+                } else {
+                    close();
+                }
+                return;
+            }
+
+            //打开之前放行的请求不再影响状态
+            if (mState != STATE_CLOSED) {
+                return;
+            }
+
+            if (mCount == mWindowSize) {
+                if (mOutcomes[mNext]) {
+                    mFailures--;
+                }
+            } else {
+                mCount++;
+            }
+
+            mOutcomes[mNext] = failure;
+            mNext = (mNext + 1) % mWindowSize;
+            if (failure) {
+                mFailures++;
+            }
+
+            if (mCount >= mMinRequests && mFailures >= mFailureRatio * mCount) {
+                open();
+            }
+        }
+
+        private void open() {
+            mState = STATE_OPEN;
+            mOpenedAt = Platform.get().elapsedRealtime();
+        }
+
+        private void close() {
+            mState = STATE_CLOSED;
+            mNext = 0;
+            mCount = 0;
+            mFailures = 0;
+        }
+    }
+}
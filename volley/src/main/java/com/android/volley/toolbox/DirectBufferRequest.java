@@ -0,0 +1,50 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.Response;
+
+import java.nio.ByteBuffer;
+
+/**
+ *
+ * 把响应体读到堆外缓冲区中的请求，用于很大的响应(JSON、protobuf等)，避免大响应占用Java堆。
+ *
+ * 子类在{@link #parseDirectResponse(NetworkResponse, ByteBuffer)}中解析缓冲区，解析完成以后
+ * 缓冲区立即还给缓冲池，所以解析结果不能引用这个缓冲区。响应体不在堆中，这种请求默认不缓存。
+ *
+ * 作者：李富 on 2015/11/16.
+ * 邮箱：lifuzz@163.com
+ */
+public abstract class DirectBufferRequest<T> extends Request<T> {
+
+    public DirectBufferRequest(int method,String url,Response.ErrorListener listener) {
+        super(method,url,listener);
+        setShouldCache(false);
+    }
+
+    @Override
+    protected final Response<T> parseNetworkResponse(NetworkResponse response) {
+
+        if (!(response instanceof DirectNetworkResponse)) {
+            ByteBuffer body = response.data == null ? ByteBuffer.allocate(0)
+                    : ByteBuffer.wrap(response.data);
+            return parseDirectResponse(response,body);
+        }
+
+        DirectNetworkResponse directResponse = (DirectNetworkResponse) response;
+        try {
+            return parseDirectResponse(response,directResponse.body);
+        } finally {
+            directResponse.release();
+        }
+    }
+
+    /**
+     * 在工作线程上解析响应体，返回以后缓冲区会被归还
+     * @param response 网络响应，{@link NetworkResponse#data}为null
+     * @param body 响应体，position为0，limit为响应体的长度
+     * @return 解析响应，可能出现null的错误
+     */
+    protected abstract Response<T> parseDirectResponse(NetworkResponse response,ByteBuffer body);
+}
@@ -0,0 +1,169 @@
+package com.android.volley.toolbox;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ * 堆外(direct) {@link ByteBuffer}的缓冲池，用于保存大的响应体，避免大响应占用Java堆和
+ * 触发GC。
+ *
+ * 和{@link ByteArrayPool}一样按2的幂划分大小等级，每个等级单独加锁，缓冲池的总字节数
+ * 不超过最大字节数，超过时归还的缓冲区被丢弃。缓冲区不超过最大缓冲区大小，需要更大的
+ * 缓冲区时{@link #acquire(int)}返回null，调用者改用堆内存，不分配不能复用的堆外内存。
+ * 使用完的缓冲区必须调用{@link #release(ByteBuffer)}归还，否则只能等GC回收对应的堆外内存。
+ *
+ * 作者：李富 on 2015/11/16.
+ * 邮箱：lifuzz@163.com
+ */
+public class DirectByteBufferPool {
+
+    /**
+     * 最小的缓冲区等级，4KB
+     */
+    private static final int MIN_CLASS = 12;
+
+    /**
+     * 最大的缓冲区等级，1GB
+     */
+    private static final int MAX_CLASS = 30;
+
+    /**
+     * 默认缓冲池的最大字节数，32MB
+     */
+    public static final long DEFAULT_SIZE_LIMIT = 32 * 1024 * 1024;
+
+    /**
+     * 默认的最大缓冲区大小，16MB，几MB的响应体都能放在缓冲池的缓冲区中
+     */
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * 每个等级最多保存的缓冲区数量
+     */
+    private static final int MAX_BUFFERS_PER_CLASS = 8;
+
+    /**
+     * 每个大小等级的缓冲区栈
+     */
+    private final ByteBuffer[][] mStacks = new ByteBuffer[MAX_CLASS + 1][];
+
+    private final int[] mCounts = new int[MAX_CLASS + 1];
+
+    /**
+     * 缓冲池里的缓冲区的总字节数
+     */
+    private final AtomicLong mCurrentSize = new AtomicLong();
+
+    /**
+     * 缓冲池的最大字节数
+     */
+    private final long mSizeLimit;
+
+    /**
+     * 最大缓冲区所在的等级
+     */
+    private final int mMaxClass;
+
+    /**
+     * 使用默认的最大字节数（32MB）和最大缓冲区大小（16MB）创建缓冲池
+     */
+    public DirectByteBufferPool() {
+        this(DEFAULT_SIZE_LIMIT);
+    }
+
+    /**
+     * 最大缓冲区大小为16MB，缓冲池更小时为不超过缓冲池最大字节数的2的幂
+     * @param sizeLimit 缓冲池的最大字节数
+     */
+    public DirectByteBufferPool(long sizeLimit) {
+        this(sizeLimit,DEFAULT_MAX_BUFFER_SIZE);
+    }
+
+    /**
+     * @param sizeLimit 缓冲池的最大字节数
+     * @param maxBufferSize 最大缓冲区大小，向下取整到2的幂，不超过缓冲池的最大字节数
+     */
+    public DirectByteBufferPool(long sizeLimit,int maxBufferSize) {
+        mSizeLimit = sizeLimit;
+        mMaxClass = Math.max(MIN_CLASS,
+                ByteArrayPool.floorClass((int) Math.min(maxBufferSize,Math.max(1,sizeLimit))));
+        for (int i = MIN_CLASS ; i <= mMaxClass;i ++) {
+            mStacks[i] = new ByteBuffer[MAX_BUFFERS_PER_CLASS];
+        }
+    }
+
+    /**
+     * 缓冲池能提供的最大缓冲区大小
+     */
+    public int getMaxBufferSize() {
+        return 1 << mMaxClass;
+    }
+
+    /**
+     * 获取一个容量至少为capacity的堆外缓冲区，position为0，limit为容量
+     * @param capacity 需要的最小容量
+     * @return 缓冲区，capacity超过{@link #getMaxBufferSize()}时返回null
+     */
+    public ByteBuffer acquire(int capacity) {
+
+        int index = Math.max(MIN_CLASS,ByteArrayPool.ceilClass(capacity));
+
+        //不能复用的堆外内存只能等GC回收，超过最大缓冲区大小时由调用者使用堆内存
+        if (index > mMaxClass) {
+            return null;
+        }
+
+        ByteBuffer[] stack = mStacks[index];
+        synchronized (stack) {
+            int count = mCounts[index];
+            if (count > 0) {
+                ByteBuffer buffer = stack[--count];
+                stack[count] = null;
+                mCounts[index] = count;
+                mCurrentSize.addAndGet(-buffer.capacity());
+                buffer.clear();
+                return buffer;
+            }
+        }
+
+        return ByteBuffer.allocateDirect(1 << index);
+    }
+
+    /**
+     * 归还缓冲区，归还以后不能再使用这个缓冲区
+     * @param buffer 从{@link #acquire(int)}获取的缓冲区
+     */
+    public void release(ByteBuffer buffer) {
+
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+
+        int capacity = buffer.capacity();
+
+        //只保存按等级分配的缓冲区
+        if (capacity < (1 << MIN_CLASS) || Integer.bitCount(capacity) != 1
+                || capacity > getMaxBufferSize()) {
+            return;
+        }
+
+        if (mCurrentSize.addAndGet(capacity) > mSizeLimit) {
+            mCurrentSize.addAndGet(-capacity);
+            return;
+        }
+
+        int index = ByteArrayPool.floorClass(capacity);
+        ByteBuffer[] stack = mStacks[index];
+        synchronized (stack) {
+            int count = mCounts[index];
+            if (count < stack.length) {
+                stack[count] = buffer;
+                mCounts[index] = count + 1;
+                return;
+            }
+        }
+
+        mCurrentSize.addAndGet(-capacity);
+    }
+}
@@ -0,0 +1,51 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.NetworkResponse;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ *
+ * 响应体保存在堆外缓冲区中的网络响应，{@link #data}为null。
+ *
+ * 使用完以后必须调用{@link #release()}把缓冲区还给缓冲池。
+ *
+ * 作者：李富 on 2015/11/16.
+ * 邮箱：lifuzz@163.com
+ */
+public class DirectNetworkResponse extends NetworkResponse {
+
+    /**
+     * 响应体，position为0，limit为响应体的长度
+     */
+    public final ByteBuffer body;
+
+    private final DirectByteBufferPool mPool;
+
+    private boolean mReleased = false;
+
+    /**
+     * @param statusCode HTTP状态码
+     * @param body 保存响应体的堆外缓冲区
+     * @param headers 响应头
+     * @param pool 缓冲区所属的缓冲池
+     */
+    public DirectNetworkResponse(int statusCode,ByteBuffer body,Map<String,String> headers,
+                                 DirectByteBufferPool pool) {
+        super(statusCode,null,headers,false);
+        this.body = body;
+        mPool = pool;
+    }
+
+    /**
+     * 把缓冲区还给缓冲池，调用以后不能再读取{@link #body}
+     */
+    public synchronized void release() {
+        if (mReleased) {
+            return;
+        }
+        mReleased = true;
+        mPool.release(body);
+    }
+}
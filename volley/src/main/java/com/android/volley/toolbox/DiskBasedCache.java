@@ -0,0 +1,630 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.Cache;
+import com.android.volley.Platform;
+import com.android.volley.VolleyLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *
+ * 把缓存文件直接保存在硬盘指定目录中的缓存实现，每个缓存条目一个文件。
+ * 默认大小为5MB，可以设置缓存的最大字节数，超过时按最近最少使用(LRU)的顺序删除缓存文件
+ *
+ * 作者：李富 on 2015/11/9.
+ * 邮箱：lifuzz@163.com
+ */
+public class DiskBasedCache implements Cache {
+
+    /**
+     * 按访问顺序排列的缓存头信息，用于LRU删除，初始容量16，负载因子0.75
+     */
+    private final Map<String,CacheHeader> mEntries =
+            new LinkedHashMap<String,CacheHeader>(16,.75f,true);
+
+    /**
+     * 所有缓存文件的总大小，以字节为单位
+     */
+    private long mTotalSize = 0;
+
+    /**
+     * 缓存的根目录
+     */
+    private final File mRootDirectory;
+
+    /**
+     * 缓存的最大字节数
+     */
+    private final int mMaxCacheSizeInBytes;
+
+    /**
+     * 默认缓存的最大字节数
+     */
+    private static final int DEFAULT_DISK_USAGE_BYTES = 5 * 1024 * 1024;
+
+    /**
+     * 删除缓存时，删除到最大字节数的这个比例为止，避免每次写入都要删除
+     */
+    private static final float HYSTERESIS_FACTOR = 0.9f;
+
+    /**
+     * 缓存文件头的魔数，用于识别缓存文件的格式版本
+     */
+    private static final int CACHE_MAGIC = 0x20151112;
+
+    /**
+     * 正在写入的临时文件的后缀
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * @param rootDirectory 缓存的根目录
+     * @param maxCacheSizeInBytes 缓存的最大字节数
+     */
+    public DiskBasedCache(File rootDirectory,int maxCacheSizeInBytes) {
+        mRootDirectory = rootDirectory;
+        mMaxCacheSizeInBytes = maxCacheSizeInBytes;
+    }
+
+    /**
+     * 使用默认最大字节数（5MB）创建缓存
+     * @param rootDirectory 缓存的根目录
+     */
+    public DiskBasedCache(File rootDirectory) {
+        this(rootDirectory,DEFAULT_DISK_USAGE_BYTES);
+    }
+
+    /**
+     * 清空缓存，删除所有缓存文件
+     */
+    @Override
+    public synchronized void clear() {
+        File[] files = mRootDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mEntries.clear();
+        mTotalSize = 0;
+        VolleyLog.d("Cache cleared.");
+    }
+
+    /**
+     * 获取指定key的缓存数据，如果没有则返回null
+     */
+    @Override
+    public synchronized Entry get(String key) {
+
+        CacheHeader entry = mEntries.get(key);
+
+        //没有缓存
+        if (entry == null) {
+            return null;
+        }
+
+        File file = getFileForKey(key);
+        CountingInputStream cis = null;
+
+        try {
+
+            cis = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+            CacheHeader header = CacheHeader.readHeader(cis);
+
+            //文件名是两个hashCode，不同的键可能对应同一个文件，文件已经属于另一个键时当作没有缓存
+            if (!key.equals(header.key)) {
+                VolleyLog.d("%s: key=%s, found=%s",file.getAbsolutePath(),key,header.key);
+                removeEntry(key);
+                return null;
+            }
+
+            byte[] data = streamToBytes(cis,(int)(file.length() - cis.bytesRead));
+            return entry.toCacheEntry(data);
+
+        } catch (IOException e) {
+            VolleyLog.d("%s: %s",file.getAbsolutePath(),e.toString());
+            remove(key);
+            return null;
+        } finally {
+            if (cis != null) {
+                try {
+                    cis.close();
+                } catch (IOException ioe) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * 扫描缓存目录，读取所有缓存文件的头信息，建立索引。
+     * 由{@link com.android.volley.CacheDispatcher}在工作线程上调用
+     */
+    @Override
+    public synchronized void initialize() {
+
+        if (!mRootDirectory.exists()) {
+            if (!mRootDirectory.mkdirs()) {
+                VolleyLog.e("Unable to create cache dir %s",mRootDirectory.getAbsolutePath());
+            }
+            return;
+        }
+
+        File[] files = mRootDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long startTime = Platform.get().elapsedRealtime();
+
+        for (File file : files) {
+
+            //写入过程中被中断留下的临时文件
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                file.delete();
+                continue;
+            }
+
+            InputStream fis = null;
+
+            try {
+
+                fis = new BufferedInputStream(new FileInputStream(file));
+                CacheHeader entry = CacheHeader.readHeader(fis);
+                entry.size = file.length();
+                putEntry(entry.key,entry);
+
+            } catch (IOException e) {
+                //文件已经损坏，删除
+                file.delete();
+            } finally {
+                try {
+                    if (fis != null) {
+                        fis.close();
+                    }
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        VolleyLog.d("Cache initialized: %d entries, %d bytes in %d ms",mEntries.size(),
+                mTotalSize,Platform.get().elapsedRealtime() - startTime);
+    }
+
+    /**
+     * 使指定key的缓存过期
+     * @param key 键
+     * @param fullExpire 如果这个值为true，则完全过期，为false则是软过期
+     */
+    @Override
+    public synchronized void invalidate(String key,boolean fullExpire) {
+        Entry entry = get(key);
+        if (entry != null) {
+            entry.softTtl = 0;
+            if (fullExpire) {
+                entry.ttl = 0;
+            }
+            put(key,entry);
+        }
+    }
+
+    /**
+     * 添加或更新缓存，先写入临时文件，写完以后再重命名为缓存文件，
+     * 写入过程中被中断不会留下不完整的缓存文件
+     */
+    @Override
+    public synchronized void put(String key,Entry entry) {
+
+        pruneIfNeeded(entry.data.length);
+
+        File file = getFileForKey(key);
+        File tempFile = new File(mRootDirectory,file.getName() + TEMP_SUFFIX);
+
+        try {
+
+            BufferedOutputStream fos = new BufferedOutputStream(new FileOutputStream(tempFile));
+            CacheHeader e = new CacheHeader(key,entry);
+
+            boolean success = e.writeHeader(fos);
+            if (!success) {
+                fos.close();
+                VolleyLog.d("Failed to write header for %s",file.getAbsolutePath());
+                throw new IOException();
+            }
+
+            fos.write(entry.data);
+            fos.close();
+
+            if (!tempFile.renameTo(file)) {
+                VolleyLog.d("Could not rename %s",tempFile.getAbsolutePath());
+                throw new IOException();
+            }
+
+            e.size = file.length();
+            putEntry(key,e);
+            return;
+
+        } catch (IOException e) {
+        }
+
+        boolean deleted = tempFile.delete();
+        if (!deleted) {
+            VolleyLog.d("Could not clean up file %s",tempFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * 删除指定key的缓存文件
+     */
+    @Override
+    public synchronized void remove(String key) {
+        boolean deleted = getFileForKey(key).delete();
+        removeEntry(key);
+        if (!deleted) {
+            VolleyLog.d("Could not delete cache entry for key=%s, filename=%s",
+                    key,getFilenameForKey(key));
+        }
+    }
+
+    /**
+     * 根据key生成一个文件名，key的前半部分和后半部分分别取hashCode
+     */
+    private String getFilenameForKey(String key) {
+        int firstHalfLength = key.length() / 2;
+        String localFilename = String.valueOf(key.substring(0,firstHalfLength).hashCode());
+        localFilename += String.valueOf(key.substring(firstHalfLength).hashCode());
+        return localFilename;
+    }
+
+    /**
+     * 获取指定key的缓存文件
+     */
+    public File getFileForKey(String key) {
+        return new File(mRootDirectory,getFilenameForKey(key));
+    }
+
+    /**
+     * 写入新数据之前，如果缓存的总大小会超过最大字节数，按LRU的顺序删除缓存文件
+     * @param neededSpace 需要写入的字节数
+     */
+    private void pruneIfNeeded(int neededSpace) {
+
+        if ((mTotalSize + neededSpace) < mMaxCacheSizeInBytes) {
+            return;
+        }
+
+        if (VolleyLog.DEBUG) {
+            VolleyLog.v("Pruning old cache entries.");
+        }
+
+        long before = mTotalSize;
+        int prunedFiles = 0;
+        long startTime = Platform.get().elapsedRealtime();
+
+        Iterator<Map.Entry<String,CacheHeader>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+
+            Map.Entry<String,CacheHeader> entry = iterator.next();
+            CacheHeader e = entry.getValue();
+
+            boolean deleted = getFileForKey(e.key).delete();
+            if (deleted) {
+                mTotalSize -= e.size;
+            } else {
+                VolleyLog.d("Could not delete cache entry for key=%s, filename=%s",
+                        e.key,getFilenameForKey(e.key));
+            }
+            iterator.remove();
+            prunedFiles++;
+
+            if ((mTotalSize + neededSpace) < mMaxCacheSizeInBytes * HYSTERESIS_FACTOR) {
+                break;
+            }
+        }
+
+        if (VolleyLog.DEBUG) {
+            VolleyLog.v("pruned %d files, %d bytes, %d ms",prunedFiles,(mTotalSize - before),
+                    Platform.get().elapsedRealtime() - startTime);
+        }
+    }
+
+    /**
+     * 添加缓存头信息，并更新缓存的总大小
+     */
+    private void putEntry(String key,CacheHeader entry) {
+        if (!mEntries.containsKey(key)) {
+            mTotalSize += entry.size;
+        } else {
+            CacheHeader oldEntry = mEntries.get(key);
+            mTotalSize += (entry.size - oldEntry.size);
+        }
+        mEntries.put(key,entry);
+    }
+
+    /**
+     * 删除缓存头信息，并更新缓存的总大小
+     */
+    private void removeEntry(String key) {
+        CacheHeader entry = mEntries.get(key);
+        if (entry != null) {
+            mTotalSize -= entry.size;
+            mEntries.remove(key);
+        }
+    }
+
+    /**
+     * 从输入流中读取指定长度的字节
+     */
+    private static byte[] streamToBytes(InputStream in,int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int count;
+        int pos = 0;
+        while (pos < length && ((count = in.read(bytes,pos,length - pos)) != -1)) {
+            pos += count;
+        }
+        if (pos != length) {
+            throw new IOException("Expected " + length + " bytes, read " + pos + " bytes");
+        }
+        return bytes;
+    }
+
+    /**
+     * 缓存文件的头信息，除了数据以外的{@link Entry}的所有信息，保存在内存中用于索引
+     */
+    static class CacheHeader {
+
+        /**
+         * 缓存文件的大小，只保存在内存中
+         */
+        public long size;
+
+        /**
+         * 缓存的键
+         */
+        public String key;
+
+        /**
+         * 缓存的ETag一致性
+         */
+        public String etag;
+
+        /**
+         * 服务器响应的时间
+         */
+        public long serverDate;
+
+        /**
+         * 资源最后修改的时间
+         */
+        public long lastModified;
+
+        /**
+         * 缓存过期的时间
+         */
+        public long ttl;
+
+        /**
+         * 缓存需要刷新的时间
+         */
+        public long softTtl;
+
+        /**
+         * 响应头
+         */
+        public Map<String,String> responseHeaders;
+
+        private CacheHeader() {
+        }
+
+        /**
+         * @param key 缓存的键
+         * @param entry 缓存的数据
+         */
+        public CacheHeader(String key,Entry entry) {
+            this.key = key;
+            this.size = entry.data.length;
+            this.etag = entry.etag;
+            this.serverDate = entry.serverDate;
+            this.lastModified = entry.lastModified;
+            this.ttl = entry.ttl;
+            this.softTtl = entry.softTtl;
+            this.responseHeaders = entry.responseHeaders;
+        }
+
+        /**
+         * 从输入流中读取缓存头信息
+         * @throws IOException 文件格式不正确或者读取失败
+         */
+        public static CacheHeader readHeader(InputStream is) throws IOException {
+            CacheHeader entry = new CacheHeader();
+            int magic = readInt(is);
+            if (magic != CACHE_MAGIC) {
+                throw new IOException();
+            }
+            entry.key = readString(is);
+            entry.etag = readString(is);
+            if (entry.etag.equals("")) {
+                entry.etag = null;
+            }
+            entry.serverDate = readLong(is);
+            entry.lastModified = readLong(is);
+            entry.ttl = readLong(is);
+            entry.softTtl = readLong(is);
+            entry.responseHeaders = readStringStringMap(is);
+            return entry;
+        }
+
+        /**
+         * 用缓存头信息和数据创建一个{@link Entry}
+         */
+        public Entry toCacheEntry(byte[] data) {
+            Entry e = new Entry();
+            e.data = data;
+            e.etag = etag;
+            e.serverDate = serverDate;
+            e.lastModified = lastModified;
+            e.ttl = ttl;
+            e.softTtl = softTtl;
+            e.responseHeaders = responseHeaders;
+            return e;
+        }
+
+        /**
+         * 把缓存头信息写入输出流
+         * @return 写入成功返回true
+         */
+        public boolean writeHeader(OutputStream os) {
+            try {
+                writeInt(os,CACHE_MAGIC);
+                writeString(os,key);
+                writeString(os,etag == null ? "" : etag);
+                writeLong(os,serverDate);
+                writeLong(os,lastModified);
+                writeLong(os,ttl);
+                writeLong(os,softTtl);
+                writeStringStringMap(responseHeaders,os);
+                os.flush();
+                return true;
+            } catch (IOException e) {
+                VolleyLog.d("%s",e.toString());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 统计已经读取的字节数的输入流
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private int bytesRead = 0;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result != -1) {
+                bytesRead++;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] buffer,int offset,int count) throws IOException {
+            int result = super.read(buffer,offset,count);
+            if (result != -1) {
+                bytesRead += result;
+            }
+            return result;
+        }
+    }
+
+    /*
+     * 缓存头信息的读写方法，整数按小端字节序写入，字符串先写入int类型的长度，再写入UTF-8编码的字节
+     */
+
+    private static int read(InputStream is) throws IOException {
+        int b = is.read();
+        if (b == -1) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    static void writeInt(OutputStream os,int n) throws IOException {
+        os.write((n) & 0xff);
+        os.write((n >> 8) & 0xff);
+        os.write((n >> 16) & 0xff);
+        os.write((n >> 24) & 0xff);
+    }
+
+    static int readInt(InputStream is) throws IOException {
+        int n = 0;
+        n |= (read(is));
+        n |= (read(is) << 8);
+        n |= (read(is) << 16);
+        n |= (read(is) << 24);
+        return n;
+    }
+
+    static void writeLong(OutputStream os,long n) throws IOException {
+        os.write((byte)(n));
+        os.write((byte)(n >>> 8));
+        os.write((byte)(n >>> 16));
+        os.write((byte)(n >>> 24));
+        os.write((byte)(n >>> 32));
+        os.write((byte)(n >>> 40));
+        os.write((byte)(n >>> 48));
+        os.write((byte)(n >>> 56));
+    }
+
+    static long readLong(InputStream is) throws IOException {
+        long n = 0;
+        n |= ((read(is) & 0xFFL));
+        n |= ((read(is) & 0xFFL) << 8);
+        n |= ((read(is) & 0xFFL) << 16);
+        n |= ((read(is) & 0xFFL) << 24);
+        n |= ((read(is) & 0xFFL) << 32);
+        n |= ((read(is) & 0xFFL) << 40);
+        n |= ((read(is) & 0xFFL) << 48);
+        n |= ((read(is) & 0xFFL) << 56);
+        return n;
+    }
+
+    static void writeString(OutputStream os,String s) throws IOException {
+        byte[] b = s.getBytes("UTF-8");
+        writeInt(os,b.length);
+        os.write(b,0,b.length);
+    }
+
+    static String readString(InputStream is) throws IOException {
+        int n = readInt(is);
+        if (n < 0) {
+            throw new IOException("readString length < 0: " + n);
+        }
+        byte[] b = streamToBytes(is,n);
+        return new String(b,"UTF-8");
+    }
+
+    static void writeStringStringMap(Map<String,String> map,OutputStream os) throws IOException {
+        if (map != null) {
+            writeInt(os,map.size());
+            for (Map.Entry<String,String> entry : map.entrySet()) {
+                writeString(os,entry.getKey());
+                writeString(os,entry.getValue());
+            }
+        } else {
+            writeInt(os,0);
+        }
+    }
+
+    static Map<String,String> readStringStringMap(InputStream is) throws IOException {
+        int size = readInt(is);
+        Map<String,String> result = (size == 0)
+                ? Collections.<String,String>emptyMap()
+                : new HashMap<String,String>(size);
+        for (int i = 0 ; i < size;i ++) {
+            String key = readString(is).intern();
+            String value = readString(is).intern();
+            result.put(key,value);
+        }
+        return result;
+    }
+}
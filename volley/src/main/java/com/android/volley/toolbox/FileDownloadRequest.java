@@ -0,0 +1,127 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.Response;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Map;
+
+/**
+ *
+ * 把响应体直接下载到文件的请求，用于资源和升级包的下载。
+ *
+ * 响应流通过{@link FileChannel#transferFrom(ReadableByteChannel, long, long)}写入临时文件，
+ * 响应体不会读到Java堆中；下载完成以后把临时文件重命名为目标文件，所以目标文件要么是旧的，
+ * 要么是完整的新文件。
+ *
+ * 作者：李富 on 2015/11/18.
+ * 邮箱：lifuzz@163.com
+ */
+public class FileDownloadRequest extends StreamingRequest<File> {
+
+    /**
+     * 每次传输的最大字节数
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * 临时文件的后缀
+     */
+    private static final String TEMP_SUFFIX = ".download";
+
+    private final File mTarget;
+
+    private final Response.Listener<File> mListener;
+
+    /**
+     * @param url 下载的URL
+     * @param target 下载完成以后的目标文件
+     * @param listener 下载完成的回调
+     * @param errorListener 错误的回调
+     */
+    public FileDownloadRequest(String url,File target,Response.Listener<File> listener,
+                               Response.ErrorListener errorListener) {
+        super(Method.GET,url,errorListener);
+        mTarget = target;
+        mListener = listener;
+    }
+
+    @Override
+    protected Response<File> parseNetworkStream(NetworkResponse response,InputStream in,
+                                                ByteArrayPool pool) throws IOException {
+
+        File temp = new File(mTarget.getParentFile(),mTarget.getName() + TEMP_SUFFIX);
+        FileOutputStream fos = new FileOutputStream(temp);
+        boolean success = false;
+
+        try {
+
+            FileChannel out = fos.getChannel();
+            ReadableByteChannel source = Channels.newChannel(in);
+
+            long position = 0;
+            long transferred;
+            while ((transferred = out.transferFrom(source,position,TRANSFER_CHUNK_SIZE)) > 0) {
+                position += transferred;
+            }
+
+            //检查下载的长度是否完整
+            long expected = contentLength(response);
+            if (expected >= 0 && position != expected) {
+                throw new IOException("Download truncated, expected " + expected
+                        + " bytes, got " + position);
+            }
+
+            out.force(false);
+            fos.close();
+
+            if (!temp.renameTo(mTarget)) {
+                throw new IOException("Unable to rename " + temp + " to " + mTarget);
+            }
+
+            success = true;
+            return Response.success(mTarget,null);
+
+        } finally {
+            if (!success) {
+                try {
+                    fos.close();
+                } catch (IOException ignored) {
+                }
+                temp.delete();
+            }
+        }
+    }
+
+    @Override
+    protected void deliverResponse(File response) {
+        if (mListener != null) {
+            mListener.onResponse(response);
+        }
+    }
+
+    /**
+     * 获取响应头中的Content-Length，没有则返回-1
+     */
+    private static long contentLength(NetworkResponse response) {
+        if (response.headers == null) {
+            return -1;
+        }
+        for (Map.Entry<String,String> header : response.headers.entrySet()) {
+            if ("Content-Length".equalsIgnoreCase(header.getKey())) {
+                try {
+                    return Long.parseLong(header.getValue().trim());
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,151 @@
+package com.android.volley.toolbox;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ *
+ * 把请求的消息体压缩成gzip格式写入连接的输出流。
+ *
+ * 和{@link java.util.zip.GZIPOutputStream}不同，这里的{@link Deflater}和{@link CRC32}在每个线程
+ * 中复用（使用期间从线程中取出），输出缓冲区从{@link ByteArrayPool}借用，关闭时全部归还。
+ *
+ * 作者：李富 on 2015/11/20.
+ * 邮箱：lifuzz@163.com
+ */
+class GzipBodyOutputStream extends FilterOutputStream {
+
+    private static final int OUTPUT_BUFFER_SIZE = 4096;
+
+    /**
+     * gzip文件头：魔数、压缩方法(deflate)、标志、修改时间、额外标志、操作系统(未知)
+     */
+    private static final byte[] GZIP_HEADER = {
+            (byte) 0x1f,(byte) 0x8b,8,0,0,0,0,0,0,(byte) 0xff
+    };
+
+    /**
+     * 每个线程复用的压缩器，使用时从线程中取出，关闭时放回
+     */
+    private static final ThreadLocal<Deflater> DEFLATERS = new ThreadLocal<>();
+
+    /**
+     * 每个线程复用的CRC32，和压缩器一样使用时取出，同一线程上同时打开的两个流不会共用
+     */
+    private static final ThreadLocal<CRC32> CRCS = new ThreadLocal<>();
+
+    private final ByteArrayPool mPool;
+
+    private byte[] mOutput;
+
+    private Deflater mDeflater;
+
+    private CRC32 mCrc;
+
+    private boolean mClosed = false;
+
+    /**
+     * @param out 连接的输出流
+     * @param pool 借用输出缓冲区的缓冲池
+     */
+    GzipBodyOutputStream(OutputStream out,ByteArrayPool pool) throws IOException {
+        super(out);
+        mPool = pool;
+        mOutput = pool.getBuf(OUTPUT_BUFFER_SIZE);
+
+        mDeflater = DEFLATERS.get();
+        if (mDeflater == null) {
+            mDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION,true);
+        } else {
+            DEFLATERS.set(null);
+        }
+
+        mCrc = CRCS.get();
+        if (mCrc == null) {
+            mCrc = new CRC32();
+        } else {
+            CRCS.set(null);
+        }
+
+        out.write(GZIP_HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b},0,1);
+    }
+
+    @Override
+    public void write(byte[] buffer,int offset,int count) throws IOException {
+
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+
+        if (count == 0) {
+            return;
+        }
+
+        mCrc.update(buffer,offset,count);
+        mDeflater.setInput(buffer,offset,count);
+        while (!mDeflater.needsInput()) {
+            deflate();
+        }
+    }
+
+    /**
+     * 写完剩余的压缩数据和gzip文件尾，归还压缩器和缓冲区，然后关闭连接的输出流
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+
+        try {
+            mDeflater.finish();
+            while (!mDeflater.finished()) {
+                deflate();
+            }
+            writeTrailer();
+        } finally {
+            mDeflater.reset();
+            DEFLATERS.set(mDeflater);
+            mDeflater = null;
+            mCrc.reset();
+            CRCS.set(mCrc);
+            mCrc = null;
+            mPool.returnBuf(mOutput);
+            mOutput = null;
+            out.close();
+        }
+    }
+
+    private void deflate() throws IOException {
+        int count = mDeflater.deflate(mOutput,0,mOutput.length);
+        if (count > 0) {
+            out.write(mOutput,0,count);
+        }
+    }
+
+    /**
+     * gzip文件尾：CRC32和压缩前的长度，小端序
+     */
+    private void writeTrailer() throws IOException {
+        writeInt((int) mCrc.getValue());
+        writeInt((int) mDeflater.getBytesRead());
+    }
+
+    private void writeInt(int value) throws IOException {
+        mOutput[0] = (byte) value;
+        mOutput[1] = (byte) (value >>> 8);
+        mOutput[2] = (byte) (value >>> 16);
+        mOutput[3] = (byte) (value >>> 24);
+        out.write(mOutput,0,4);
+    }
+}
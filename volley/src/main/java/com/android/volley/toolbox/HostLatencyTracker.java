@@ -0,0 +1,138 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.Platform;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *
+ * 按主机统计请求延迟，用于计算延迟的百分位数。
+ *
+ * 每个主机保留最近{@link #DEFAULT_WINDOW_SIZE}个样本的环形缓冲区，旧的样本被新的样本覆盖，
+ * 统计结果跟随主机最近的表现变化。{@link BasicNetwork}记录每次收到响应的请求的耗时，
+ * 超时的请求按超时时间记录，{@link AdaptiveRetryPolicy}根据百分位数决定超时时间。
+ *
+ * 作者：李富 on 2015/11/25.
+ * 邮箱：lifuzz@163.com
+ */
+public class HostLatencyTracker {
+
+    /**
+     * 每个主机默认保留的样本数量
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 64;
+
+    private final int mWindowSize;
+
+    private final ConcurrentHashMap<String,Window> mWindows = new ConcurrentHashMap<>();
+
+    public HostLatencyTracker() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize 每个主机保留的样本数量
+     */
+    public HostLatencyTracker(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("样本数量必须大于0");
+        }
+        mWindowSize = windowSize;
+    }
+
+    /**
+     * 记录一次请求的耗时
+     * @param host 主机
+     * @param latencyMs 从发送请求到读完响应的毫秒数
+     */
+    public void record(String host,long latencyMs) {
+
+        Window window = mWindows.get(host);
+        if (window == null) {
+            Window created = new Window(mWindowSize);
+            window = mWindows.putIfAbsent(host,created);
+            if (window == null) {
+                window = created;
+            }
+        }
+
+        window.add(latencyMs);
+    }
+
+    /**
+     * 主机最近的样本数量
+     */
+    public int getSampleCount(String host) {
+        Window window = mWindows.get(host);
+        return window == null ? 0 : window.size();
+    }
+
+    /**
+     * 主机最近的延迟的百分位数
+     * @param host 主机
+     * @param percentile 百分位数，0到1之间，例如0.99
+     * @return 延迟的毫秒数，没有样本返回-1
+     */
+    public long getPercentile(String host,double percentile) {
+
+        Window window = mWindows.get(host);
+        if (window == null) {
+            return -1;
+        }
+
+        long[] samples = window.snapshot();
+        if (samples.length == 0) {
+            return -1;
+        }
+
+        Arrays.sort(samples);
+
+        //最近秩(nearest-rank)方法
+        int rank = (int) Math.ceil(percentile * samples.length);
+        return samples[Math.min(samples.length - 1,Math.max(0,rank - 1))];
+    }
+
+    /**
+     * 从URL中取出主机，无法解析返回空字符串
+     */
+    public static String hostOf(String url) {
+        if (url == null) {
+            return "";
+        }
+        String host = Platform.get().getHost(url);
+        return host == null ? "" : host;
+    }
+
+    /**
+     * 一个主机的样本环形缓冲区
+     */
+    private static class Window {
+
+        private final long[] mSamples;
+
+        private int mNext = 0;
+
+        private int mCount = 0;
+
+        Window(int size) {
+            mSamples = new long[size];
+        }
+
+        synchronized void add(long sample) {
+            mSamples[mNext] = sample;
+            mNext = (mNext + 1) % mSamples.length;
+            if (mCount < mSamples.length) {
+                mCount++;
+            }
+        }
+
+        synchronized int size() {
+            return mCount;
+        }
+
+        synchronized long[] snapshot() {
+            return Arrays.copyOf(mSamples,mCount);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.Cache;
+import com.android.volley.NetworkResponse;
+
+import java.util.Map;
+
+/**
+ *
+ * HTTP头信息的解析工具类，根据响应头计算缓存的过期时间。
+ *
+ * 响应头在每个响应上都要解析，所以这里不使用正则表达式，也不在每次调用时创建
+ * SimpleDateFormat，日期直接按字符解析和格式化。
+ *
+ * 作者：李富 on 2015/11/12.
+ * 邮箱：lifuzz@163.com
+ */
+public class HttpHeaderParser {
+
+    private static final String[] MONTHS = {
+            "Jan","Feb","Mar","Apr","May","Jun","Jul","Aug","Sep","Oct","Nov","Dec"
+    };
+
+    /**
+     * 从星期日开始的星期名称
+     */
+    private static final String[] WEEKDAYS = {
+            "Sun","Mon","Tue","Wed","Thu","Fri","Sat"
+    };
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * 根据响应头创建一个{@link Cache.Entry}
+     * @param response 网络响应
+     * @return 缓存条目，如果响应不能缓存（no-cache或者no-store）则返回null
+     */
+    public static Cache.Entry parseCacheHeaders(NetworkResponse response) {
+
+        long now = System.currentTimeMillis();
+
+        Map<String,String> headers = response.headers;
+
+        long serverDate = 0;
+        long lastModified = 0;
+        long serverExpires = 0;
+        long softExpire = 0;
+        long finalExpire = 0;
+        long maxAge = 0;
+        long staleWhileRevalidate = 0;
+        boolean hasCacheControl = false;
+        boolean mustRevalidate = false;
+
+        String serverEtag = null;
+
+        //只遍历一次响应头，头的名称不区分大小写
+        for (Map.Entry<String,String> header : headers.entrySet()) {
+
+            String name = header.getKey();
+            String value = header.getValue();
+
+            if (name == null || value == null) {
+                continue;
+            }
+
+            if (name.equalsIgnoreCase("Date")) {
+
+                serverDate = parseDateAsEpoch(value);
+
+            } else if (name.equalsIgnoreCase("Cache-Control")) {
+
+                hasCacheControl = true;
+
+                int length = value.length();
+                int start = 0;
+
+                //逐个解析用逗号分隔的指令
+                while (start < length) {
+
+                    int end = value.indexOf(',',start);
+                    if (end < 0) {
+                        end = length;
+                    }
+
+                    int tokenStart = skipWhitespace(value,start,end);
+                    int tokenEnd = trimWhitespace(value,tokenStart,end);
+
+                    int equals = value.indexOf('=',tokenStart);
+                    int nameEnd = (equals < 0 || equals > tokenEnd) ? tokenEnd
+                            : trimWhitespace(value,tokenStart,equals);
+
+                    if (matches(value,tokenStart,nameEnd,"no-cache")
+                            || matches(value,tokenStart,nameEnd,"no-store")) {
+                        return null;
+                    } else if (matches(value,tokenStart,nameEnd,"max-age")) {
+                        maxAge = parseSeconds(value,equals + 1,tokenEnd);
+                    } else if (matches(value,tokenStart,nameEnd,"stale-while-revalidate")) {
+                        staleWhileRevalidate = parseSeconds(value,equals + 1,tokenEnd);
+                    } else if (matches(value,tokenStart,nameEnd,"must-revalidate")
+                            || matches(value,tokenStart,nameEnd,"proxy-revalidate")) {
+                        mustRevalidate = true;
+                    }
+
+                    start = end + 1;
+                }
+
+            } else if (name.equalsIgnoreCase("Expires")) {
+
+                serverExpires = parseDateAsEpoch(value);
+
+            } else if (name.equalsIgnoreCase("Last-Modified")) {
+
+                lastModified = parseDateAsEpoch(value);
+
+            } else if (name.equalsIgnoreCase("ETag")) {
+
+                serverEtag = value;
+
+            }
+        }
+
+        //Cache-Control优先于Expires
+        if (hasCacheControl) {
+            softExpire = now + maxAge * 1000;
+            finalExpire = mustRevalidate ? softExpire : softExpire + staleWhileRevalidate * 1000;
+        } else if (serverDate > 0 && serverExpires >= serverDate) {
+            //服务器返回的是绝对时间，用服务器的时间差计算，避免本地时钟误差
+            softExpire = now + (serverExpires - serverDate);
+            finalExpire = softExpire;
+        }
+
+        Cache.Entry entry = new Cache.Entry();
+        entry.data = response.data;
+        entry.etag = serverEtag;
+        entry.softTtl = softExpire;
+        entry.ttl = finalExpire;
+        entry.serverDate = serverDate;
+        entry.lastModified = lastModified;
+        entry.responseHeaders = headers;
+
+        return entry;
+    }
+
+    /**
+     * 解析HTTP日期，支持RFC 1123、RFC 850和asctime三种格式
+     * @param dateStr 日期字符串
+     * @return 从1970年开始的毫秒数，如果无法解析则返回0
+     */
+    public static long parseDateAsEpoch(String dateStr) {
+
+        int length = dateStr.length();
+        int pos = skipWhitespace(dateStr,0,length);
+
+        int comma = dateStr.indexOf(',',pos);
+
+        int day;
+        int month;
+        int year;
+
+        if (comma >= 0) {
+
+            //RFC 1123: Sun, 06 Nov 1994 08:49:37 GMT
+            //RFC 850:  Sunday, 06-Nov-94 08:49:37 GMT
+            pos = skipWhitespace(dateStr,comma + 1,length);
+
+            int dayEnd = digitsEnd(dateStr,pos,length);
+            day = parseInt(dateStr,pos,dayEnd);
+            pos = dayEnd + 1;
+
+            month = parseMonth(dateStr,pos);
+            pos += 4;
+
+            int yearEnd = digitsEnd(dateStr,pos,length);
+            year = parseInt(dateStr,pos,yearEnd);
+            if (yearEnd - pos == 2) {
+                year += year < 70 ? 2000 : 1900;
+            }
+            pos = skipWhitespace(dateStr,yearEnd,length);
+
+        } else {
+
+            //asctime: Sun Nov  6 08:49:37 1994
+            pos = skipWhitespace(dateStr,pos + 3,length);
+
+            month = parseMonth(dateStr,pos);
+            pos = skipWhitespace(dateStr,pos + 3,length);
+
+            int dayEnd = digitsEnd(dateStr,pos,length);
+            day = parseInt(dateStr,pos,dayEnd);
+            pos = skipWhitespace(dateStr,dayEnd,length);
+
+            year = -1;
+        }
+
+        //HH:mm:ss
+        if (pos + 8 > length || dateStr.charAt(pos + 2) != ':' || dateStr.charAt(pos + 5) != ':') {
+            return 0;
+        }
+        int hour = parseInt(dateStr,pos,pos + 2);
+        int minute = parseInt(dateStr,pos + 3,pos + 5);
+        int second = parseInt(dateStr,pos + 6,pos + 8);
+        pos += 8;
+
+        if (year == -1) {
+            pos = skipWhitespace(dateStr,pos,length);
+            year = parseInt(dateStr,pos,digitsEnd(dateStr,pos,length));
+        }
+
+        if (day < 1 || day > 31 || month < 0 || year < 0 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return 0;
+        }
+
+        long days = daysFromCivil(year,month + 1,day);
+        return days * MILLIS_PER_DAY + ((hour * 60L + minute) * 60L + second) * 1000L;
+    }
+
+    /**
+     * 把时间格式化为RFC 1123格式的HTTP日期，例如：Sun, 06 Nov 1994 08:49:37 GMT
+     * @param epochMillis 从1970年开始的毫秒数
+     */
+    public static String formatDate(long epochMillis) {
+
+        long days = floorDiv(epochMillis,MILLIS_PER_DAY);
+        int secondsOfDay = (int)((epochMillis - days * MILLIS_PER_DAY) / 1000);
+
+        //从1970年开始的天数转换为年月日
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int)(doy - (153 * mp + 2) / 5 + 1);
+        int month = (int)(mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        //1970年1月1日是星期四
+        int weekday = (int)(((days % 7) + 7 + 4) % 7);
+
+        StringBuilder sb = new StringBuilder(29);
+        sb.append(WEEKDAYS[weekday]).append(", ");
+        appendTwoDigits(sb,day);
+        sb.append(' ').append(MONTHS[month - 1]).append(' ').append(year).append(' ');
+        appendTwoDigits(sb,secondsOfDay / 3600);
+        sb.append(':');
+        appendTwoDigits(sb,(secondsOfDay / 60) % 60);
+        sb.append(':');
+        appendTwoDigits(sb,secondsOfDay % 60);
+        sb.append(" GMT");
+
+        return sb.toString();
+    }
+
+    /**
+     * 年月日转换为从1970年开始的天数
+     */
+    private static long daysFromCivil(int year,int month,int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yoe = year - era * 400;
+        long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static long floorDiv(long x,long y) {
+        long r = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            r--;
+        }
+        return r;
+    }
+
+    private static void appendTwoDigits(StringBuilder sb,int value) {
+        sb.append((char)('0' + value / 10)).append((char)('0' + value % 10));
+    }
+
+    /**
+     * 解析月份的英文缩写，返回0到11，无法解析返回-1
+     */
+    private static int parseMonth(String s,int pos) {
+        if (pos + 3 > s.length()) {
+            return -1;
+        }
+        for (int i = 0 ; i < MONTHS.length;i ++) {
+            if (s.regionMatches(true,pos,MONTHS[i],0,3)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 解析指令中的秒数，支持带引号的值，无法解析返回0
+     */
+    private static long parseSeconds(String s,int start,int end) {
+        start = skipWhitespace(s,start,end);
+        if (start < end && s.charAt(start) == '"') {
+            start++;
+        }
+        long result = 0;
+        for (int i = start ; i < end;i ++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    /**
+     * 解析十进制整数，无法解析返回-1
+     */
+    private static int parseInt(String s,int start,int end) {
+        if (start >= end || end > s.length()) {
+            return -1;
+        }
+        int result = 0;
+        for (int i = start ; i < end;i ++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static int digitsEnd(String s,int start,int end) {
+        int i = start;
+        while (i < end && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipWhitespace(String s,int start,int end) {
+        while (start < end && s.charAt(start) == ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimWhitespace(String s,int start,int end) {
+        while (end > start && s.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * [start,end)之间的字符和指令名称相同，不区分大小写
+     */
+    private static boolean matches(String s,int start,int end,String directive) {
+        return end - start == directive.length()
+                && s.regionMatches(true,start,directive,0,directive.length());
+    }
+}
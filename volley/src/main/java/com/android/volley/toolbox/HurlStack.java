@@ -2,20 +2,369 @@ package com.android.volley.toolbox;
 
 import com.android.volley.AuthFailureError;
 import com.android.volley.Request;
+import com.android.volley.Request.Method;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
 /**
+ * 基于{@link HttpURLConnection}的HTTP栈。
+ *
+ * HttpURLConnection自己维护一个保持连接(keep-alive)的连接池，只要响应体被完整读取并关闭，
+ * 连接就会回到连接池中被下一个请求复用。所以这里从不调用{@link HttpURLConnection#disconnect()}，
+ * 关闭响应流时把剩下的少量数据读完，没有响应体的响应立即关闭响应流。
+ *
  * 作者：李富 on 2015/10/21.
  * 邮箱：lifuzz@163.com
  */
 public class HurlStack implements HttpStack {
 
+    private static final String HEADER_CONTENT_TYPE = "Content-Type";
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+    private static final String ENCODING_GZIP = "gzip";
+
+    /**
+     * 压缩消息体时使用的缓冲池大小
+     */
+    private static final int COMPRESSION_POOL_SIZE = 16 * 1024;
+
+    /**
+     * 支持的压缩格式，由{@link BasicNetwork}解压
+     */
+    private static final String SUPPORTED_ENCODINGS = "gzip, deflate";
+
+    /**
+     * 关闭响应流时最多读掉的剩余字节数，超过这个数量则放弃这个连接
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    /**
+     * 用于在发送请求之前修改URL
+     */
+    public interface UrlRewriter {
+
+        /**
+         * 返回修改以后的URL，返回null则不发送这个请求
+         */
+        public String rewriteUrl(String originalUrl);
+    }
+
+    private final UrlRewriter mUrlRewriter;
+
+    private final SSLSocketFactory mSslSocketFactory;
+
+    /**
+     * 消息体不小于这个字节数时压缩发送，-1表示不压缩
+     */
+    private int mCompressionThreshold = -1;
+
+    /**
+     * 压缩消息体时借用输出缓冲区的缓冲池
+     */
+    private ByteArrayPool mCompressionPool;
+
+    public HurlStack() {
+        this(null);
+    }
+
+    /**
+     * @param urlRewriter 修改URL的接口
+     */
+    public HurlStack(UrlRewriter urlRewriter) {
+        this(urlRewriter,null);
+    }
+
+    /**
+     * @param urlRewriter 修改URL的接口
+     * @param sslSocketFactory HTTPS连接使用的SSL套接字工厂
+     */
+    public HurlStack(UrlRewriter urlRewriter,SSLSocketFactory sslSocketFactory) {
+        mUrlRewriter = urlRewriter;
+        mSslSocketFactory = sslSocketFactory;
+    }
+
+    /**
+     * 开启消息体压缩：POST和PUT请求的消息体不小于thresholdBytes时，用gzip压缩以后分块发送，
+     * 并加上Content-Encoding: gzip。服务器需要支持压缩的请求，所以默认不开启
+     * @param thresholdBytes 压缩的最小字节数，-1表示不压缩
+     */
+    public void setRequestCompressionThreshold(int thresholdBytes) {
+        mCompressionThreshold = thresholdBytes;
+        if (thresholdBytes >= 0 && mCompressionPool == null) {
+            mCompressionPool = new ThreadLocalByteArrayPool(COMPRESSION_POOL_SIZE);
+        }
+    }
+
     @Override
-    public HttpResponse performRequest(Request<?> request, Map<String, String> additionalHeaders) throws IOException, AuthFailureError {
-        return null;
+    public HttpResponse performRequest(Request<?> request, Map<String, String> additionalHeaders)
+            throws IOException, AuthFailureError {
+
+        String url = request.getUrl();
+
+        HashMap<String,String> map = new HashMap<>();
+        map.putAll(request.getHeaders());
+        map.putAll(additionalHeaders);
+
+        //请求没有指定时，声明支持压缩的响应。自己设置了这个头以后，
+        //HttpURLConnection不再自动解压，由BasicNetwork解压到缓冲池的缓冲区中
+        if (!containsHeader(map,HEADER_ACCEPT_ENCODING)) {
+            map.put(HEADER_ACCEPT_ENCODING,SUPPORTED_ENCODINGS);
+        }
+
+        if (mUrlRewriter != null) {
+            String rewritten = mUrlRewriter.rewriteUrl(url);
+            if (rewritten == null) {
+                throw new IOException("URL blocked by rewriter: " + url);
+            }
+            url = rewritten;
+        }
+
+        URL parsedUrl = new URL(url);
+        HttpURLConnection connection = openConnection(parsedUrl,request);
+
+        for (Map.Entry<String,String> header : map.entrySet()) {
+            connection.addRequestProperty(header.getKey(),header.getValue());
+        }
+
+        //请求自己设置了Content-Encoding时不再压缩
+        boolean mayCompress = mCompressionThreshold >= 0
+                && !containsHeader(map,HEADER_CONTENT_ENCODING);
+
+        setConnectionParametersForRequest(connection,request,mayCompress);
+
+        ProtocolVersion protocolVersion = new ProtocolVersion("HTTP",1,1);
+
+        int responseCode = connection.getResponseCode();
+        if (responseCode == -1) {
+            //连接没有返回有效的响应码
+            throw new IOException("Could not retrieve response code from HttpUrlConnection.");
+        }
+
+        StatusLine responseStatus = new BasicStatusLine(protocolVersion,responseCode,
+                connection.getResponseMessage());
+        BasicHttpResponse response = new BasicHttpResponse(responseStatus);
+
+        if (hasResponseBody(responseCode)) {
+            response.setEntity(entityFromConnection(connection));
+        } else {
+            //没有响应体，立即关闭响应流，让连接回到连接池
+            closeQuietly(responseStream(connection));
+        }
+
+        for (Map.Entry<String,List<String>> header : connection.getHeaderFields().entrySet()) {
+            if (header.getKey() != null && !header.getValue().isEmpty()) {
+                response.addHeader(new BasicHeader(header.getKey(),header.getValue().get(0)));
+            }
+        }
+
+        return response;
+    }
+
+    /**
+     * 判断响应是否有响应体
+     */
+    private static boolean hasResponseBody(int responseCode) {
+        return !(HttpStatus.SC_CONTINUE <= responseCode && responseCode < HttpStatus.SC_OK)
+                && responseCode != HttpStatus.SC_NO_CONTENT
+                && responseCode != HttpStatus.SC_NOT_MODIFIED;
+    }
+
+    /**
+     * 用连接的响应流创建{@link HttpEntity}
+     */
+    private static HttpEntity entityFromConnection(HttpURLConnection connection) {
+        BasicHttpEntity entity = new BasicHttpEntity();
+        InputStream inputStream = responseStream(connection);
+        entity.setContent(inputStream == null ? null : new DrainingInputStream(inputStream));
+        entity.setContentLength(connection.getContentLength());
+        entity.setContentEncoding(connection.getContentEncoding());
+        entity.setContentType(connection.getContentType());
+        return entity;
+    }
+
+    /**
+     * 获取响应流，错误的响应码从错误流中读取
+     */
+    private static InputStream responseStream(HttpURLConnection connection) {
+        try {
+            return connection.getInputStream();
+        } catch (IOException ioe) {
+            return connection.getErrorStream();
+        }
+    }
+
+    /**
+     * 创建一个连接，子类可以重写这个方法使用其他的连接实现
+     */
+    protected HttpURLConnection createConnection(URL url) throws IOException {
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    /**
+     * 打开一个连接，按请求的超时时间设置连接和读取的超时时间
+     */
+    private HttpURLConnection openConnection(URL url,Request<?> request) throws IOException {
+
+        HttpURLConnection connection = createConnection(url);
+
+        int timeoutMs = request.getTimeoutMs();
+        connection.setConnectTimeout(timeoutMs);
+        connection.setReadTimeout(timeoutMs);
+        connection.setUseCaches(false);
+        connection.setDoInput(true);
+
+        if ("https".equals(url.getProtocol()) && mSslSocketFactory != null) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(mSslSocketFactory);
+        }
+
+        return connection;
+    }
+
+    @SuppressWarnings("deprecation")
+    void setConnectionParametersForRequest(HttpURLConnection connection,
+                                           Request<?> request,boolean mayCompress)
+            throws IOException,AuthFailureError {
+
+        switch (request.getMethod()) {
+
+            case Method.DEPRECATED_GET_OR_POST:
+                //有POST消息体则是POST请求，否则是GET请求
+                byte[] postBody = request.getPostBody();
+                if (postBody != null) {
+                    connection.setRequestMethod("POST");
+                    writeBody(connection,request.getPostBodyContentType(),postBody,mayCompress);
+                }
+                break;
+
+            case Method.GET:
+                connection.setRequestMethod("GET");
+                break;
+
+            case Method.DELETE:
+                connection.setRequestMethod("DELETE");
+                break;
+
+            case Method.POST:
+                connection.setRequestMethod("POST");
+                addBodyIfExists(connection,request,mayCompress);
+                break;
+
+            case Method.PUT:
+                connection.setRequestMethod("PUT");
+                addBodyIfExists(connection,request,mayCompress);
+                break;
+
+            default:
+                throw new IllegalStateException("Unknown method type.");
+        }
+    }
+
+    private void addBodyIfExists(HttpURLConnection connection,Request<?> request,
+                                 boolean mayCompress)
+            throws IOException,AuthFailureError {
+        byte[] body = request.getBody();
+        if (body != null) {
+            writeBody(connection,request.getBodyContentType(),body,mayCompress);
+        }
+    }
+
+    /**
+     * 写入请求的消息体，使用固定长度的流模式，HttpURLConnection不会再缓存一份消息体。
+     * 需要压缩的消息体压缩以后的长度未知，使用分块的流模式边压缩边发送
+     */
+    private void writeBody(HttpURLConnection connection,String contentType,byte[] body,
+                           boolean mayCompress)
+            throws IOException {
+        connection.setDoOutput(true);
+        connection.addRequestProperty(HEADER_CONTENT_TYPE,contentType);
+
+        OutputStream out;
+        if (mayCompress && body.length >= mCompressionThreshold) {
+            connection.addRequestProperty(HEADER_CONTENT_ENCODING,ENCODING_GZIP);
+            connection.setChunkedStreamingMode(0);
+            out = new GzipBodyOutputStream(connection.getOutputStream(),mCompressionPool);
+        } else {
+            connection.setFixedLengthStreamingMode(body.length);
+            out = connection.getOutputStream();
+        }
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static boolean containsHeader(Map<String,String> headers,String name) {
+        for (String key : headers.keySet()) {
+            if (name.equalsIgnoreCase(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * 关闭时把剩余的少量数据读完的输入流，保证连接可以回到连接池中复用
+     */
+    private static class DrainingInputStream extends FilterInputStream {
+
+        DrainingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                long drained = 0;
+                while (drained < MAX_DRAIN_BYTES) {
+                    long skipped = in.skip(MAX_DRAIN_BYTES - drained);
+                    if (skipped <= 0) {
+                        //skip可能返回0，用read确认是否已经到了结尾
+                        if (in.read() == -1) {
+                            break;
+                        }
+                        skipped = 1;
+                    }
+                    drained += skipped;
+                }
+            } catch (IOException ignored) {
+                //连接已经不可用，直接关闭
+            } finally {
+                super.close();
+            }
+        }
     }
 }
@@ -0,0 +1,328 @@
+package com.android.volley.toolbox;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ *
+ * 解压gzip和deflate响应体的输入流。
+ *
+ * 和{@link java.util.zip.GZIPInputStream}不同，这里的{@link Inflater}和{@link CRC32}在每个线程
+ * 中复用（使用期间从线程中取出），输入缓冲区从{@link ByteArrayPool}借用，关闭时全部归还，解压一个响应不需要分配
+ * 新的解压器和缓冲区。
+ *
+ * 作者：李富 on 2015/11/19.
+ * 邮箱：lifuzz@163.com
+ */
+class InflatingInputStream extends FilterInputStream {
+
+    private static final int INPUT_BUFFER_SIZE = 4096;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    /**
+     * 每个线程复用的解压器，使用时从线程中取出，关闭时放回
+     */
+    private static final ThreadLocal<Inflater> RAW_INFLATERS = new ThreadLocal<>();
+
+    private static final ThreadLocal<Inflater> ZLIB_INFLATERS = new ThreadLocal<>();
+
+    /**
+     * 每个线程复用的CRC32，和解压器一样使用时取出，同一线程上同时打开的两个流不会共用
+     */
+    private static final ThreadLocal<CRC32> CRCS = new ThreadLocal<>();
+
+    private final ByteArrayPool mPool;
+
+    private final boolean mGzip;
+
+    private byte[] mInput;
+
+    private int mInputLength = 0;
+
+    private Inflater mInflater;
+
+    private boolean mRawInflater;
+
+    private CRC32 mCrc;
+
+    private boolean mStarted = false;
+
+    private boolean mEof = false;
+
+    private boolean mClosed = false;
+
+    private final byte[] mSingleByte = new byte[1];
+
+    /**
+     * @param in 压缩的响应流
+     * @param gzip true为gzip格式，false为deflate格式
+     * @param pool 借用输入缓冲区的缓冲池
+     */
+    InflatingInputStream(InputStream in,boolean gzip,ByteArrayPool pool) {
+        super(in);
+        mGzip = gzip;
+        mPool = pool;
+        mInput = pool.getBuf(INPUT_BUFFER_SIZE);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int count = read(mSingleByte,0,1);
+        return count == -1 ? -1 : mSingleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer,int offset,int count) throws IOException {
+
+        if (mClosed) {
+            throw new IOException("Stream closed");
+        }
+
+        if (mEof) {
+            return -1;
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        if (!mStarted) {
+            start();
+        }
+
+        try {
+
+            while (true) {
+
+                int inflated = mInflater.inflate(buffer,offset,count);
+                if (inflated > 0) {
+                    if (mCrc != null) {
+                        mCrc.update(buffer,offset,inflated);
+                    }
+                    return inflated;
+                }
+
+                if (mInflater.finished()) {
+                    if (mGzip) {
+                        readTrailer();
+                    }
+                    mEof = true;
+                    return -1;
+                }
+
+                if (mInflater.needsDictionary()) {
+                    throw new IOException("Compressed stream needs a preset dictionary");
+                }
+
+                if (mInflater.needsInput()) {
+                    fill();
+                }
+            }
+
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed stream: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        byte[] scratch = mPool.getBuf(INPUT_BUFFER_SIZE);
+        try {
+            long skipped = 0;
+            while (skipped < count) {
+                int read = read(scratch,0,(int) Math.min(scratch.length,count - skipped));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        } finally {
+            mPool.returnBuf(scratch);
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        return mEof ? 0 : 1;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * 关闭流，把解压器和缓冲区归还
+     */
+    @Override
+    public void close() throws IOException {
+
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+
+        if (mInflater != null) {
+            mInflater.reset();
+            (mRawInflater ? RAW_INFLATERS : ZLIB_INFLATERS).set(mInflater);
+            mInflater = null;
+        }
+
+        if (mCrc != null) {
+            mCrc.reset();
+            CRCS.set(mCrc);
+            mCrc = null;
+        }
+
+        mPool.returnBuf(mInput);
+        mInput = null;
+
+        super.close();
+    }
+
+    /**
+     * 读取格式头，选择解压器
+     */
+    private void start() throws IOException {
+
+        mStarted = true;
+
+        if (mGzip) {
+            readGzipHeader();
+            mCrc = CRCS.get();
+            if (mCrc == null) {
+                mCrc = new CRC32();
+            } else {
+                CRCS.set(null);
+            }
+            borrowInflater(true);
+            return;
+        }
+
+        //deflate通常带zlib头，也有服务器发送不带头的原始deflate数据
+        fill();
+        boolean zlib = mInputLength >= 2 && (mInput[0] & 0x0f) == 8
+                && (((mInput[0] & 0xff) << 8) | (mInput[1] & 0xff)) % 31 == 0;
+        borrowInflater(!zlib);
+        mInflater.setInput(mInput,0,mInputLength);
+    }
+
+    private void borrowInflater(boolean raw) {
+        ThreadLocal<Inflater> slot = raw ? RAW_INFLATERS : ZLIB_INFLATERS;
+        Inflater inflater = slot.get();
+        if (inflater == null) {
+            inflater = new Inflater(raw);
+        } else {
+            slot.set(null);
+        }
+        mInflater = inflater;
+        mRawInflater = raw;
+    }
+
+    /**
+     * 从响应流中读取一块压缩数据
+     */
+    private void fill() throws IOException {
+        mInputLength = in.read(mInput,0,mInput.length);
+        if (mInputLength == -1) {
+            throw new EOFException("Unexpected end of compressed stream");
+        }
+        if (mInflater != null) {
+            mInflater.setInput(mInput,0,mInputLength);
+        }
+    }
+
+    /**
+     * 读取并跳过gzip的文件头
+     */
+    private void readGzipHeader() throws IOException {
+
+        if (readUShort() != GZIP_MAGIC) {
+            throw new IOException("Not in GZIP format");
+        }
+
+        if (readUByte() != 8) {
+            throw new IOException("Unsupported compression method");
+        }
+
+        int flags = readUByte();
+
+        //修改时间(4)、额外标志(1)、操作系统(1)
+        skipBytes(6);
+
+        if ((flags & FEXTRA) == FEXTRA) {
+            skipBytes(readUShort());
+        }
+
+        if ((flags & FNAME) == FNAME) {
+            while (readUByte() != 0) {
+            }
+        }
+
+        if ((flags & FCOMMENT) == FCOMMENT) {
+            while (readUByte() != 0) {
+            }
+        }
+
+        if ((flags & FHCRC) == FHCRC) {
+            skipBytes(2);
+        }
+    }
+
+    /**
+     * 读取gzip的文件尾，校验CRC32和解压以后的长度
+     */
+    private void readTrailer() throws IOException {
+
+        byte[] trailer = new byte[8];
+        int remaining = mInflater.getRemaining();
+        int fromInput = Math.min(remaining,8);
+        System.arraycopy(mInput,mInputLength - remaining,trailer,0,fromInput);
+
+        for (int i = fromInput ; i < 8;i ++) {
+            trailer[i] = (byte) readUByte();
+        }
+
+        long crc = readUInt(trailer,0);
+        long size = readUInt(trailer,4);
+
+        if (crc != mCrc.getValue() || size != (mInflater.getBytesWritten() & 0xffffffffL)) {
+            throw new IOException("Corrupt GZIP trailer");
+        }
+    }
+
+    private static long readUInt(byte[] b,int offset) {
+        return ((b[offset] & 0xffL)) | ((b[offset + 1] & 0xffL) << 8)
+                | ((b[offset + 2] & 0xffL) << 16) | ((b[offset + 3] & 0xffL) << 24);
+    }
+
+    private int readUByte() throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Unexpected end of GZIP header");
+        }
+        return b;
+    }
+
+    private int readUShort() throws IOException {
+        return readUByte() | (readUByte() << 8);
+    }
+
+    private void skipBytes(int count) throws IOException {
+        for (int i = 0 ; i < count;i ++) {
+            readUByte();
+        }
+    }
+}
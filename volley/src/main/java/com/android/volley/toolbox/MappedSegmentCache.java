@@ -0,0 +1,910 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.Cache;
+import com.android.volley.Platform;
+import com.android.volley.VolleyLog;
+import com.android.volley.toolbox.DiskBasedCache.CacheHeader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ *
+ * 把缓存条目追加写入内存映射(mmap)的大段文件中的缓存实现，适合大量的小响应。
+ *
+ * 内存中保存 key -> (段文件, 偏移, 长度) 的索引，读取缓存时直接从映射的内存中复制数据，
+ * 不需要打开和读取文件。删除和覆盖的条目会在段文件中留下空洞，当一个段文件的有效数据
+ * 低于一半时，在后台线程中把有效数据复制到新的段文件，并替换旧的段文件。超过最大字节数时，
+ * 删除最旧的段文件。
+ *
+ * 写入时不调用{@link MappedByteBuffer#force()}，映射内存由系统在后台写回文件。每条记录带有
+ * 长度和CRC32，启动时扫描到不完整或者损坏的记录就停止，这个段文件后面的记录被丢弃。
+ * 一个段文件写满（封存）时和调用{@link #close()}时才写回磁盘，封存的段文件不会再写入。
+ *
+ * 作者：李富 on 2015/11/10.
+ * 邮箱：lifuzz@163.com
+ */
+public class MappedSegmentCache implements Cache {
+
+    /**
+     * 默认段文件的大小
+     */
+    private static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    /**
+     * 默认缓存的最大字节数
+     */
+    private static final int DEFAULT_DISK_USAGE_BYTES = 8 * 1024 * 1024;
+
+    /**
+     * 段文件中有效数据低于这个比例时进行压缩
+     */
+    private static final float COMPACT_THRESHOLD = 0.5f;
+
+    /**
+     * 每条记录开头的魔数，同时表示记录的格式
+     */
+    private static final int RECORD_MAGIC = 0x20151111;
+
+    /**
+     * 记录的固定头长度：魔数、CRC32、类型、头信息长度、数据长度。
+     * CRC32从类型开始，覆盖记录剩下的全部内容
+     */
+    private static final int RECORD_HEADER_SIZE = 4 + 4 + 1 + 4 + 4;
+
+    /**
+     * CRC32覆盖的内容在记录中的偏移
+     */
+    private static final int RECORD_CHECKED_OFFSET = 8;
+
+    private static final byte TYPE_ENTRY = 0;
+
+    private static final byte TYPE_TOMBSTONE = 1;
+
+    private static final byte[] EMPTY_DATA = new byte[0];
+
+    /**
+     * 段文件名的前缀
+     */
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    /**
+     * 压缩时正在写入的段文件的后缀，写完以后替换旧的段文件
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * 启动时计算CRC32使用的缓冲区大小
+     */
+    private static final int SCAN_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * 缓存的根目录
+     */
+    private final File mRootDirectory;
+
+    /**
+     * 缓存的最大字节数
+     */
+    private final long mMaxCacheSizeInBytes;
+
+    /**
+     * 段文件的大小
+     */
+    private final int mSegmentSize;
+
+    /**
+     * 缓存的索引
+     */
+    private final Map<String,Location> mIndex = new HashMap<>();
+
+    /**
+     * 所有的段文件，按创建的顺序排列，最后一个是正在写入的段文件
+     */
+    private final LinkedList<Segment> mSegments = new LinkedList<>();
+
+    /**
+     * 下一个段文件的编号
+     */
+    private long mNextSegmentId = 0;
+
+    /**
+     * 是否已经关闭
+     */
+    private boolean mClosed = false;
+
+    /**
+     * 压缩段文件的后台线程
+     */
+    private final ExecutorService mCompactor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r,"volley-segment-compactor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * @param rootDirectory 缓存的根目录
+     * @param maxCacheSizeInBytes 缓存的最大字节数
+     * @param segmentSize 段文件的大小
+     */
+    public MappedSegmentCache(File rootDirectory,long maxCacheSizeInBytes,int segmentSize) {
+        mRootDirectory = rootDirectory;
+        mMaxCacheSizeInBytes = maxCacheSizeInBytes;
+        mSegmentSize = segmentSize;
+    }
+
+    /**
+     * 使用默认段文件大小（1MB）和默认最大字节数（8MB）创建缓存
+     * @param rootDirectory 缓存的根目录
+     */
+    public MappedSegmentCache(File rootDirectory) {
+        this(rootDirectory,DEFAULT_DISK_USAGE_BYTES,DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * 获取指定key的缓存数据，数据从映射的内存中复制，不需要读取文件
+     */
+    @Override
+    public synchronized Entry get(String key) {
+
+        Location location = mIndex.get(key);
+        if (location == null) {
+            return null;
+        }
+
+        return location.header.toCacheEntry(readData(location));
+    }
+
+    /**
+     * 获取指定key的缓存数据的只读切片，不复制数据，如果没有则返回null。
+     * 段文件被压缩或者删除以后，已经返回的切片仍然可以读取
+     */
+    public synchronized ByteBuffer getData(String key) {
+
+        Location location = mIndex.get(key);
+        if (location == null) {
+            return null;
+        }
+
+        ByteBuffer buffer = location.segment.buffer.asReadOnlyBuffer();
+        buffer.position(location.dataOffset);
+        buffer.limit(location.dataOffset + location.dataLength);
+        return buffer.slice();
+    }
+
+    /**
+     * 添加或更新缓存，追加写入正在写入的段文件
+     */
+    @Override
+    public synchronized void put(String key,Entry entry) {
+
+        if (mClosed) {
+            return;
+        }
+
+        byte[] header = encodeHeader(key,entry);
+        if (header == null) {
+            return;
+        }
+
+        int recordLength = RECORD_HEADER_SIZE + header.length + entry.data.length;
+
+        //太大的条目不缓存，避免一个条目把其他条目都挤出去
+        if (recordLength > mMaxCacheSizeInBytes / 2) {
+            VolleyLog.d("Entry too large for segment cache, key=%s, size=%d",key,recordLength);
+            remove(key);
+            return;
+        }
+
+        try {
+
+            Segment segment = segmentForAppend(recordLength);
+            int dataOffset = appendRecord(segment,TYPE_ENTRY,header,entry.data);
+
+            CacheHeader cacheHeader = new CacheHeader(key,entry);
+            cacheHeader.size = entry.data.length;
+
+            Location location = new Location(segment,dataOffset,entry.data.length,recordLength,
+                    cacheHeader);
+            replaceLocation(key,location);
+
+        } catch (IOException e) {
+            VolleyLog.e(e,"Failed to append cache entry for key=%s",key);
+            removeLocation(key);
+        }
+    }
+
+    /**
+     * 映射所有的段文件，扫描记录，重建索引。已经存在的段文件都作为封存的段文件，
+     * 新的条目写入新的段文件，不会覆盖上次没有写完的记录。
+     * 由{@link com.android.volley.CacheDispatcher}在工作线程上调用
+     */
+    @Override
+    public synchronized void initialize() {
+
+        if (!mRootDirectory.exists()) {
+            if (!mRootDirectory.mkdirs()) {
+                VolleyLog.e("Unable to create cache dir %s",mRootDirectory.getAbsolutePath());
+            }
+            return;
+        }
+
+        File[] files = mRootDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long startTime = Platform.get().elapsedRealtime();
+
+        //按段文件的编号排序，后写入的记录覆盖先写入的记录
+        List<Long> ids = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            long id = parseSegmentId(name);
+            if (id >= 0) {
+                ids.add(id);
+            } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(TEMP_SUFFIX)) {
+                //没有完成的压缩，旧的段文件仍然完整
+                file.delete();
+            }
+        }
+        Long[] sortedIds = ids.toArray(new Long[ids.size()]);
+        Arrays.sort(sortedIds);
+
+        for (Long id : sortedIds) {
+            File file = segmentFile(id);
+            Segment segment = null;
+            try {
+                segment = openSegment(id,file,(int)file.length());
+                segment.sealed = true;
+                mSegments.add(segment);
+                scanSegment(segment);
+            } catch (IOException e) {
+                VolleyLog.d("Dropping unreadable segment %s: %s",file.getName(),e.toString());
+                if (segment != null) {
+                    evictSegment(segment);
+                } else {
+                    file.delete();
+                }
+            }
+            mNextSegmentId = id + 1;
+        }
+
+        VolleyLog.d("Segment cache initialized: %d entries, %d segments in %d ms",mIndex.size(),
+                mSegments.size(),Platform.get().elapsedRealtime() - startTime);
+    }
+
+    /**
+     * 使指定key的缓存过期，重新写入一条修改了过期时间的记录
+     */
+    @Override
+    public synchronized void invalidate(String key,boolean fullExpire) {
+        Entry entry = get(key);
+        if (entry != null) {
+            entry.softTtl = 0;
+            if (fullExpire) {
+                entry.ttl = 0;
+            }
+            put(key,entry);
+        }
+    }
+
+    /**
+     * 删除指定key的缓存，写入一条删除记录，保证重新启动以后不会恢复
+     */
+    @Override
+    public synchronized void remove(String key) {
+
+        if (mClosed || !mIndex.containsKey(key)) {
+            return;
+        }
+
+        removeLocation(key);
+
+        try {
+            byte[] keyBytes = key.getBytes("UTF-8");
+            Segment segment = segmentForAppend(RECORD_HEADER_SIZE + keyBytes.length);
+            appendRecord(segment,TYPE_TOMBSTONE,keyBytes,EMPTY_DATA);
+            segment.tombstones.add(key);
+        } catch (IOException e) {
+            VolleyLog.e(e,"Failed to append tombstone for key=%s",key);
+        }
+    }
+
+    /**
+     * 清空缓存，删除所有段文件
+     */
+    @Override
+    public synchronized void clear() {
+        for (Segment segment : mSegments) {
+            segment.close();
+            segment.file.delete();
+        }
+        mSegments.clear();
+        mIndex.clear();
+        VolleyLog.d("Cache cleared.");
+    }
+
+    /**
+     * 把正在写入的段文件写回磁盘，关闭所有的段文件并停止压缩。
+     * 关闭以后写入被忽略，已经返回的数据切片仍然可以读取
+     */
+    public synchronized void close() {
+
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+
+        mCompactor.shutdown();
+
+        for (Segment segment : mSegments) {
+            segment.seal();
+            segment.close();
+        }
+    }
+
+    /**
+     * 获取一个有足够空间的段文件，没有则封存正在写入的段文件并创建新的段文件，
+     * 必要时删除最旧的段文件
+     * @param recordLength 需要写入的字节数
+     */
+    private Segment segmentForAppend(int recordLength) throws IOException {
+
+        Segment active = mSegments.isEmpty() ? null : mSegments.getLast();
+        if (active != null && !active.sealed && active.remaining() >= recordLength) {
+            return active;
+        }
+
+        //上一个段文件不会再写入，写回磁盘以后新的记录才写入新的段文件
+        if (active != null) {
+            active.seal();
+        }
+
+        int size = Math.max(mSegmentSize,recordLength);
+
+        //超过最大字节数时，删除最旧的段文件
+        while (!mSegments.isEmpty() && totalSegmentBytes() + size > mMaxCacheSizeInBytes) {
+            evictSegment(mSegments.getFirst());
+        }
+
+        long id = mNextSegmentId++;
+        Segment segment = openSegment(id,segmentFile(id),size);
+        mSegments.add(segment);
+
+        //上一个段文件不会再写入，检查是否需要压缩
+        if (active != null) {
+            maybeScheduleCompaction(active);
+        }
+
+        return segment;
+    }
+
+    /**
+     * 把一条记录写入段文件的映射内存中
+     * @return 数据在段文件中的偏移
+     */
+    private static int appendRecord(Segment segment,byte type,byte[] header,byte[] data) {
+
+        int start = segment.writePosition;
+        ByteBuffer buffer = segment.buffer.duplicate();
+
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        updateInt(crc,header.length);
+        updateInt(crc,data.length);
+        crc.update(header,0,header.length);
+        crc.update(data,0,data.length);
+
+        buffer.position(start);
+        buffer.putInt(RECORD_MAGIC);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(type);
+        buffer.putInt(header.length);
+        buffer.putInt(data.length);
+        buffer.put(header);
+        int dataOffset = buffer.position();
+        buffer.put(data);
+
+        segment.writePosition = buffer.position();
+
+        return dataOffset;
+    }
+
+    /**
+     * 按大端序把一个int加入CRC32，和{@link ByteBuffer#putInt(int)}写入的字节相同
+     */
+    private static void updateInt(CRC32 crc,int value) {
+        crc.update(value >>> 24);
+        crc.update(value >>> 16);
+        crc.update(value >>> 8);
+        crc.update(value);
+    }
+
+    /**
+     * 扫描段文件中的记录，更新索引。遇到长度不对或者CRC32不一致的记录时停止，
+     * 系统崩溃时没有写回文件的记录不会被读出
+     */
+    private void scanSegment(Segment segment) throws IOException {
+
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int limit = buffer.capacity();
+        int position = 0;
+        byte[] scratch = new byte[SCAN_BUFFER_SIZE];
+
+        while (position + RECORD_HEADER_SIZE <= limit) {
+
+            if (buffer.getInt(position) != RECORD_MAGIC) {
+                break;
+            }
+
+            int checksum = buffer.getInt(position + 4);
+            byte type = buffer.get(position + 8);
+            int headerLength = buffer.getInt(position + 9);
+            int dataLength = buffer.getInt(position + 13);
+
+            if (headerLength < 0 || dataLength < 0
+                    || (long) headerLength + dataLength > limit - position - RECORD_HEADER_SIZE) {
+                break;
+            }
+
+            int recordLength = RECORD_HEADER_SIZE + headerLength + dataLength;
+
+            if (checksum(buffer,position + RECORD_CHECKED_OFFSET,position + recordLength,scratch)
+                    != checksum) {
+                VolleyLog.d("Torn record in segment %s at %d",segment.file.getName(),position);
+                break;
+            }
+
+            int headerOffset = position + RECORD_HEADER_SIZE;
+
+            if (type == TYPE_TOMBSTONE) {
+                byte[] keyBytes = new byte[headerLength];
+                buffer.position(headerOffset);
+                buffer.get(keyBytes);
+                String key = new String(keyBytes,"UTF-8");
+                removeLocation(key);
+                segment.tombstones.add(key);
+            } else {
+                buffer.position(headerOffset);
+                CacheHeader header = CacheHeader.readHeader(
+                        new ByteBufferInputStream(buffer,headerOffset + headerLength));
+                header.size = dataLength;
+                replaceLocation(header.key,new Location(segment,headerOffset + headerLength,
+                        dataLength,recordLength,header));
+            }
+
+            position += recordLength;
+        }
+
+        segment.writePosition = position;
+    }
+
+    /**
+     * 计算映射内存中[start, end)的CRC32
+     */
+    private static int checksum(ByteBuffer buffer,int start,int end,byte[] scratch) {
+
+        CRC32 crc = new CRC32();
+        ByteBuffer source = buffer.duplicate();
+        source.position(start);
+
+        int remaining = end - start;
+        while (remaining > 0) {
+            int count = Math.min(remaining,scratch.length);
+            source.get(scratch,0,count);
+            crc.update(scratch,0,count);
+            remaining -= count;
+        }
+
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 如果段文件中的有效数据太少，在后台线程中压缩
+     */
+    private void maybeScheduleCompaction(final Segment segment) {
+
+        if (segment.compactionScheduled || mClosed || mSegments.isEmpty()
+                || segment == mSegments.getLast()) {
+            return;
+        }
+
+        if (segment.liveBytes >= segment.writePosition * COMPACT_THRESHOLD) {
+            return;
+        }
+
+        segment.compactionScheduled = true;
+        mCompactor.execute(new Runnable() {
+            @Override
+            public void run() {
+                compact(segment);
+            }
+        });
+    }
+
+    /**
+     * 把段文件中的有效条目复制到一个新的段文件中，新的段文件使用同样的编号，替换旧的段文件。
+     *
+     * 只在取得有效条目和替换段文件时加锁，复制时读取和写入不需要等待。复制期间被覆盖或者删除的
+     * 条目不会更新到索引中，新的段文件排在原来的位置，重新启动时它们仍然被更新的记录覆盖
+     */
+    private void compact(Segment segment) {
+
+        long startTime = Platform.get().elapsedRealtime();
+
+        List<String> keys = new ArrayList<>();
+        List<Location> locations = new ArrayList<>();
+        List<String> tombstones = new ArrayList<>();
+
+        synchronized (this) {
+
+            //段文件可能已经被删除
+            if (mClosed || !mSegments.contains(segment)) {
+                return;
+            }
+
+            for (Map.Entry<String,Location> entry : mIndex.entrySet()) {
+                if (entry.getValue().segment == segment) {
+                    keys.add(entry.getKey());
+                    locations.add(entry.getValue());
+                }
+            }
+
+            //更旧的段文件中可能还有被删除的条目，删除记录需要保留
+            if (segment != mSegments.getFirst()) {
+                for (String key : segment.tombstones) {
+                    if (!mIndex.containsKey(key)) {
+                        tombstones.add(key);
+                    }
+                }
+            }
+        }
+
+        //封存的段文件不会再改变，复制时不需要加锁
+        File tempFile = new File(mRootDirectory,segment.file.getName() + TEMP_SUFFIX);
+        Segment compacted = null;
+        Location[] moved = new Location[locations.size()];
+
+        try {
+
+            List<byte[]> tombstoneKeys = new ArrayList<>(tombstones.size());
+            int size = 0;
+            for (String key : tombstones) {
+                byte[] keyBytes = key.getBytes("UTF-8");
+                tombstoneKeys.add(keyBytes);
+                size += RECORD_HEADER_SIZE + keyBytes.length;
+            }
+            for (Location location : locations) {
+                size += location.recordLength;
+            }
+
+            if (size > 0) {
+
+                tempFile.delete();
+                compacted = openSegment(segment.id,tempFile,size);
+
+                for (int i = 0; i < tombstones.size(); i++) {
+                    appendRecord(compacted,TYPE_TOMBSTONE,tombstoneKeys.get(i),EMPTY_DATA);
+                    compacted.tombstones.add(tombstones.get(i));
+                }
+
+                for (int i = 0; i < locations.size(); i++) {
+                    Location location = locations.get(i);
+                    int dataOffset = appendRecord(compacted,TYPE_ENTRY,readHeader(location),
+                            readData(location));
+                    moved[i] = new Location(compacted,dataOffset,location.dataLength,
+                            location.recordLength,location.header);
+                }
+
+                //替换旧的段文件之前写回磁盘，保证重新启动时删除记录不会丢失
+                compacted.seal();
+            }
+
+        } catch (IOException e) {
+            VolleyLog.e(e,"Failed to compact segment %s",segment.file.getName());
+            discardSegment(compacted,tempFile);
+            return;
+        }
+
+        synchronized (this) {
+
+            if (mClosed || !mSegments.contains(segment)) {
+                discardSegment(compacted,tempFile);
+                return;
+            }
+
+            if (compacted == null) {
+                evictSegment(segment);
+                return;
+            }
+
+            if (!tempFile.renameTo(segment.file)) {
+                VolleyLog.e("Could not rename %s",tempFile.getAbsolutePath());
+                discardSegment(compacted,tempFile);
+                return;
+            }
+            compacted.file = segment.file;
+
+            mSegments.set(mSegments.indexOf(segment),compacted);
+
+            int live = 0;
+            for (int i = 0; i < keys.size(); i++) {
+                //复制期间没有被覆盖或者删除的条目指向新的段文件
+                if (mIndex.get(keys.get(i)) == locations.get(i)) {
+                    replaceLocation(keys.get(i),moved[i]);
+                    live++;
+                }
+            }
+
+            segment.close();
+
+            if (VolleyLog.DEBUG) {
+                VolleyLog.v("compacted segment %s, moved %d entries in %d ms",
+                        segment.file.getName(),live,Platform.get().elapsedRealtime() - startTime);
+            }
+        }
+    }
+
+    /**
+     * 关闭并删除没有使用的段文件
+     */
+    private static void discardSegment(Segment segment,File file) {
+        if (segment != null) {
+            segment.close();
+        }
+        file.delete();
+    }
+
+    /**
+     * 删除一个段文件和它里面的所有条目
+     */
+    private void evictSegment(Segment segment) {
+
+        Iterator<Map.Entry<String,Location>> iterator = mIndex.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue().segment == segment) {
+                iterator.remove();
+            }
+        }
+
+        mSegments.remove(segment);
+        segment.close();
+        segment.file.delete();
+
+        if (VolleyLog.DEBUG) {
+            VolleyLog.v("evicted segment %s",segment.file.getName());
+        }
+    }
+
+    private void replaceLocation(String key,Location location) {
+        Location old = mIndex.put(key,location);
+        location.segment.liveBytes += location.recordLength;
+        if (old != null) {
+            old.segment.liveBytes -= old.recordLength;
+            maybeScheduleCompaction(old.segment);
+        }
+    }
+
+    private void removeLocation(String key) {
+        Location old = mIndex.remove(key);
+        if (old != null) {
+            old.segment.liveBytes -= old.recordLength;
+            maybeScheduleCompaction(old.segment);
+        }
+    }
+
+    private static byte[] readData(Location location) {
+        byte[] data = new byte[location.dataLength];
+        ByteBuffer buffer = location.segment.buffer.duplicate();
+        buffer.position(location.dataOffset);
+        buffer.get(data);
+        return data;
+    }
+
+    /**
+     * 读取记录中编码过的头信息，压缩时原样复制，不需要重新编码
+     */
+    private static byte[] readHeader(Location location) {
+        byte[] header = new byte[location.recordLength - RECORD_HEADER_SIZE - location.dataLength];
+        ByteBuffer buffer = location.segment.buffer.duplicate();
+        buffer.position(location.dataOffset - header.length);
+        buffer.get(header);
+        return header;
+    }
+
+    private long totalSegmentBytes() {
+        long total = 0;
+        for (Segment segment : mSegments) {
+            total += segment.buffer.capacity();
+        }
+        return total;
+    }
+
+    private File segmentFile(long id) {
+        return new File(mRootDirectory,SEGMENT_PREFIX + id);
+    }
+
+    private static long parseSegmentId(String name) {
+        if (!name.startsWith(SEGMENT_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Segment openSegment(long id,File file,int size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file,"rw");
+        try {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,0,size);
+            return new Segment(id,file,raf,buffer);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 用{@link CacheHeader}的格式编码条目的头信息
+     */
+    private static byte[] encodeHeader(String key,Entry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        if (!new CacheHeader(key,entry).writeHeader(bytes)) {
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 一个映射到内存的段文件
+     */
+    private static class Segment {
+
+        public final long id;
+
+        /**
+         * 段文件的路径，压缩生成的段文件替换旧的段文件以后改变
+         */
+        public File file;
+
+        public final RandomAccessFile raf;
+        public final MappedByteBuffer buffer;
+
+        /**
+         * 下一条记录写入的位置
+         */
+        public int writePosition = 0;
+
+        /**
+         * 索引中仍然引用的记录的字节数
+         */
+        public int liveBytes = 0;
+
+        /**
+         * 这个段文件中的删除记录
+         */
+        public final Set<String> tombstones = new HashSet<>();
+
+        public boolean compactionScheduled = false;
+
+        /**
+         * 是否已经封存，封存的段文件已经写回磁盘，不会再写入
+         */
+        public boolean sealed = false;
+
+        public Segment(long id,File file,RandomAccessFile raf,MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.raf = raf;
+            this.buffer = buffer;
+        }
+
+        public int remaining() {
+            return buffer.capacity() - writePosition;
+        }
+
+        /**
+         * 把映射内存写回磁盘，以后不再写入
+         */
+        public void seal() {
+            if (!sealed) {
+                buffer.force();
+                sealed = true;
+            }
+        }
+
+        /**
+         * 关闭文件，映射的内存在没有引用以后由系统释放
+         */
+        public void close() {
+            try {
+                raf.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * 索引中一个条目的位置
+     */
+    private static class Location {
+
+        public final Segment segment;
+        public final int dataOffset;
+        public final int dataLength;
+        public final int recordLength;
+        public final CacheHeader header;
+
+        public Location(Segment segment,int dataOffset,int dataLength,int recordLength,
+                        CacheHeader header) {
+            this.segment = segment;
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+            this.recordLength = recordLength;
+            this.header = header;
+        }
+    }
+
+    /**
+     * 从{@link ByteBuffer}中读取的输入流，用于解析记录的头信息
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer mBuffer;
+        private final int mLimit;
+
+        public ByteBufferInputStream(ByteBuffer buffer,int limit) {
+            mBuffer = buffer;
+            mLimit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (mBuffer.position() >= mLimit) {
+                return -1;
+            }
+            return mBuffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer,int offset,int count) throws IOException {
+            int remaining = mLimit - mBuffer.position();
+            if (remaining <= 0) {
+                return -1;
+            }
+            count = Math.min(count,remaining);
+            mBuffer.get(buffer,offset,count);
+            return count;
+        }
+    }
+}
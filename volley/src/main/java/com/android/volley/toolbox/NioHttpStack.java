@@ -0,0 +1,1160 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Platform;
+import com.android.volley.Request;
+import com.android.volley.Request.Method;
+import com.android.volley.VolleyLog;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * 基于{@link Selector}和{@link SocketChannel}的非阻塞HTTP/1.1栈。
+ *
+ * 所有的连接由一个I/O线程处理，调用{@link #execute(Request, Map, Callback)}的线程不等待响应，
+ * 一个线程可以同时处理几百个请求。响应体支持Content-Length、chunked和读到连接关闭三种方式，
+ * 完整读取以后通过{@link Callback}返回。每个主机保留几个空闲的保持连接(keep-alive)复用，
+ * 复用的连接在收到任何响应之前断开时，用新的连接重新发送一次。
+ *
+ * 只支持http，不支持https。超时时间是请求的{@link Request#getTimeoutMs()}，
+ * 连接、发送和读取时超过这个时间没有进展则失败。
+ *
+ * 主机名在几个解析线程上解析，调用线程和I/O线程都不做阻塞的DNS查询。
+ *
+ * 回调在I/O线程上执行（解析主机名失败时在解析线程上执行），不能阻塞。
+ * 关闭时正在执行的请求以失败结束，每个请求都会回调一次。
+ *
+ * 作者：李富 on 2015/11/21.
+ * 邮箱：lifuzz@163.com
+ */
+public class NioHttpStack implements AsyncHttpStack {
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final String HEADER_HOST = "Host";
+    private static final String HEADER_CONTENT_TYPE = "Content-Type";
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String HEADER_TRANSFER_ENCODING = "Transfer-Encoding";
+    private static final String HEADER_CONNECTION = "Connection";
+
+    /**
+     * 支持的压缩格式，由{@link NioNetwork}解压
+     */
+    private static final String SUPPORTED_ENCODINGS = "gzip, deflate";
+
+    private static final int DEFAULT_PORT = 80;
+
+    /**
+     * 每个连接的读缓冲区大小
+     */
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * 状态行和响应头每一行的最大长度
+     */
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    /**
+     * 知道响应体长度时直接分配结果数组的最大长度，更大的响应按块读取
+     */
+    private static final int MAX_EXACT_READ_LENGTH = 16 * 1024 * 1024;
+
+    /**
+     * 空闲连接保留的时间
+     */
+    private static final long KEEP_ALIVE_MS = 30 * 1000;
+
+    private static final int DEFAULT_MAX_IDLE_PER_HOST = 8;
+
+    private static final int DEFAULT_POOL_SIZE = 64 * 1024;
+
+    /**
+     * 解析主机名的线程数量
+     */
+    private static final int DEFAULT_RESOLVER_THREADS = 4;
+
+    private static final int STATE_STATUS_LINE = 0;
+    private static final int STATE_HEADERS = 1;
+    private static final int STATE_BODY_FIXED = 2;
+    private static final int STATE_CHUNK_SIZE = 3;
+    private static final int STATE_CHUNK_DATA = 4;
+    private static final int STATE_CHUNK_END = 5;
+    private static final int STATE_TRAILERS = 6;
+    private static final int STATE_BODY_UNTIL_CLOSE = 7;
+    private static final int STATE_DONE = 8;
+
+    /**
+     * 每个主机最多保留的空闲连接数
+     */
+    private final int mMaxIdlePerHost;
+
+    /**
+     * 读取长度未知的响应体时使用的缓冲池，只在I/O线程上使用
+     */
+    private final ByteArrayPool mPool;
+
+    /**
+     * 等待I/O线程开始的请求
+     */
+    private final ConcurrentLinkedQueue<Exchange> mPending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 每个主机的空闲连接，只在I/O线程上使用
+     */
+    private final Map<String,ArrayDeque<Connection>> mIdleConnections = new HashMap<>();
+
+    /**
+     * 正在执行请求的连接，只在I/O线程上使用
+     */
+    private final Set<Connection> mActiveConnections = new HashSet<>();
+
+    private Selector mSelector;
+
+    private Thread mThread;
+
+    private volatile boolean mShutdown = false;
+
+    /**
+     * 解析主机名的线程池，DNS查询可能阻塞几秒，不能在调用线程或者I/O线程上执行
+     */
+    private final ExecutorService mResolver =
+            Executors.newFixedThreadPool(DEFAULT_RESOLVER_THREADS,new ResolverThreadFactory());
+
+    public NioHttpStack() {
+        this(DEFAULT_MAX_IDLE_PER_HOST);
+    }
+
+    /**
+     * @param maxIdlePerHost 每个主机最多保留的空闲连接数
+     */
+    public NioHttpStack(int maxIdlePerHost) {
+        mMaxIdlePerHost = maxIdlePerHost;
+        mPool = new ByteArrayPool(DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * 异步执行请求，立即返回
+     * @param request 需要执行的请求
+     * @param additionalHeaders 附加头（和请求头一起发送）
+     * @param callback 请求完成的回调
+     * @throws MalformedURLException URL不正确或者不是http
+     * @throws IOException 栈已经关闭，无法解析主机时通过{@link Callback#onFailure(IOException)}返回
+     */
+    @Override
+    public void execute(Request<?> request,Map<String,String> additionalHeaders,
+                        Callback callback) throws IOException,AuthFailureError {
+
+        URL url = new URL(request.getUrl());
+        if (!"http".equalsIgnoreCase(url.getProtocol())) {
+            throw new MalformedURLException("NioHttpStack only supports http: " + url);
+        }
+
+        int port = url.getPort() == -1 ? DEFAULT_PORT : url.getPort();
+        byte[] encoded = encodeRequest(request,url,additionalHeaders);
+
+        ensureStarted();
+
+        try {
+            //在解析线程上解析主机名，调用线程和I/O线程不做阻塞的操作
+            mResolver.execute(new ResolveTask(url.getHost(),port,encoded,request.getTimeoutMs(),
+                    callback));
+        } catch (RejectedExecutionException e) {
+            throw new IOException("NioHttpStack is shut down");
+        }
+    }
+
+    /**
+     * 关闭所有的连接，结束I/O线程，正在执行的请求以失败结束。
+     * 还没有开始解析主机名的请求在调用这个方法的线程上回调
+     */
+    @Override
+    public void shutdown() {
+
+        List<Runnable> unresolved;
+        synchronized (this) {
+            mShutdown = true;
+            unresolved = mResolver.shutdownNow();
+            if (mSelector != null) {
+                mSelector.wakeup();
+            }
+        }
+
+        //解析线程池不会再执行这些请求，在这里结束，否则它们永远不会回调
+        IOException shutdown = new IOException("NioHttpStack is shut down");
+        for (Runnable task : unresolved) {
+            ((ResolveTask) task).fail(shutdown);
+        }
+    }
+
+    private synchronized void ensureStarted() throws IOException {
+
+        if (mShutdown) {
+            throw new IOException("NioHttpStack is shut down");
+        }
+
+        if (mThread != null) {
+            return;
+        }
+
+        mSelector = Selector.open();
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        },"Volley-NioHttpStack");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * 把请求编码为HTTP/1.1的请求报文
+     */
+    @SuppressWarnings("deprecation")
+    private static byte[] encodeRequest(Request<?> request,URL url,
+                                        Map<String,String> additionalHeaders)
+            throws AuthFailureError {
+
+        String method;
+        byte[] body = null;
+        String contentType = null;
+
+        switch (request.getMethod()) {
+
+            case Method.DEPRECATED_GET_OR_POST:
+                //有POST消息体则是POST请求，否则是GET请求
+                body = request.getPostBody();
+                method = body != null ? "POST" : "GET";
+                contentType = request.getPostBodyContentType();
+                break;
+
+            case Method.GET:
+                method = "GET";
+                break;
+
+            case Method.DELETE:
+                method = "DELETE";
+                break;
+
+            case Method.POST:
+                method = "POST";
+                body = request.getBody();
+                contentType = request.getBodyContentType();
+                break;
+
+            case Method.PUT:
+                method = "PUT";
+                body = request.getBody();
+                contentType = request.getBodyContentType();
+                break;
+
+            default:
+                throw new IllegalStateException("Unknown method type.");
+        }
+
+        HashMap<String,String> map = new HashMap<>();
+        map.putAll(request.getHeaders());
+        map.putAll(additionalHeaders);
+
+        String path = url.getFile();
+
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(method).append(' ').append(path.length() == 0 ? "/" : path)
+                .append(" HTTP/1.1\r\n");
+
+        if (!containsHeader(map,HEADER_HOST)) {
+            sb.append(HEADER_HOST).append(": ").append(url.getHost());
+            if (url.getPort() != -1) {
+                sb.append(':').append(url.getPort());
+            }
+            sb.append("\r\n");
+        }
+
+        if (!containsHeader(map,HEADER_ACCEPT_ENCODING)) {
+            sb.append(HEADER_ACCEPT_ENCODING).append(": ").append(SUPPORTED_ENCODINGS)
+                    .append("\r\n");
+        }
+
+        for (Map.Entry<String,String> header : map.entrySet()) {
+            sb.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+
+        if (body != null) {
+            sb.append(HEADER_CONTENT_TYPE).append(": ").append(contentType).append("\r\n");
+            sb.append(HEADER_CONTENT_LENGTH).append(": ").append(body.length).append("\r\n");
+        } else if ("POST".equals(method) || "PUT".equals(method)) {
+            sb.append(HEADER_CONTENT_LENGTH).append(": 0\r\n");
+        }
+
+        sb.append("\r\n");
+
+        byte[] head = sb.toString().getBytes(ISO_8859_1);
+        if (body == null) {
+            return head;
+        }
+
+        byte[] message = new byte[head.length + body.length];
+        System.arraycopy(head,0,message,0,head.length);
+        System.arraycopy(body,0,message,head.length,body.length);
+        return message;
+    }
+
+    private static boolean containsHeader(Map<String,String> headers,String name) {
+        for (String key : headers.keySet()) {
+            if (name.equalsIgnoreCase(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * I/O线程的主循环
+     */
+    private void loop() {
+
+        try {
+
+            while (!mShutdown) {
+
+                mSelector.select(timeUntilNextDeadline(Platform.get().elapsedRealtime()));
+
+                startPendingExchanges();
+
+                Iterator<SelectionKey> iterator = mSelector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (key.isValid()) {
+                        ((Connection) key.attachment()).handle(key);
+                    }
+                }
+
+                expireConnections(Platform.get().elapsedRealtime());
+            }
+
+        } catch (IOException e) {
+            VolleyLog.e(e,"NioHttpStack selector failed");
+        } finally {
+            mShutdown = true;
+            closeAll();
+        }
+    }
+
+    /**
+     * 为等待的请求分配连接，优先复用空闲的连接
+     */
+    private void startPendingExchanges() {
+
+        Exchange exchange;
+        while ((exchange = mPending.poll()) != null) {
+
+            Connection connection = takeIdleConnection(exchange.hostKey);
+            if (connection != null) {
+                connection.begin(exchange,true);
+            } else {
+                openConnection(exchange);
+            }
+        }
+    }
+
+    private void openConnection(Exchange exchange) {
+
+        SocketChannel channel = null;
+
+        try {
+
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+
+            Connection connection = new Connection(channel,exchange.hostKey);
+            boolean connected = channel.connect(exchange.address);
+            connection.mKey = channel.register(mSelector,0,connection);
+            connection.mConnecting = !connected;
+            connection.begin(exchange,false);
+
+        } catch (IOException e) {
+            closeQuietly(channel);
+            notifyFailure(exchange,e);
+        }
+    }
+
+    private Connection takeIdleConnection(String hostKey) {
+
+        ArrayDeque<Connection> idle = mIdleConnections.get(hostKey);
+        if (idle == null) {
+            return null;
+        }
+
+        Connection connection;
+        while ((connection = idle.pollLast()) != null) {
+            if (connection.mChannel.isOpen()) {
+                return connection;
+            }
+        }
+
+        return null;
+    }
+
+    private void releaseConnection(Connection connection) {
+
+        ArrayDeque<Connection> idle = mIdleConnections.get(connection.mHostKey);
+        if (idle == null) {
+            idle = new ArrayDeque<>();
+            mIdleConnections.put(connection.mHostKey,idle);
+        }
+
+        if (idle.size() >= mMaxIdlePerHost) {
+            connection.close();
+            return;
+        }
+
+        connection.mIdleSince = Platform.get().elapsedRealtime();
+        connection.mKey.interestOps(SelectionKey.OP_READ);
+        idle.addLast(connection);
+    }
+
+    /**
+     * 距离最近的超时时间的毫秒数，没有需要等待的超时返回0
+     */
+    private long timeUntilNextDeadline(long now) {
+
+        long next = Long.MAX_VALUE;
+
+        for (Connection connection : mActiveConnections) {
+            next = Math.min(next,connection.mDeadline);
+        }
+
+        for (ArrayDeque<Connection> idle : mIdleConnections.values()) {
+            Connection oldest = idle.peekFirst();
+            if (oldest != null) {
+                next = Math.min(next,oldest.mIdleSince + KEEP_ALIVE_MS);
+            }
+        }
+
+        if (next == Long.MAX_VALUE) {
+            return 0;
+        }
+
+        return Math.max(1,next - now);
+    }
+
+    /**
+     * 结束超时的请求，关闭空闲太久的连接
+     */
+    private void expireConnections(long now) {
+
+        if (!mActiveConnections.isEmpty()) {
+            ArrayList<Connection> expired = null;
+            for (Connection connection : mActiveConnections) {
+                if (now >= connection.mDeadline) {
+                    if (expired == null) {
+                        expired = new ArrayList<>();
+                    }
+                    expired.add(connection);
+                }
+            }
+            if (expired != null) {
+                for (Connection connection : expired) {
+                    connection.fail(new SocketTimeoutException(connection.mConnecting
+                            ? "connect timed out" : "read timed out"),false);
+                }
+            }
+        }
+
+        Iterator<ArrayDeque<Connection>> hosts = mIdleConnections.values().iterator();
+        while (hosts.hasNext()) {
+            ArrayDeque<Connection> idle = hosts.next();
+            Connection oldest;
+            while ((oldest = idle.peekFirst()) != null && now - oldest.mIdleSince >= KEEP_ALIVE_MS) {
+                idle.pollFirst();
+                oldest.close();
+            }
+            if (idle.isEmpty()) {
+                hosts.remove();
+            }
+        }
+    }
+
+    private void closeAll() {
+
+        IOException shutdown = new IOException("NioHttpStack is shut down");
+
+        for (Connection connection : new ArrayList<>(mActiveConnections)) {
+            connection.fail(shutdown,false);
+        }
+
+        for (ArrayDeque<Connection> idle : mIdleConnections.values()) {
+            for (Connection connection : idle) {
+                connection.close();
+            }
+        }
+        mIdleConnections.clear();
+
+        Exchange exchange;
+        while ((exchange = mPending.poll()) != null) {
+            notifyFailure(exchange,shutdown);
+        }
+
+        try {
+            mSelector.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void notifyFailure(Exchange exchange,IOException e) {
+        try {
+            exchange.callback.onFailure(e);
+        } catch (RuntimeException re) {
+            VolleyLog.e(re,"NioHttpStack callback failed");
+        }
+    }
+
+    private static void notifyResponse(Exchange exchange,int statusCode,
+                                       Map<String,String> headers,byte[] body) {
+        try {
+            exchange.callback.onResponse(statusCode,headers,body);
+        } catch (RuntimeException re) {
+            VolleyLog.e(re,"NioHttpStack callback failed");
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * 一次请求和响应
+     */
+    private static class Exchange {
+
+        final String hostKey;
+        final InetSocketAddress address;
+        final byte[] message;
+        final int timeoutMs;
+        final Callback callback;
+
+        Exchange(String hostKey,InetSocketAddress address,byte[] message,int timeoutMs,
+                 Callback callback) {
+            this.hostKey = hostKey;
+            this.address = address;
+            this.message = message;
+            this.timeoutMs = timeoutMs;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * 在解析线程上解析主机名，然后把请求交给I/O线程
+     */
+    private class ResolveTask implements Runnable {
+
+        final String host;
+        final int port;
+        final byte[] message;
+        final int timeoutMs;
+        final Callback callback;
+
+        ResolveTask(String host,int port,byte[] message,int timeoutMs,Callback callback) {
+            this.host = host;
+            this.port = port;
+            this.message = message;
+            this.timeoutMs = timeoutMs;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+
+            InetSocketAddress address = new InetSocketAddress(host,port);
+            if (address.isUnresolved()) {
+                fail(new UnknownHostException(host));
+                return;
+            }
+
+            Exchange exchange = new Exchange(host + ":" + port,address,message,timeoutMs,callback);
+            mPending.add(exchange);
+
+            if (mShutdown && mPending.remove(exchange)) {
+                fail(new IOException("NioHttpStack is shut down"));
+                return;
+            }
+
+            mSelector.wakeup();
+        }
+
+        void fail(IOException e) {
+            try {
+                callback.onFailure(e);
+            } catch (RuntimeException re) {
+                VolleyLog.e(re,"NioHttpStack callback failed");
+            }
+        }
+    }
+
+    /**
+     * 一个连接，同一时间只执行一个请求，响应按状态机解析
+     */
+    private class Connection {
+
+        final SocketChannel mChannel;
+
+        final String mHostKey;
+
+        final ByteBuffer mReadBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        SelectionKey mKey;
+
+        boolean mConnecting;
+
+        long mDeadline;
+
+        long mIdleSince;
+
+        /**
+         * 正在执行的请求，空闲时为null
+         */
+        Exchange mExchange;
+
+        ByteBuffer mWriteBuffer;
+
+        /**
+         * 是否是复用的空闲连接
+         */
+        boolean mReused;
+
+        /**
+         * 是否已经收到了响应的数据
+         */
+        boolean mReceivedAny;
+
+        int mState;
+
+        final StringBuilder mLine = new StringBuilder(128);
+
+        boolean mHttp10;
+
+        int mStatusCode;
+
+        Map<String,String> mHeaders;
+
+        long mContentLength;
+
+        boolean mChunked;
+
+        String mConnectionHeader;
+
+        long mBodyRemaining;
+
+        byte[] mBody;
+
+        int mBodyPosition;
+
+        PoolingByteArrayOutputStream mBodyStream;
+
+        Connection(SocketChannel channel,String hostKey) {
+            mChannel = channel;
+            mHostKey = hostKey;
+        }
+
+        /**
+         * 开始在这个连接上执行请求
+         */
+        void begin(Exchange exchange,boolean reused) {
+
+            mExchange = exchange;
+            mReused = reused;
+            mReceivedAny = false;
+            mWriteBuffer = ByteBuffer.wrap(exchange.message);
+            mReadBuffer.clear();
+            resetResponse();
+
+            mActiveConnections.add(this);
+            touch();
+
+            try {
+                mKey.interestOps(mConnecting ? SelectionKey.OP_CONNECT : SelectionKey.OP_WRITE);
+            } catch (RuntimeException e) {
+                //连接已经被关闭
+                fail(new ClosedChannelException(),true);
+            }
+        }
+
+        void resetResponse() {
+            mState = STATE_STATUS_LINE;
+            mLine.setLength(0);
+            mHeaders = new HashMap<>();
+            mContentLength = -1;
+            mChunked = false;
+            mConnectionHeader = null;
+            mBody = null;
+            mBodyPosition = 0;
+            mBodyStream = null;
+        }
+
+        /**
+         * 有进展时推迟超时时间
+         */
+        void touch() {
+            mDeadline = Platform.get().elapsedRealtime() + mExchange.timeoutMs;
+        }
+
+        void handle(SelectionKey key) {
+
+            try {
+
+                if (mExchange == null) {
+                    //空闲的连接可读，说明服务器关闭了连接或者发送了多余的数据
+                    removeIdle();
+                    close();
+                    return;
+                }
+
+                if (key.isConnectable()) {
+                    if (mChannel.finishConnect()) {
+                        mConnecting = false;
+                        touch();
+                        key.interestOps(SelectionKey.OP_WRITE);
+                    }
+                    return;
+                }
+
+                if (key.isWritable()) {
+                    if (mChannel.write(mWriteBuffer) > 0) {
+                        touch();
+                    }
+                    if (!mWriteBuffer.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                    return;
+                }
+
+                if (key.isReadable()) {
+                    read();
+                }
+
+            } catch (IOException e) {
+                fail(e,true);
+            } catch (RuntimeException e) {
+                fail(new IOException(e.toString()),false);
+            }
+        }
+
+        private void read() throws IOException {
+
+            int count = mChannel.read(mReadBuffer);
+
+            if (count == -1) {
+                onEndOfStream();
+                return;
+            }
+
+            if (count == 0) {
+                return;
+            }
+
+            mReceivedAny = true;
+            touch();
+
+            mReadBuffer.flip();
+            parse();
+            mReadBuffer.compact();
+        }
+
+        private void onEndOfStream() throws IOException {
+
+            if (mState == STATE_BODY_UNTIL_CLOSE) {
+                complete(false);
+                return;
+            }
+
+            throw new IOException("Unexpected end of stream");
+        }
+
+        /**
+         * 请求失败，复用的连接在收到响应之前失败时用新的连接重新发送
+         */
+        void fail(IOException e,boolean mayRetry) {
+
+            Exchange exchange = mExchange;
+            mExchange = null;
+            mActiveConnections.remove(this);
+            close();
+
+            if (exchange == null) {
+                return;
+            }
+
+            if (mayRetry && mReused && !mReceivedAny && !mShutdown) {
+                openConnection(exchange);
+                return;
+            }
+
+            notifyFailure(exchange,e);
+        }
+
+        /**
+         * 收到完整的响应，连接回到空闲连接中或者关闭
+         */
+        private void complete(boolean keepAlive) {
+
+            byte[] body;
+            if (mBody != null) {
+                body = mBody;
+            } else if (mBodyStream != null) {
+                body = mBodyStream.toByteArray();
+                try {
+                    mBodyStream.close();
+                } catch (IOException ignored) {
+                }
+            } else {
+                body = new byte[0];
+            }
+
+            Exchange exchange = mExchange;
+            int statusCode = mStatusCode;
+            Map<String,String> headers = mHeaders;
+
+            mExchange = null;
+            mState = STATE_DONE;
+            mBody = null;
+            mBodyStream = null;
+            mActiveConnections.remove(this);
+
+            //不使用管道，收到多余的数据时不复用这个连接
+            if (keepAlive && !mReadBuffer.hasRemaining() && !mShutdown) {
+                releaseConnection(this);
+            } else {
+                close();
+            }
+
+            notifyResponse(exchange,statusCode,headers,body);
+        }
+
+        void removeIdle() {
+            ArrayDeque<Connection> idle = mIdleConnections.get(mHostKey);
+            if (idle != null) {
+                idle.remove(this);
+            }
+        }
+
+        void close() {
+            if (mKey != null) {
+                mKey.cancel();
+            }
+            closeQuietly(mChannel);
+            if (mBodyStream != null) {
+                try {
+                    mBodyStream.close();
+                } catch (IOException ignored) {
+                }
+                mBodyStream = null;
+            }
+        }
+
+        /**
+         * 解析读缓冲区中的响应数据
+         */
+        private void parse() throws IOException {
+
+            while (mExchange != null) {
+
+                String line;
+
+                switch (mState) {
+
+                    case STATE_STATUS_LINE:
+                        line = readLine();
+                        if (line == null) {
+                            return;
+                        }
+                        parseStatusLine(line);
+                        mState = STATE_HEADERS;
+                        break;
+
+                    case STATE_HEADERS:
+                        line = readLine();
+                        if (line == null) {
+                            return;
+                        }
+                        if (line.length() == 0) {
+                            onHeadersComplete();
+                        } else {
+                            addHeader(line);
+                        }
+                        break;
+
+                    case STATE_BODY_FIXED:
+                        if (!mReadBuffer.hasRemaining()) {
+                            return;
+                        }
+                        mBodyRemaining -= copyBody(mBodyRemaining);
+                        if (mBodyRemaining == 0) {
+                            complete(isKeepAlive());
+                            return;
+                        }
+                        break;
+
+                    case STATE_CHUNK_SIZE:
+                        line = readLine();
+                        if (line == null) {
+                            return;
+                        }
+                        mBodyRemaining = parseChunkSize(line);
+                        mState = mBodyRemaining == 0 ? STATE_TRAILERS : STATE_CHUNK_DATA;
+                        break;
+
+                    case STATE_CHUNK_DATA:
+                        if (!mReadBuffer.hasRemaining()) {
+                            return;
+                        }
+                        mBodyRemaining -= copyBody(mBodyRemaining);
+                        if (mBodyRemaining == 0) {
+                            mState = STATE_CHUNK_END;
+                        }
+                        break;
+
+                    case STATE_CHUNK_END:
+                        line = readLine();
+                        if (line == null) {
+                            return;
+                        }
+                        if (line.length() != 0) {
+                            throw new IOException("Malformed chunked body");
+                        }
+                        mState = STATE_CHUNK_SIZE;
+                        break;
+
+                    case STATE_TRAILERS:
+                        line = readLine();
+                        if (line == null) {
+                            return;
+                        }
+                        if (line.length() == 0) {
+                            complete(isKeepAlive());
+                            return;
+                        }
+                        break;
+
+                    case STATE_BODY_UNTIL_CLOSE:
+                        if (!mReadBuffer.hasRemaining()) {
+                            return;
+                        }
+                        copyBody(mReadBuffer.remaining());
+                        break;
+
+                    default:
+                        return;
+                }
+            }
+        }
+
+        /**
+         * 读取一行，没有读到换行符返回null，已经读到的数据保存在{@link #mLine}中
+         */
+        private String readLine() throws IOException {
+
+            while (mReadBuffer.hasRemaining()) {
+
+                char c = (char) (mReadBuffer.get() & 0xff);
+
+                if (c == '\n') {
+                    int length = mLine.length();
+                    if (length > 0 && mLine.charAt(length - 1) == '\r') {
+                        mLine.setLength(length - 1);
+                    }
+                    String line = mLine.toString();
+                    mLine.setLength(0);
+                    return line;
+                }
+
+                if (mLine.length() >= MAX_LINE_LENGTH) {
+                    throw new IOException("Response line too long");
+                }
+                mLine.append(c);
+            }
+
+            return null;
+        }
+
+        /**
+         * 解析状态行：HTTP/1.1 200 OK
+         */
+        private void parseStatusLine(String line) throws IOException {
+
+            if (!line.startsWith("HTTP/1.") || line.length() < 12 || line.charAt(8) != ' ') {
+                throw new IOException("Unexpected status line: " + line);
+            }
+
+            mHttp10 = line.charAt(7) == '0';
+
+            try {
+                mStatusCode = Integer.parseInt(line.substring(9,12));
+            } catch (NumberFormatException e) {
+                throw new IOException("Unexpected status line: " + line);
+            }
+        }
+
+        private void addHeader(String line) throws IOException {
+
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw new IOException("Malformed header: " + line);
+            }
+
+            String name = line.substring(0,colon).trim();
+            String value = line.substring(colon + 1).trim();
+
+            if (HEADER_CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                try {
+                    mContentLength = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed Content-Length: " + value);
+                }
+            } else if (HEADER_TRANSFER_ENCODING.equalsIgnoreCase(name)) {
+                mChunked = value.toLowerCase().contains("chunked");
+            } else if (HEADER_CONNECTION.equalsIgnoreCase(name)) {
+                mConnectionHeader = value;
+            }
+
+            mHeaders.put(name,value);
+        }
+
+        /**
+         * 响应头读取完成，根据响应头决定响应体的读取方式
+         */
+        private void onHeadersComplete() {
+
+            //跳过100 Continue之类的临时响应
+            if (mStatusCode >= 100 && mStatusCode < 200) {
+                resetResponse();
+                return;
+            }
+
+            if (mStatusCode == 204 || mStatusCode == 304) {
+                complete(isKeepAlive());
+                return;
+            }
+
+            if (mChunked) {
+                mBodyStream = new PoolingByteArrayOutputStream(mPool);
+                mState = STATE_CHUNK_SIZE;
+                return;
+            }
+
+            if (mContentLength >= 0) {
+
+                if (mContentLength == 0) {
+                    complete(isKeepAlive());
+                    return;
+                }
+
+                //知道响应体的长度时，直接读到结果数组中，不需要再复制一次
+                if (mContentLength <= MAX_EXACT_READ_LENGTH) {
+                    mBody = new byte[(int) mContentLength];
+                } else {
+                    mBodyStream = new PoolingByteArrayOutputStream(mPool);
+                }
+                mBodyRemaining = mContentLength;
+                mState = STATE_BODY_FIXED;
+                return;
+            }
+
+            //没有长度的响应体读到连接关闭为止
+            mBodyStream = new PoolingByteArrayOutputStream(mPool);
+            mState = STATE_BODY_UNTIL_CLOSE;
+        }
+
+        private boolean isKeepAlive() {
+            if (mHttp10) {
+                return "keep-alive".equalsIgnoreCase(mConnectionHeader);
+            }
+            return !"close".equalsIgnoreCase(mConnectionHeader);
+        }
+
+        private long parseChunkSize(String line) throws IOException {
+
+            int end = line.indexOf(';');
+            String size = (end < 0 ? line : line.substring(0,end)).trim();
+
+            try {
+                long result = Long.parseLong(size,16);
+                if (result < 0) {
+                    throw new NumberFormatException();
+                }
+                return result;
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed chunk size: " + line);
+            }
+        }
+
+        /**
+         * 从读缓冲区复制最多max个字节的响应体
+         * @return 复制的字节数
+         */
+        private int copyBody(long max) {
+
+            int count = (int) Math.min(mReadBuffer.remaining(),max);
+
+            if (mBody != null) {
+                mReadBuffer.get(mBody,mBodyPosition,count);
+                mBodyPosition += count;
+            } else {
+                mBodyStream.write(mReadBuffer.array(),
+                        mReadBuffer.arrayOffset() + mReadBuffer.position(),count);
+                mReadBuffer.position(mReadBuffer.position() + count);
+            }
+
+            return count;
+        }
+    }
+
+    /**
+     * 创建后台的解析线程
+     */
+    private static class ResolverThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable,
+                    "Volley-NioHttpStack-dns-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
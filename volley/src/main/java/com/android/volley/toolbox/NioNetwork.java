@@ -0,0 +1,382 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.AsyncNetwork;
+import com.android.volley.AuthFailureError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.NoConnectionError;
+import com.android.volley.Platform;
+import com.android.volley.Request;
+import com.android.volley.RetryPolicy;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+import com.android.volley.VolleyLog;
+
+import org.apache.http.HttpStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ * 基于{@link AsyncHttpStack}的异步网络接口，默认使用{@link NioHttpStack}。
+ *
+ * 请求在HTTP栈自己的线程上执行，响应的处理（解压、重试、解析）交给回调线程池，
+ * 不占用HTTP栈的线程。状态码和错误的处理和{@link BasicNetwork}相同。
+ *
+ * 作者：李富 on 2015/11/21.
+ * 邮箱：lifuzz@163.com
+ */
+public class NioNetwork implements AsyncNetwork {
+
+    protected static final boolean DEBUG = VolleyLog.DEBUG;
+
+    private static int SLOW_REQUEST_THRESHOLD_MS = 3000;
+
+    private static int DEFAULT_POOL_SIZE = 4096;
+
+    /**
+     * 默认回调线程的数量
+     */
+    private static final int DEFAULT_CALLBACK_THREADS = 2;
+
+    protected final AsyncHttpStack mHttpStack;
+
+    protected final ByteArrayPool mPool;
+
+    /**
+     * 执行回调的线程池
+     */
+    private final Executor mCallbackExecutor;
+
+    /**
+     * 回调线程池是不是这里创建的，是则关闭时一起关闭
+     */
+    private final boolean mOwnsCallbackExecutor;
+
+    /**
+     * 等待退避时间以后重试，不占用回调线程
+     */
+    private final ScheduledExecutorService mRetryScheduler =
+            Executors.newSingleThreadScheduledExecutor(new CallbackThreadFactory());
+
+    /**
+     * 这个网络接口的所有请求共享的重试预算
+     */
+    private volatile RetryBudget mRetryBudget = new RetryBudget();
+
+    public NioNetwork() {
+        this(new NioHttpStack());
+    }
+
+    /**
+     * @param httpStack 使用的异步HTTP栈
+     */
+    public NioNetwork(AsyncHttpStack httpStack) {
+        this(httpStack,new ThreadLocalByteArrayPool(DEFAULT_POOL_SIZE),
+                Executors.newFixedThreadPool(DEFAULT_CALLBACK_THREADS,new CallbackThreadFactory()),
+                true);
+    }
+
+    /**
+     * @param httpStack 使用的异步HTTP栈
+     * @param pool 解压响应体时使用的缓冲池
+     * @param callbackExecutor 处理响应和执行回调的线程池
+     */
+    public NioNetwork(AsyncHttpStack httpStack,ByteArrayPool pool,Executor callbackExecutor) {
+        this(httpStack,pool,callbackExecutor,false);
+    }
+
+    private NioNetwork(AsyncHttpStack httpStack,ByteArrayPool pool,Executor callbackExecutor,
+                       boolean ownsCallbackExecutor) {
+        mHttpStack = httpStack;
+        mPool = pool;
+        mCallbackExecutor = callbackExecutor;
+        mOwnsCallbackExecutor = ownsCallbackExecutor;
+    }
+
+    /**
+     * 同步执行请求，阻塞到请求完成
+     */
+    @Override
+    public NetworkResponse performRequest(Request<?> request) throws VolleyError {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final NetworkResponse[] response = new NetworkResponse[1];
+        final VolleyError[] error = new VolleyError[1];
+
+        performRequest(request,new OnRequestComplete() {
+
+            @Override
+            public void onSuccess(NetworkResponse networkResponse) {
+                response[0] = networkResponse;
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(VolleyError volleyError) {
+                error[0] = volleyError;
+                latch.countDown();
+            }
+        });
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VolleyError(e);
+        }
+
+        if (error[0] != null) {
+            throw error[0];
+        }
+
+        return response[0];
+    }
+
+    @Override
+    public void performRequest(Request<?> request,OnRequestComplete callback) {
+        mRetryBudget.onRequest();
+        attempt(request,callback,Platform.get().elapsedRealtime());
+    }
+
+    /**
+     * 设置重试预算，多个网络接口可以共享同一个预算
+     */
+    public void setRetryBudget(RetryBudget retryBudget) {
+        mRetryBudget = retryBudget;
+    }
+
+    /**
+     * 关闭HTTP栈，正在执行的请求以失败结束。
+     * 等待退避的重试到时间以后照常发起，因为HTTP栈已经关闭而失败，每个请求都会回调
+     */
+    public void shutdown() {
+        mHttpStack.shutdown();
+        mRetryScheduler.shutdown();
+        if (mOwnsCallbackExecutor) {
+            ((ExecutorService) mCallbackExecutor).shutdown();
+        }
+    }
+
+    /**
+     * 执行一次请求，重试时再次调用
+     */
+    private void attempt(final Request<?> request,final OnRequestComplete callback,
+                         final long requestStart) {
+
+        Map<String,String> headers = new HashMap<>();
+        BasicNetwork.addCacheHeaders(headers,request.getCacheEntry());
+
+        try {
+
+            mHttpStack.execute(request,headers,new AsyncHttpStack.Callback() {
+
+                @Override
+                public void onResponse(final int statusCode,final Map<String,String> headers,
+                                       final byte[] body) {
+                    dispatch(callback,new Runnable() {
+                        @Override
+                        public void run() {
+                            handleResponse(request,callback,requestStart,statusCode,headers,body);
+                        }
+                    });
+                }
+
+                @Override
+                public void onFailure(final IOException e) {
+                    dispatch(callback,new Runnable() {
+                        @Override
+                        public void run() {
+                            handleFailure(request,callback,requestStart,e);
+                        }
+                    });
+                }
+            });
+
+        } catch (MalformedURLException e) {
+            VolleyLog.e(e,"Bad URL %s",request.getUrl());
+            callback.onError(new VolleyError(
+                    new RuntimeException("Bad URL " + request.getUrl(),e)));
+        } catch (IOException e) {
+            handleFailure(request,callback,requestStart,e);
+        } catch (AuthFailureError e) {
+            callback.onError(e);
+        } catch (RuntimeException e) {
+            //重试在调度线程上执行，异常不能抛出，否则回调永远不会执行
+            VolleyLog.e(e,"Unhandled exception %s",e.toString());
+            callback.onError(new VolleyError(e));
+        }
+    }
+
+    /**
+     * 在回调线程池上处理HTTP栈的结果。线程池拒绝时直接在当前线程上报告错误，
+     * 否则异常被HTTP栈吞掉，请求永远不会完成，调度器的名额也不会归还
+     */
+    private void dispatch(OnRequestComplete callback,Runnable task) {
+        try {
+            mCallbackExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            callback.onError(new VolleyError("NioNetwork is shut down",e));
+        }
+    }
+
+    private void handleResponse(Request<?> request,OnRequestComplete callback,long requestStart,
+                                int statusCode,Map<String,String> headers,byte[] body) {
+
+        if (statusCode == HttpStatus.SC_NOT_MODIFIED) {
+            callback.onSuccess(BasicNetwork.notModifiedResponse(request,headers));
+            return;
+        }
+
+        try {
+            body = decodeBody(headers,body);
+        } catch (IOException e) {
+            handleFailure(request,callback,requestStart,e);
+            return;
+        }
+
+        long requestLifeTime = Platform.get().elapsedRealtime() - requestStart;
+        logSlowRequests(requestLifeTime,request,body.length,statusCode);
+
+        NetworkResponse networkResponse = new NetworkResponse(statusCode,body,headers,false);
+
+        if (statusCode >= 200 && statusCode <= 299) {
+            callback.onSuccess(networkResponse);
+            return;
+        }
+
+        VolleyLog.e("Unexpected response code %d for %s",statusCode,request.getUrl());
+
+        //错误的响应码不能一直重试，只有权限验证失败按重试策略重试
+        if (statusCode == HttpStatus.SC_UNAUTHORIZED || statusCode == HttpStatus.SC_FORBIDDEN) {
+            retryOrFail("auth",request,callback,requestStart,
+                    new AuthFailureError(networkResponse));
+        } else {
+            callback.onError(new ServerError(networkResponse));
+        }
+    }
+
+    private void handleFailure(Request<?> request,OnRequestComplete callback,long requestStart,
+                               IOException e) {
+
+        if (e instanceof SocketTimeoutException) {
+            retryOrFail("socket",request,callback,requestStart,new TimeoutError());
+        } else {
+            callback.onError(new NoConnectionError(e));
+        }
+    }
+
+    /**
+     * 按请求的重试策略和重试预算重试，不重试则以错误结束。
+     * 重试在退避时间以后由调度线程发起
+     */
+    private void retryOrFail(String logPrefix,final Request<?> request,
+                             final OnRequestComplete callback,final long requestStart,
+                             VolleyError exception) {
+
+        RetryPolicy retryPolicy = request.getRetryPolicy();
+        int oldTimeout = request.getTimeoutMs();
+
+        try {
+            retryPolicy.retry(exception);
+        } catch (VolleyError e) {
+            request.addMarker(String.format("%s-timeout-giveup [timeout=%s]",logPrefix,oldTimeout));
+            callback.onError(e);
+            return;
+        }
+
+        //整个队列的重试预算用完，不再重试
+        if (!mRetryBudget.tryAcquireRetry()) {
+            request.addMarker(String.format("%s-retry-budget-exhausted [timeout=%s]",logPrefix,
+                    oldTimeout));
+            callback.onError(exception);
+            return;
+        }
+
+        long delayMs = retryPolicy.getRetryDelayMs();
+        request.addMarker(String.format("%s-timeout-retry [timeout=%s] [delay=%s]",logPrefix,
+                oldTimeout,delayMs));
+
+        try {
+            mRetryScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    attempt(request,callback,requestStart);
+                }
+            },delayMs,TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            //已经关闭
+            callback.onError(exception);
+        }
+    }
+
+    /**
+     * 解压gzip或deflate压缩的响应体
+     */
+    private byte[] decodeBody(Map<String,String> headers,byte[] body) throws IOException {
+
+        String encoding = BasicNetwork.removeContentCoding(headers);
+        if (encoding == null) {
+            return body;
+        }
+
+        InputStream in = new InflatingInputStream(new ByteArrayInputStream(body),
+                BasicNetwork.ENCODING_GZIP.equals(encoding),mPool);
+        PoolingByteArrayOutputStream bytes =
+                new PoolingByteArrayOutputStream(mPool,body.length * 4);
+        byte[] buffer = mPool.getBuf(4096);
+
+        try {
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                bytes.write(buffer,0,count);
+            }
+            return bytes.toByteArray();
+        } finally {
+            mPool.returnBuf(buffer);
+            in.close();
+            bytes.close();
+        }
+    }
+
+    private void logSlowRequests(long requestLifeTime,Request<?> request,
+                                 int responseLength,int statusCode) {
+
+        if (DEBUG || requestLifeTime > SLOW_REQUEST_THRESHOLD_MS) {
+
+            VolleyLog.d("HTTP response for request=<%s> [lifetime=%d], [size=%s], " +
+                            "[rc=%d], [retryCount=%s]", request, requestLifeTime,
+                    responseLength,statusCode,request.getRetryPolicy().getCurrentRetryCount());
+        }
+    }
+
+    /**
+     * 创建后台的回调线程
+     */
+    private static class CallbackThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable,"Volley-NioNetwork-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
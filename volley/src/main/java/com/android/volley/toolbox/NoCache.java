@@ -0,0 +1,38 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.Cache;
+
+/**
+ *
+ * 不缓存任何数据的缓存实现
+ *
+ * 作者：李富 on 2015/11/6.
+ * 邮箱：lifuzz@163.com
+ */
+public class NoCache implements Cache {
+
+    @Override
+    public Entry get(String key) {
+        return null;
+    }
+
+    @Override
+    public void put(String key, Entry entry) {
+    }
+
+    @Override
+    public void initialize() {
+    }
+
+    @Override
+    public void invalidate(String key, boolean fullExpire) {
+    }
+
+    @Override
+    public void remove(String key) {
+    }
+
+    @Override
+    public void clear() {
+    }
+}
@@ -0,0 +1,64 @@
+package com.android.volley.toolbox;
+
+/**
+ *
+ * 整个队列共享的重试预算，用令牌桶限制重试的数量。
+ *
+ * 每个请求向桶中放入{@code retryRatio}个令牌，每次重试取出一个令牌，桶中最多保留
+ * {@code maxTokens}个令牌。长期来看重试的数量不超过请求数量的retryRatio倍，服务器故障时
+ * 所有请求都失败，预算很快用完，重试不会成倍放大服务器的负载。
+ *
+ * 作者：李富 on 2015/11/26.
+ * 邮箱：lifuzz@163.com
+ */
+public class RetryBudget {
+
+    /**
+     * 默认重试数量和请求数量的比例
+     */
+    public static final float DEFAULT_RETRY_RATIO = 0.1f;
+
+    /**
+     * 默认桶中最多保留的令牌数量，也是连续失败时最多允许的重试次数
+     */
+    public static final int DEFAULT_MAX_TOKENS = 10;
+
+    private final float mRetryRatio;
+
+    private final float mMaxTokens;
+
+    private float mTokens;
+
+    public RetryBudget() {
+        this(DEFAULT_RETRY_RATIO,DEFAULT_MAX_TOKENS);
+    }
+
+    /**
+     * @param retryRatio 重试数量和请求数量的比例，例如0.1表示重试最多是请求的10%
+     * @param maxTokens 桶中最多保留的令牌数量
+     */
+    public RetryBudget(float retryRatio,int maxTokens) {
+        mRetryRatio = retryRatio;
+        mMaxTokens = maxTokens;
+        mTokens = maxTokens;
+    }
+
+    /**
+     * 执行一个新的请求时调用，向桶中放入令牌
+     */
+    public synchronized void onRequest() {
+        mTokens = Math.min(mMaxTokens,mTokens + mRetryRatio);
+    }
+
+    /**
+     * 尝试为一次重试取出一个令牌
+     * @return 预算不足返回false，这次不应该重试
+     */
+    public synchronized boolean tryAcquireRetry() {
+        if (mTokens < 1) {
+            return false;
+        }
+        mTokens -= 1;
+        return true;
+    }
+}
@@ -0,0 +1,26 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.Response;
+
+import java.util.Map;
+
+/**
+ *
+ * 流式请求的网络响应，响应体在读取的时候已经被解析，{@link #data}为null。
+ *
+ * 作者：李富 on 2015/11/17.
+ * 邮箱：lifuzz@163.com
+ */
+class StreamedNetworkResponse extends NetworkResponse {
+
+    /**
+     * 从响应流中解析的结果
+     */
+    final Response<?> parsed;
+
+    StreamedNetworkResponse(int statusCode,Map<String,String> headers,Response<?> parsed) {
+        super(statusCode,null,headers,false);
+        this.parsed = parsed;
+    }
+}
@@ -0,0 +1,59 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ *
+ * 流式请求，子类直接从网络输入流中解析响应，响应体不会被完整地读到内存中，
+ * 可以用固定的内存解析很大的响应。
+ *
+ * {@link #parseNetworkStream(NetworkResponse, InputStream, ByteArrayPool)}在网络调度线程上、
+ * 连接还打开的时候调用。请求重试时会重新调用，所以解析不能有副作用。响应体没有保存，
+ * 这种请求默认不缓存。
+ *
+ * 作者：李富 on 2015/11/17.
+ * 邮箱：lifuzz@163.com
+ */
+public abstract class StreamingRequest<T> extends Request<T> {
+
+    public StreamingRequest(int method,String url,Response.ErrorListener listener) {
+        super(method,url,listener);
+        setShouldCache(false);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected final Response<T> parseNetworkResponse(NetworkResponse response) {
+
+        if (response instanceof StreamedNetworkResponse) {
+            return (Response<T>) ((StreamedNetworkResponse) response).parsed;
+        }
+
+        //没有经过流式读取的响应，例如设置了缓存以后从缓存中读取的响应
+        InputStream in = new ByteArrayInputStream(response.data == null ? new byte[0]
+                : response.data);
+        try {
+            return parseNetworkStream(response,in,null);
+        } catch (IOException e) {
+            return Response.error(new ParseError(e));
+        }
+    }
+
+    /**
+     * 从响应流中解析响应
+     * @param response 只有状态码和响应头的网络响应，{@link NetworkResponse#data}为null
+     * @param in 响应体的输入流，不需要关闭
+     * @param pool 可以借用缓冲区的缓冲池，可能为null
+     * @return 解析响应，可能出现null的错误
+     * @throws IOException 读取响应流失败，按网络错误处理
+     */
+    protected abstract Response<T> parseNetworkStream(NetworkResponse response,InputStream in,
+                                                      ByteArrayPool pool) throws IOException;
+}
@@ -0,0 +1,237 @@
+package com.android.volley.toolbox;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ *
+ * 在{@link ByteArrayPool}前面加上每个线程自己的小缓存(magazine)。
+ *
+ * 每个线程为每个小的大小等级保留几个缓冲区，获取和归还时不需要同步，满了以后才放回共享的
+ * 缓冲池。网络调度线程是长期运行的，每次响应借用的1KB读缓冲区和输出缓冲区基本上都在
+ * 线程自己的缓存中命中。
+ *
+ * 每个线程每个等级最多缓存{@link #MAGAZINE_SIZE}个不超过{@link #MAX_CACHED_BUFFER_SIZE}的
+ * 缓冲区。线程缓存的每个位置第一次使用时按这个等级的最大长度从共享缓冲池的最大字节数中占用，
+ * 以后在这个位置上放入和取出缓冲区不再访问共享的计数，线程缓存和共享缓冲池一共不超过
+ * 构造时指定的最大字节数。占用失败时，已经结束的线程缓存的缓冲区和占用的字节数还给共享
+ * 缓冲池，每个任务一个线程的执行器也不会让缓冲区随线程一起丢失。
+ *
+ * 作者：李富 on 2015/11/13.
+ * 邮箱：lifuzz@163.com
+ */
+public class ThreadLocalByteArrayPool extends ByteArrayPool {
+
+    /**
+     * 线程缓存的最大缓冲区长度
+     */
+    private static final int MAX_CACHED_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * 线程缓存的最大等级
+     */
+    private static final int MAX_CACHED_CLASS = floorClass(MAX_CACHED_BUFFER_SIZE);
+
+    /**
+     * 每个线程每个等级最多缓存的缓冲区数量
+     */
+    private static final int MAGAZINE_SIZE = 4;
+
+    /**
+     * 记录的线程达到这个数量时，创建新的线程缓存之前先回收已经结束的线程
+     */
+    private static final int RECLAIM_THREAD_COUNT = 64;
+
+    /**
+     * 每个线程的缓存，用于回收已经结束的线程的缓冲区，用自身加锁。
+     * 只弱引用线程，不会让已经结束的线程对象一直留在内存中
+     */
+    private final List<Owner> mOwners = new ArrayList<>();
+
+    /**
+     * 每个线程自己的缓存
+     */
+    private final ThreadLocal<Magazine> mMagazines = new ThreadLocal<Magazine>() {
+        @Override
+        protected Magazine initialValue() {
+            Magazine magazine = new Magazine();
+            synchronized (mOwners) {
+                //不归还缓冲区的线程不会触发回收，线程多的时候在这里清理
+                if (mOwners.size() >= RECLAIM_THREAD_COUNT) {
+                    reclaimDeadThreads();
+                }
+                mOwners.add(new Owner(Thread.currentThread(),magazine));
+            }
+            return magazine;
+        }
+    };
+
+    /**
+     * @param sizeLimit 共享缓存池和所有线程缓存一共的最大大小，以字节为单位
+     */
+    public ThreadLocalByteArrayPool(int sizeLimit) {
+        super(sizeLimit);
+    }
+
+    @Override
+    public byte[] getBuf(int len) {
+
+        int index = ceilClass(len);
+        if (index <= MAX_CACHED_CLASS) {
+            byte[] buf = mMagazines.get().pop(index);
+            if (buf != null) {
+                return buf;
+            }
+        }
+
+        return super.getBuf(len);
+    }
+
+    @Override
+    public void returnBuf(byte[] buf) {
+
+        if (buf == null || buf.length == 0) {
+            return;
+        }
+
+        //等级按长度向下取整，8KB的等级还包括更长的缓冲区，按长度判断
+        if (buf.length <= MAX_CACHED_BUFFER_SIZE) {
+
+            int index = floorClass(buf.length);
+            Magazine magazine = mMagazines.get();
+
+            if (magazine.push(index,buf)) {
+                return;
+            }
+
+            //已经占用的位置都满了，再占用一个位置
+            if (magazine.canGrow(index) && reserveSlot(index)) {
+                magazine.grow(index);
+                magazine.push(index,buf);
+                return;
+            }
+        }
+
+        //线程缓存满了，放回共享缓冲池
+        super.returnBuf(buf);
+    }
+
+    /**
+     * 为线程缓存中一个等级的一个位置占用共享缓冲池的字节数，
+     * 超过上限时先回收已经结束的线程的缓存
+     */
+    private boolean reserveSlot(int index) {
+
+        int bytes = slotBytes(index);
+        if (reserve(bytes)) {
+            return true;
+        }
+
+        reclaimDeadThreads();
+        return reserve(bytes);
+    }
+
+    /**
+     * 线程缓存中一个等级的一个位置占用的字节数，是这个等级能放入的最大长度
+     */
+    private static int slotBytes(int index) {
+        return (int) Math.min((1L << (index + 1)) - 1,MAX_CACHED_BUFFER_SIZE);
+    }
+
+    /**
+     * 把已经结束的线程缓存的缓冲区放回共享缓冲池，并释放它们占用的字节数。
+     * 线程结束以后不会再访问自己的缓存，{@link Thread#isAlive()}返回false保证能看到它对缓存的修改
+     */
+    private void reclaimDeadThreads() {
+
+        synchronized (mOwners) {
+
+            Iterator<Owner> iterator = mOwners.iterator();
+            while (iterator.hasNext()) {
+
+                Owner owner = iterator.next();
+                Thread thread = owner.thread.get();
+                if (thread != null && thread.isAlive()) {
+                    continue;
+                }
+                iterator.remove();
+
+                Magazine magazine = owner.magazine;
+                for (int i = 0 ; i <= MAX_CACHED_CLASS;i ++) {
+                    release(magazine.slots(i) * slotBytes(i));
+                    byte[] buf;
+                    while ((buf = magazine.pop(i)) != null) {
+                        super.returnBuf(buf);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 一个线程和它的缓存
+     */
+    private static final class Owner {
+
+        final WeakReference<Thread> thread;
+        final Magazine magazine;
+
+        Owner(Thread thread,Magazine magazine) {
+            this.thread = new WeakReference<>(thread);
+            this.magazine = magazine;
+        }
+    }
+
+    /**
+     * 一个线程的缓存，只被这个线程访问，不需要同步
+     */
+    private static final class Magazine {
+
+        private final byte[][][] mBuffers = new byte[MAX_CACHED_CLASS + 1][MAGAZINE_SIZE][];
+        private final int[] mCounts = new int[MAX_CACHED_CLASS + 1];
+
+        /**
+         * 每个等级已经占用了字节数的位置数量
+         */
+        private final int[] mSlots = new int[MAX_CACHED_CLASS + 1];
+
+        byte[] pop(int index) {
+            int count = mCounts[index];
+            if (count == 0) {
+                return null;
+            }
+            count--;
+            byte[] buf = mBuffers[index][count];
+            mBuffers[index][count] = null;
+            mCounts[index] = count;
+            return buf;
+        }
+
+        /**
+         * 放入一个已经占用了字节数的空位置，没有空位置返回false
+         */
+        boolean push(int index,byte[] buf) {
+            int count = mCounts[index];
+            if (count == mSlots[index]) {
+                return false;
+            }
+            mBuffers[index][count] = buf;
+            mCounts[index] = count + 1;
+            return true;
+        }
+
+        boolean canGrow(int index) {
+            return mSlots[index] < MAGAZINE_SIZE;
+        }
+
+        void grow(int index) {
+            mSlots[index]++;
+        }
+
+        int slots(int index) {
+            return mSlots[index];
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.Cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *
+ * 两级缓存：内存中按字节数限制大小的LRU缓存，加上一个磁盘缓存。
+ *
+ * 读取时先查内存，内存没有再读磁盘，并把磁盘中读到的条目放到内存中；写入时同时写入
+ * 磁盘和内存。内存命中时直接返回同一个{@link Entry}对象，不读磁盘，也不复制数据，
+ * 所以调用者不能修改返回的条目。
+ *
+ * 作者：李富 on 2015/11/11.
+ * 邮箱：lifuzz@163.com
+ */
+public class TwoTierCache implements Cache {
+
+    /**
+     * 估算的每个条目除了数据和响应头以外的内存开销（对象头、字段、链表节点）
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    /**
+     * 估算的每个响应头的内存开销（HashMap节点和两个String对象）
+     */
+    private static final int HEADER_OVERHEAD_BYTES = 64;
+
+    /**
+     * 默认内存缓存的最大字节数
+     */
+    private static final int DEFAULT_MEMORY_BYTES = 1024 * 1024;
+
+    /**
+     * 按访问顺序排列的内存缓存
+     */
+    private final LinkedHashMap<String,Entry> mMemory =
+            new LinkedHashMap<String,Entry>(16,.75f,true);
+
+    /**
+     * 正在从磁盘读取、读完以后要放到内存中的键，值是这次读取的令牌，和{@link #mMemory}一起
+     * 用mMemory加锁。读取期间这个键被写入、删除或者失效时令牌被移除，读到的旧条目不再放到内存中
+     */
+    private final Map<String,Object> mPendingPromotions = new HashMap<>();
+
+    /**
+     * 内存缓存的总字节数
+     */
+    private long mMemoryBytes = 0;
+
+    /**
+     * 内存缓存的最大字节数
+     */
+    private final long mMaxMemoryBytes;
+
+    /**
+     * 磁盘缓存
+     */
+    private final Cache mDiskCache;
+
+    /**
+     * @param diskCache 磁盘缓存
+     * @param maxMemoryBytes 内存缓存的最大字节数
+     */
+    public TwoTierCache(Cache diskCache,long maxMemoryBytes) {
+        mDiskCache = diskCache;
+        mMaxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * 使用默认内存大小（1MB）创建两级缓存
+     * @param diskCache 磁盘缓存
+     */
+    public TwoTierCache(Cache diskCache) {
+        this(diskCache,DEFAULT_MEMORY_BYTES);
+    }
+
+    @Override
+    public Entry get(String key) {
+
+        Object token = new Object();
+
+        synchronized (mMemory) {
+            Entry entry = mMemory.get(key);
+            if (entry != null) {
+                return entry;
+            }
+            mPendingPromotions.put(key,token);
+        }
+
+        Entry entry = mDiskCache.get(key);
+
+        synchronized (mMemory) {
+            //读取期间这个键已经改变，不能用读到的条目覆盖内存中较新的状态
+            if (mPendingPromotions.get(key) != token) {
+                return entry;
+            }
+            mPendingPromotions.remove(key);
+            if (entry != null) {
+                putInMemory(key,entry);
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public void put(String key,Entry entry) {
+        //先写磁盘再写内存，写内存时取消读取期间的提升，保证不会提升磁盘上的旧条目
+        mDiskCache.put(key,entry);
+        putInMemory(key,entry);
+    }
+
+    @Override
+    public void initialize() {
+        mDiskCache.initialize();
+    }
+
+    @Override
+    public void invalidate(String key,boolean fullExpire) {
+
+        mDiskCache.invalidate(key,fullExpire);
+
+        synchronized (mMemory) {
+            mPendingPromotions.remove(key);
+            Entry entry = mMemory.get(key);
+            if (entry != null) {
+                entry.softTtl = 0;
+                if (fullExpire) {
+                    entry.ttl = 0;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        mDiskCache.remove(key);
+        removeFromMemory(key);
+    }
+
+    @Override
+    public void clear() {
+        mDiskCache.clear();
+        synchronized (mMemory) {
+            mPendingPromotions.clear();
+            mMemory.clear();
+            mMemoryBytes = 0;
+        }
+    }
+
+    /**
+     * 把条目放到内存缓存中，太大的条目只保存在磁盘上
+     */
+    private void putInMemory(String key,Entry entry) {
+
+        long weight = weightOf(key,entry);
+
+        synchronized (mMemory) {
+
+            mPendingPromotions.remove(key);
+
+            Entry old = mMemory.remove(key);
+            if (old != null) {
+                mMemoryBytes -= weightOf(key,old);
+            }
+
+            if (weight > mMaxMemoryBytes) {
+                return;
+            }
+
+            mMemory.put(key,entry);
+            mMemoryBytes += weight;
+            trimToSize();
+        }
+    }
+
+    private void removeFromMemory(String key) {
+        synchronized (mMemory) {
+            mPendingPromotions.remove(key);
+            Entry old = mMemory.remove(key);
+            if (old != null) {
+                mMemoryBytes -= weightOf(key,old);
+            }
+        }
+    }
+
+    /**
+     * 按LRU的顺序删除内存中的条目，直到总字节数不超过最大字节数
+     */
+    private void trimToSize() {
+        Iterator<Map.Entry<String,Entry>> iterator = mMemory.entrySet().iterator();
+        while (mMemoryBytes > mMaxMemoryBytes && iterator.hasNext()) {
+            Map.Entry<String,Entry> eldest = iterator.next();
+            mMemoryBytes -= weightOf(eldest.getKey(),eldest.getValue());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 估算条目占用的内存：数据的长度加上键、ETag和响应头的大小
+     */
+    private static long weightOf(String key,Entry entry) {
+
+        long weight = ENTRY_OVERHEAD_BYTES + key.length() * 2;
+
+        if (entry.data != null) {
+            weight += entry.data.length;
+        }
+
+        if (entry.etag != null) {
+            weight += entry.etag.length() * 2;
+        }
+
+        if (entry.responseHeaders != null) {
+            for (Map.Entry<String,String> header : entry.responseHeaders.entrySet()) {
+                weight += HEADER_OVERHEAD_BYTES
+                        + (header.getKey().length() + header.getValue().length()) * 2;
+            }
+        }
+
+        return weight;
+    }
+}
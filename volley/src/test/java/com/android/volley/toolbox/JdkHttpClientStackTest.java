@@ -0,0 +1,264 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.Platform;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link JdkHttpClientStack}在本机HTTP服务器上的测试，同步的经过{@link BasicNetwork}，
+ * 异步的经过{@link NioNetwork}
+ *
+ * 作者：李富 on 2015/11/30.
+ * 邮箱：lifuzz@163.com
+ */
+public class JdkHttpClientStackTest {
+
+    @Rule
+    public TemporaryFolder mCacheDir = new TemporaryFolder();
+
+    private HttpServer mServer;
+    private ExecutorService mServerExecutor;
+    private String mBaseUrl;
+    private JdkHttpClientStack mStack;
+
+    /**
+     * 阻塞的处理器等待这个信号
+     */
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws IOException {
+
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(),0),0);
+
+        mServer.createContext("/hello",new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("X-Test","yes");
+                respond(exchange,200,"hello".getBytes("UTF-8"));
+            }
+        });
+
+        mServer.createContext("/gzip",new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                assertTrue(accept != null && accept.contains("gzip"));
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+                gzip.write("compressed body".getBytes("UTF-8"));
+                gzip.close();
+                exchange.getResponseHeaders().add("Content-Encoding","gzip");
+                respond(exchange,200,bytes.toByteArray());
+            }
+        });
+
+        mServer.createContext("/echo",new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = readFully(exchange.getRequestBody());
+                String type = exchange.getRequestHeaders().getFirst("Content-Type");
+                respond(exchange,200,(exchange.getRequestMethod() + " " + type + " "
+                        + new String(body,"UTF-8")).getBytes("UTF-8"));
+            }
+        });
+
+        mServer.createContext("/missing",new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange,404,"nope".getBytes("UTF-8"));
+            }
+        });
+
+        mServer.createContext("/slow",new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    mRelease.await(10,TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange,200,new byte[0]);
+            }
+        });
+
+        mServerExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mServerExecutor);
+        mServer.start();
+
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+        mStack = new JdkHttpClientStack();
+    }
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+        mStack.shutdown();
+        mServer.stop(0);
+        mServerExecutor.shutdownNow();
+    }
+
+    @Test
+    public void syncGetReturnsBodyAndHeaders() throws Exception {
+        NetworkResponse response = new BasicNetwork(mStack)
+                .performRequest(new TestRequest(mBaseUrl + "/hello"));
+        assertEquals(200,response.statusCode);
+        assertEquals("hello",new String(response.data,"UTF-8"));
+        assertEquals("yes",header(response.headers,"X-Test"));
+    }
+
+    @Test
+    public void syncGzipBodyIsDecoded() throws Exception {
+        NetworkResponse response = new BasicNetwork(mStack)
+                .performRequest(new TestRequest(mBaseUrl + "/gzip"));
+        assertEquals("compressed body",new String(response.data,"UTF-8"));
+    }
+
+    @Test
+    public void syncPostSendsBodyAndContentType() throws Exception {
+        NetworkResponse response = new BasicNetwork(mStack).performRequest(new TestRequest(
+                Request.Method.POST,mBaseUrl + "/echo","payload".getBytes("UTF-8"),2500));
+        assertEquals("POST text/plain; charset=UTF-8 payload",
+                new String(response.data,"UTF-8"));
+    }
+
+    @Test
+    public void syncTimeoutBecomesTimeoutError() throws Exception {
+        try {
+            new BasicNetwork(mStack).performRequest(new TestRequest(
+                    Request.Method.GET,mBaseUrl + "/slow",null,200));
+            fail("expected a timeout");
+        } catch (TimeoutError expected) {
+        }
+    }
+
+    @Test
+    public void asyncGetThroughNioNetwork() throws Exception {
+        NioNetwork network = new NioNetwork(mStack);
+        NetworkResponse response = network.performRequest(new TestRequest(mBaseUrl + "/gzip"));
+        assertEquals(200,response.statusCode);
+        assertEquals("compressed body",new String(response.data,"UTF-8"));
+    }
+
+    @Test
+    public void asyncErrorStatusBecomesVolleyError() throws Exception {
+        NioNetwork network = new NioNetwork(mStack);
+        try {
+            network.performRequest(new TestRequest(mBaseUrl + "/missing"));
+            fail("expected an error");
+        } catch (VolleyError expected) {
+            assertEquals(404,expected.networkResponse.statusCode);
+        }
+    }
+
+    @Test
+    public void asyncTimeoutIsSocketTimeout() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        mStack.execute(new TestRequest(Request.Method.GET,mBaseUrl + "/slow",null,200),
+                Collections.<String,String>emptyMap(),callback);
+        assertTrue(callback.await());
+        assertTrue(callback.mFailure instanceof SocketTimeoutException);
+    }
+
+    @Test
+    public void shutdownFailsInFlightRequests() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        mStack.execute(new TestRequest(Request.Method.GET,mBaseUrl + "/slow",null,10000),
+                Collections.<String,String>emptyMap(),callback);
+        mStack.shutdown();
+        assertTrue(callback.await());
+        assertNotNull(callback.mFailure);
+
+        try {
+            mStack.execute(new TestRequest(mBaseUrl + "/hello"),
+                    Collections.<String,String>emptyMap(),new RecordingCallback());
+            fail("expected the stack to be shut down");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void asyncQueueDeliversOnDeliveryThread() throws Exception {
+
+        RequestQueue queue = Volley.newAsyncRequestQueue(mCacheDir.getRoot());
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final AtomicReference<String> body = new AtomicReference<>();
+        final AtomicBoolean onDeliveryThread = new AtomicBoolean();
+
+        queue.add(new TestRequest(Request.Method.GET,mBaseUrl + "/hello",null,2500,
+                new Response.Listener<byte[]>() {
+                    @Override
+                    public void onResponse(byte[] response) {
+                        body.set(new String(response));
+                        onDeliveryThread.set(Platform.get().isMainThread());
+                        delivered.countDown();
+                    }
+                },null));
+
+        try {
+            assertTrue(delivered.await(5,TimeUnit.SECONDS));
+            assertEquals("hello",body.get());
+            assertTrue(onDeliveryThread.get());
+        } finally {
+            queue.stop();
+        }
+    }
+
+    private static String header(Map<String,String> headers,String name) {
+        for (Map.Entry<String,String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static void respond(HttpExchange exchange,int status,byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status,body.length == 0 ? -1 : body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            bytes.write(buffer,0,count);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,166 @@
+package com.android.volley.toolbox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本机的测试服务器，每个连接由脚本直接读写原始的字节，可以写出任意格式的HTTP/1.x响应，
+ * 也可以不响应或者在任意时刻关闭连接
+ *
+ * 作者：李富 on 2015/11/30.
+ * 邮箱：lifuzz@163.com
+ */
+class LoopbackServer {
+
+    /**
+     * 一个连接的脚本，返回以后关闭连接
+     */
+    interface Script {
+
+        /**
+         * @param index 连接的序号，从0开始
+         */
+        void run(int index,Socket socket) throws Exception;
+    }
+
+    private final ServerSocket mServerSocket;
+
+    private final AtomicInteger mConnections = new AtomicInteger();
+
+    private final List<Socket> mSockets = Collections.synchronizedList(new ArrayList<Socket>());
+
+    private final ExecutorService mWorkers = Executors.newCachedThreadPool();
+
+    LoopbackServer(final Script script) throws IOException {
+
+        mServerSocket = new ServerSocket(0,50,InetAddress.getLoopbackAddress());
+
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!mServerSocket.isClosed()) {
+                    final Socket socket;
+                    try {
+                        socket = mServerSocket.accept();
+                    } catch (IOException e) {
+                        return;
+                    }
+                    final int index = mConnections.getAndIncrement();
+                    mSockets.add(socket);
+                    mWorkers.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                script.run(index,socket);
+                            } catch (Exception ignored) {
+                            } finally {
+                                closeQuietly(socket);
+                            }
+                        }
+                    });
+                }
+            }
+        },"LoopbackServer");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path;
+    }
+
+    /**
+     * 已经接受的连接数量
+     */
+    int connectionCount() {
+        return mConnections.get();
+    }
+
+    void close() {
+        closeQuietly(mServerSocket);
+        synchronized (mSockets) {
+            for (Socket socket : mSockets) {
+                closeQuietly(socket);
+            }
+        }
+        mWorkers.shutdownNow();
+    }
+
+    /**
+     * 读取一个请求的请求行和请求头，有Content-Length时读掉请求体
+     * @return 请求行和请求头，连接在请求开始之前关闭时返回null
+     */
+    static String readRequest(Socket socket) throws IOException {
+
+        InputStream in = socket.getInputStream();
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+
+        //最后读到的四个字节，等于\r\n\r\n时请求头结束
+        int last = 0;
+        while (last != 0x0d0a0d0a) {
+            int b = in.read();
+            if (b == -1) {
+                if (head.size() == 0) {
+                    return null;
+                }
+                throw new IOException("Truncated request");
+            }
+            head.write(b);
+            last = (last << 8) | b;
+        }
+
+        String request = head.toString("ISO-8859-1");
+        long remaining = contentLength(request);
+        while (remaining > 0 && in.read() != -1) {
+            remaining--;
+        }
+        return request;
+    }
+
+    /**
+     * 写出原始的响应数据
+     */
+    static void write(Socket socket,String response) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(response.getBytes("ISO-8859-1"));
+        out.flush();
+    }
+
+    /**
+     * 等到客户端关闭连接，用于不响应的脚本
+     */
+    static void awaitClose(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        while (in.read() != -1) {
+        }
+    }
+
+    private static long contentLength(String request) {
+        for (String line : request.split("\r\n")) {
+            if (line.toLowerCase(Locale.US).startsWith("content-length:")) {
+                return Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+            }
+        }
+        return 0;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
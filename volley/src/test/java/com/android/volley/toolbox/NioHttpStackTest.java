@@ -0,0 +1,360 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.Request;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link NioHttpStack}在本机服务器上的测试：响应体的三种读取方式、临时响应和没有响应体的响应、
+ * 保持连接的复用和重发、超时以及关闭时正在执行的请求
+ *
+ * 作者：李富 on 2015/11/30.
+ * 邮箱：lifuzz@163.com
+ */
+public class NioHttpStackTest {
+
+    private NioHttpStack mStack;
+
+    private LoopbackServer mServer;
+
+    @Before
+    public void setUp() {
+        mStack = new NioHttpStack();
+    }
+
+    @After
+    public void tearDown() {
+        mStack.shutdown();
+        if (mServer != null) {
+            mServer.close();
+        }
+    }
+
+    @Test
+    public void contentLengthBody() throws Exception {
+        mServer = new LoopbackServer(respondEach(
+                "HTTP/1.1 200 OK\r\nContent-Length: 5\r\nX-Test: yes\r\n\r\nhello"));
+
+        RecordingCallback callback = execute(mServer.url("/"),2500);
+
+        assertEquals(200,callback.mStatusCode);
+        assertEquals("hello",callback.body());
+        assertEquals("yes",callback.mHeaders.get("X-Test"));
+    }
+
+    @Test
+    public void chunkedBodyWithTrailersKeepsConnection() throws Exception {
+        mServer = new LoopbackServer(respondEach("HTTP/1.1 200 OK\r\n"
+                + "Transfer-Encoding: chunked\r\n\r\n"
+                + "5\r\nhello\r\n"
+                + "6;name=value\r\n world\r\n"
+                + "0\r\nX-Checksum: abc\r\nX-Other: def\r\n\r\n"));
+
+        assertEquals("hello world",execute(mServer.url("/"),2500).body());
+        //尾部的头读完以后连接可以复用
+        assertEquals("hello world",execute(mServer.url("/"),2500).body());
+        assertEquals(1,mServer.connectionCount());
+    }
+
+    @Test
+    public void bodyUntilClose() throws Exception {
+        mServer = new LoopbackServer(new LoopbackServer.Script() {
+            @Override
+            public void run(int index,Socket socket) throws Exception {
+                LoopbackServer.readRequest(socket);
+                LoopbackServer.write(socket,"HTTP/1.0 200 OK\r\n\r\n");
+                LoopbackServer.write(socket,"first part, ");
+                Thread.sleep(50);
+                LoopbackServer.write(socket,"second part");
+            }
+        });
+
+        assertEquals("first part, second part",execute(mServer.url("/"),2500).body());
+
+        //连接已经关闭，下一个请求使用新的连接
+        assertEquals("first part, second part",execute(mServer.url("/"),2500).body());
+        assertEquals(2,mServer.connectionCount());
+    }
+
+    @Test
+    public void skipsInformationalResponses() throws Exception {
+        mServer = new LoopbackServer(respondEach("HTTP/1.1 100 Continue\r\n\r\n"
+                + "HTTP/1.1 103 Early Hints\r\nLink: </style.css>\r\n\r\n"
+                + "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok"));
+
+        RecordingCallback callback = execute(mServer.url("/"),2500);
+
+        assertEquals(200,callback.mStatusCode);
+        assertEquals("ok",callback.body());
+        //临时响应的头不会出现在最终的响应中
+        assertFalse(callback.mHeaders.containsKey("Link"));
+    }
+
+    @Test
+    public void noContentAndNotModifiedHaveNoBody() throws Exception {
+        mServer = new LoopbackServer(new LoopbackServer.Script() {
+            @Override
+            public void run(int index,Socket socket) throws Exception {
+                LoopbackServer.readRequest(socket);
+                //204和304即使带着Content-Length也没有响应体
+                LoopbackServer.write(socket,"HTTP/1.1 204 No Content\r\n\r\n");
+                LoopbackServer.readRequest(socket);
+                LoopbackServer.write(socket,
+                        "HTTP/1.1 304 Not Modified\r\nContent-Length: 100\r\n\r\n");
+                LoopbackServer.readRequest(socket);
+                LoopbackServer.write(socket,"HTTP/1.1 200 OK\r\nContent-Length: 4\r\n\r\ndone");
+                LoopbackServer.awaitClose(socket);
+            }
+        });
+
+        RecordingCallback noContent = execute(mServer.url("/"),2500);
+        assertEquals(204,noContent.mStatusCode);
+        assertEquals(0,noContent.mBody.length);
+
+        RecordingCallback notModified = execute(mServer.url("/"),2500);
+        assertEquals(304,notModified.mStatusCode);
+        assertEquals(0,notModified.mBody.length);
+
+        assertEquals("done",execute(mServer.url("/"),2500).body());
+        assertEquals(1,mServer.connectionCount());
+    }
+
+    @Test
+    public void reusesKeepAliveConnection() throws Exception {
+        mServer = new LoopbackServer(respondEach(
+                "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok"));
+
+        for (int i = 0 ; i < 5;i ++) {
+            assertEquals("ok",execute(mServer.url("/" + i),2500).body());
+        }
+        assertEquals(1,mServer.connectionCount());
+    }
+
+    @Test
+    public void closesConnectionWhenServerAsks() throws Exception {
+        mServer = new LoopbackServer(respondEach(
+                "HTTP/1.1 200 OK\r\nContent-Length: 2\r\nConnection: close\r\n\r\nok"));
+
+        assertEquals("ok",execute(mServer.url("/"),2500).body());
+        assertEquals("ok",execute(mServer.url("/"),2500).body());
+        assertEquals(2,mServer.connectionCount());
+    }
+
+    @Test
+    public void resendsOnceWhenReusedConnectionIsClosed() throws Exception {
+        mServer = new LoopbackServer(new LoopbackServer.Script() {
+            @Override
+            public void run(int index,Socket socket) throws Exception {
+                if (index == 0) {
+                    //第一个连接响应一次，读到第二个请求以后不响应直接关闭
+                    LoopbackServer.readRequest(socket);
+                    LoopbackServer.write(socket,"HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nfirst");
+                    LoopbackServer.readRequest(socket);
+                    return;
+                }
+                LoopbackServer.readRequest(socket);
+                LoopbackServer.write(socket,"HTTP/1.1 200 OK\r\nContent-Length: 6\r\n\r\nresent");
+                LoopbackServer.awaitClose(socket);
+            }
+        });
+
+        assertEquals("first",execute(mServer.url("/"),2500).body());
+        assertEquals("resent",execute(mServer.url("/"),2500).body());
+        assertEquals(2,mServer.connectionCount());
+    }
+
+    @Test
+    public void doesNotResendOnFreshConnection() throws Exception {
+        mServer = new LoopbackServer(new LoopbackServer.Script() {
+            @Override
+            public void run(int index,Socket socket) throws Exception {
+                if (index == 0) {
+                    LoopbackServer.readRequest(socket);
+                    LoopbackServer.write(socket,"HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nfirst");
+                }
+                //之后的每个连接读到请求以后都直接关闭
+                LoopbackServer.readRequest(socket);
+            }
+        });
+
+        assertEquals("first",execute(mServer.url("/"),2500).body());
+
+        RecordingCallback callback = execute(mServer.url("/"),2500);
+        assertNotNull(callback.mFailure);
+        assertFalse(callback.mFailure instanceof SocketTimeoutException);
+
+        //复用的连接失败以后只重发一次
+        Thread.sleep(200);
+        assertEquals(2,mServer.connectionCount());
+        assertEquals(1,callback.mCalls.get());
+    }
+
+    @Test
+    public void failsWhenConnectionClosesMidBody() throws Exception {
+        mServer = new LoopbackServer(new LoopbackServer.Script() {
+            @Override
+            public void run(int index,Socket socket) throws Exception {
+                LoopbackServer.readRequest(socket);
+                LoopbackServer.write(socket,"HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\nshort");
+            }
+        });
+
+        RecordingCallback callback = execute(mServer.url("/"),2500);
+        assertNotNull(callback.mFailure);
+        assertEquals(1,mServer.connectionCount());
+    }
+
+    @Test
+    public void readTimeout() throws Exception {
+        mServer = new LoopbackServer(new LoopbackServer.Script() {
+            @Override
+            public void run(int index,Socket socket) throws Exception {
+                LoopbackServer.readRequest(socket);
+                LoopbackServer.awaitClose(socket);
+            }
+        });
+
+        long start = System.nanoTime();
+        RecordingCallback callback = execute(mServer.url("/"),300);
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        assertTrue(callback.mFailure instanceof SocketTimeoutException);
+        assertEquals("read timed out",callback.mFailure.getMessage());
+        assertTrue("timed out after " + elapsedMs + " ms",elapsedMs >= 250 && elapsedMs < 3000);
+    }
+
+    @Test
+    public void connectTimeout() throws Exception {
+
+        //不接受连接并且填满等待队列，新的连接请求会被丢弃，连接一直建立不了
+        ServerSocket backlogFull = new ServerSocket(0,1,InetAddress.getLoopbackAddress());
+        List<Socket> fillers = new ArrayList<>();
+        try {
+            for (int i = 0 ; i < 8;i ++) {
+                Socket filler = new Socket();
+                try {
+                    filler.connect(backlogFull.getLocalSocketAddress(),200);
+                    fillers.add(filler);
+                } catch (IOException e) {
+                    filler.close();
+                    break;
+                }
+            }
+
+            InetSocketAddress address = (InetSocketAddress) backlogFull.getLocalSocketAddress();
+            RecordingCallback callback = execute("http://127.0.0.1:" + address.getPort() + "/",300);
+
+            assertTrue(callback.mFailure instanceof SocketTimeoutException);
+            assertEquals("connect timed out",callback.mFailure.getMessage());
+        } finally {
+            for (Socket filler : fillers) {
+                filler.close();
+            }
+            backlogFull.close();
+        }
+    }
+
+    @Test
+    public void connectionRefusedFails() throws Exception {
+        ServerSocket closed = new ServerSocket(0,1,InetAddress.getLoopbackAddress());
+        int port = closed.getLocalPort();
+        closed.close();
+
+        RecordingCallback callback = execute("http://127.0.0.1:" + port + "/",2500);
+        assertNotNull(callback.mFailure);
+        assertFalse(callback.mFailure instanceof SocketTimeoutException);
+    }
+
+    @Test
+    public void shutdownFailsEveryRequestInFlight() throws Exception {
+        mServer = new LoopbackServer(new LoopbackServer.Script() {
+            @Override
+            public void run(int index,Socket socket) throws Exception {
+                LoopbackServer.readRequest(socket);
+                LoopbackServer.awaitClose(socket);
+            }
+        });
+
+        //有的请求已经在连接上等待响应，有的还在等待解析主机名
+        List<RecordingCallback> callbacks = new ArrayList<>();
+        for (int i = 0 ; i < 50;i ++) {
+            RecordingCallback callback = new RecordingCallback();
+            mStack.execute(new TestRequest(Request.Method.GET,mServer.url("/" + i),null,10000),
+                    Collections.<String,String>emptyMap(),callback);
+            callbacks.add(callback);
+        }
+        Thread.sleep(100);
+
+        mStack.shutdown();
+
+        for (RecordingCallback callback : callbacks) {
+            assertTrue(callback.await());
+            assertNotNull(callback.mFailure);
+            assertEquals(1,callback.mCalls.get());
+        }
+
+        try {
+            mStack.execute(new TestRequest(mServer.url("/")),
+                    Collections.<String,String>emptyMap(),new RecordingCallback());
+            fail("expected the stack to be shut down");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void shutdownFailsRequestsWaitingForResolver() throws Exception {
+        mServer = new LoopbackServer(respondEach(
+                "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok"));
+
+        //立即关闭，大部分请求还没有开始解析主机名
+        List<RecordingCallback> callbacks = new ArrayList<>();
+        for (int i = 0 ; i < 200;i ++) {
+            RecordingCallback callback = new RecordingCallback();
+            mStack.execute(new TestRequest(mServer.url("/" + i)),
+                    Collections.<String,String>emptyMap(),callback);
+            callbacks.add(callback);
+        }
+        mStack.shutdown();
+
+        for (RecordingCallback callback : callbacks) {
+            assertTrue(callback.await());
+            assertEquals(1,callback.mCalls.get());
+        }
+    }
+
+    private RecordingCallback execute(String url,int timeoutMs) throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        mStack.execute(new TestRequest(Request.Method.GET,url,null,timeoutMs),
+                Collections.<String,String>emptyMap(),callback);
+        assertTrue("no callback",callback.await());
+        return callback;
+    }
+
+    /**
+     * 在同一个连接上对每个请求写出相同的响应，直到客户端关闭连接
+     */
+    private static LoopbackServer.Script respondEach(final String response) {
+        return new LoopbackServer.Script() {
+            @Override
+            public void run(int index,Socket socket) throws Exception {
+                while (LoopbackServer.readRequest(socket) != null) {
+                    LoopbackServer.write(socket,response);
+                }
+            }
+        };
+    }
+}
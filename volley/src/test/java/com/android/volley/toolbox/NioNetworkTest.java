@@ -0,0 +1,171 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.AsyncNetwork;
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.VolleyError;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link NioNetwork}在本机服务器上的测试：每个请求的完成回调都执行且只执行一次
+ *
+ * 作者：李富 on 2015/11/30.
+ * 邮箱：lifuzz@163.com
+ */
+public class NioNetworkTest {
+
+    private LoopbackServer mServer;
+
+    private NioNetwork mNetwork;
+
+    @After
+    public void tearDown() {
+        if (mNetwork != null) {
+            mNetwork.shutdown();
+        }
+        if (mServer != null) {
+            mServer.close();
+        }
+    }
+
+    @Test
+    public void rejectedCallbackExecutorReportsError() throws Exception {
+        mServer = new LoopbackServer(new LoopbackServer.Script() {
+            @Override
+            public void run(int index,Socket socket) throws Exception {
+                LoopbackServer.readRequest(socket);
+                LoopbackServer.write(socket,"HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+                LoopbackServer.awaitClose(socket);
+            }
+        });
+
+        ExecutorService callbackExecutor = Executors.newSingleThreadExecutor();
+        callbackExecutor.shutdown();
+        mNetwork = new NioNetwork(new NioHttpStack(),new ByteArrayPool(4096),callbackExecutor);
+
+        Completion completion = new Completion();
+        mNetwork.performRequest(new TestRequest(mServer.url("/")),completion);
+
+        //线程池拒绝以后在I/O线程上直接报告错误，不会一直等待
+        assertTrue(completion.await());
+        assertNotNull(completion.mError.get());
+        assertEquals(1,completion.mCalls.get());
+    }
+
+    @Test
+    public void shutdownCompletesRequestsInFlight() throws Exception {
+        mServer = new LoopbackServer(new LoopbackServer.Script() {
+            @Override
+            public void run(int index,Socket socket) throws Exception {
+                LoopbackServer.readRequest(socket);
+                LoopbackServer.awaitClose(socket);
+            }
+        });
+
+        mNetwork = new NioNetwork();
+
+        Completion[] completions = new Completion[10];
+        for (int i = 0 ; i < completions.length;i ++) {
+            completions[i] = new Completion();
+            mNetwork.performRequest(new TestRequest(Request.Method.GET,mServer.url("/" + i),
+                    null,10000),completions[i]);
+        }
+        Thread.sleep(100);
+
+        mNetwork.shutdown();
+
+        for (Completion completion : completions) {
+            assertTrue(completion.await());
+            assertNotNull(completion.mError.get());
+            assertEquals(1,completion.mCalls.get());
+        }
+    }
+
+    @Test
+    public void retriesTimeoutOnNewAttempt() throws Exception {
+        mServer = new LoopbackServer(new LoopbackServer.Script() {
+            @Override
+            public void run(int index,Socket socket) throws Exception {
+                LoopbackServer.readRequest(socket);
+                if (index == 0) {
+                    //第一次不响应，超时以后重试
+                    LoopbackServer.awaitClose(socket);
+                    return;
+                }
+                LoopbackServer.write(socket,"HTTP/1.1 200 OK\r\nContent-Length: 7\r\n\r\nretried");
+                LoopbackServer.awaitClose(socket);
+            }
+        });
+
+        mNetwork = new NioNetwork();
+
+        TestRequest request = new TestRequest(mServer.url("/"));
+        request.setRetryPolicy(new DefaultRetryPolicy(300,1,1f));
+
+        NetworkResponse response = mNetwork.performRequest(request);
+        assertEquals("retried",new String(response.data,"ISO-8859-1"));
+        assertEquals(2,mServer.connectionCount());
+    }
+
+    @Test
+    public void serverErrorIsReported() throws Exception {
+        mServer = new LoopbackServer(new LoopbackServer.Script() {
+            @Override
+            public void run(int index,Socket socket) throws Exception {
+                LoopbackServer.readRequest(socket);
+                LoopbackServer.write(socket,
+                        "HTTP/1.1 500 Internal Server Error\r\nContent-Length: 4\r\n\r\noops");
+                LoopbackServer.awaitClose(socket);
+            }
+        });
+
+        mNetwork = new NioNetwork();
+
+        try {
+            mNetwork.performRequest(new TestRequest(mServer.url("/")));
+            fail("expected a server error");
+        } catch (VolleyError expected) {
+            assertEquals(500,expected.networkResponse.statusCode);
+        }
+    }
+
+    /**
+     * 记录完成回调
+     */
+    private static class Completion implements AsyncNetwork.OnRequestComplete {
+
+        final CountDownLatch mDone = new CountDownLatch(1);
+        final AtomicInteger mCalls = new AtomicInteger();
+        final AtomicReference<VolleyError> mError = new AtomicReference<>();
+
+        @Override
+        public void onSuccess(NetworkResponse networkResponse) {
+            mCalls.incrementAndGet();
+            mDone.countDown();
+        }
+
+        @Override
+        public void onError(VolleyError volleyError) {
+            mError.set(volleyError);
+            mCalls.incrementAndGet();
+            mDone.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return mDone.await(5,TimeUnit.SECONDS);
+        }
+    }
+}
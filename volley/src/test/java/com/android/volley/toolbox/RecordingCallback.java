@@ -0,0 +1,52 @@
+package com.android.volley.toolbox;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 记录{@link AsyncHttpStack}回调结果的测试回调，同时记录回调的次数
+ *
+ * 作者：李富 on 2015/11/30.
+ * 邮箱：lifuzz@163.com
+ */
+class RecordingCallback implements AsyncHttpStack.Callback {
+
+    private final CountDownLatch mDone = new CountDownLatch(1);
+
+    final AtomicInteger mCalls = new AtomicInteger();
+
+    volatile int mStatusCode;
+    volatile Map<String,String> mHeaders;
+    volatile byte[] mBody;
+    volatile IOException mFailure;
+
+    @Override
+    public void onResponse(int statusCode,Map<String,String> headers,byte[] body) {
+        mStatusCode = statusCode;
+        mHeaders = headers;
+        mBody = body;
+        mCalls.incrementAndGet();
+        mDone.countDown();
+    }
+
+    @Override
+    public void onFailure(IOException e) {
+        mFailure = e;
+        mCalls.incrementAndGet();
+        mDone.countDown();
+    }
+
+    boolean await() throws InterruptedException {
+        return mDone.await(5,TimeUnit.SECONDS);
+    }
+
+    String body() throws IOException {
+        if (mFailure != null) {
+            throw mFailure;
+        }
+        return new String(mBody,"ISO-8859-1");
+    }
+}
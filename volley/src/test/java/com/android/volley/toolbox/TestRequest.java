@@ -0,0 +1,57 @@
+package com.android.volley.toolbox;
+
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.Response;
+
+/**
+ * 测试用的请求，响应体原样返回，默认不重试
+ *
+ * 作者：李富 on 2015/11/30.
+ * 邮箱：lifuzz@163.com
+ */
+class TestRequest extends Request<byte[]> {
+
+    private final byte[] mBody;
+
+    private final Response.Listener<byte[]> mListener;
+
+    TestRequest(int method,String url,byte[] body,int timeoutMs,
+                Response.Listener<byte[]> listener,Response.ErrorListener errorListener) {
+        super(method,url,errorListener);
+        mBody = body;
+        mListener = listener;
+        setRetryPolicy(new DefaultRetryPolicy(timeoutMs,0,1f));
+    }
+
+    TestRequest(int method,String url,byte[] body,int timeoutMs) {
+        this(method,url,body,timeoutMs,null,null);
+    }
+
+    TestRequest(String url) {
+        this(Method.GET,url,null,2500);
+    }
+
+    @Override
+    public byte[] getBody() {
+        return mBody;
+    }
+
+    @Override
+    public String getBodyContentType() {
+        return "text/plain; charset=UTF-8";
+    }
+
+    @Override
+    protected Response<byte[]> parseNetworkResponse(NetworkResponse response) {
+        return Response.success(response.data,null);
+    }
+
+    @Override
+    protected void deliverResponse(byte[] response) {
+        if (mListener != null) {
+            mListener.onResponse(response);
+        }
+    }
+}